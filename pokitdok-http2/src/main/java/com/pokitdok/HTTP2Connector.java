@@ -0,0 +1,480 @@
+package com.pokitdok;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.json.simple.parser.ParseException;
+
+/**
+    A {@link PokitDokHTTPConnector} that sends its requests over HTTP/2, multiplexing any
+    number of concurrent calls as streams of a single connection per host instead of holding a
+    socket for each. Built on the JDK's own HTTP client, so it needs Java 11 but no other
+    dependency. Servers that do not speak HTTP/2 are talked to over HTTP/1.1 instead.
+
+    <p>
+
+    Select it by passing it to {@link PokitDok#PokitDok(String, String, PokitDokHTTPConnector)}:
+    <pre>
+    PokitDok pd = new PokitDok(clientId, clientSecret, new HTTP2Connector(clientId, clientSecret));
+    </pre>
+
+    <p>
+
+    The number of requests in flight at once is capped by
+    {@link HTTP2Settings#setMaxConcurrentStreams(int)}; further requests wait for a stream to
+    free up, much as the {@link ApacheHTTPConnector} makes them wait for a pooled connection.
+    Access tokens are managed by an {@link AccessTokenManager}, exactly as there, and responses
+    are decoded with the configured {@link JSONCodec}: large ones straight from the stream,
+    small ones once they have been received whole. As there, an error response whose body is not
+    JSON, such as a gateway's 503 page, is returned with its status and no body.
+
+    <p>
+
+    Instances are thread-safe, and a single connector is meant to be shared by every thread of
+    an application. Call {@link #close()} to stop its token refresh thread, and on Java 21 and
+    later its HTTP client, once it is no longer needed.
+*/
+public class HTTP2Connector implements PokitDokExchangeConnector, Closeable {
+    /** Headers the JDK's HTTP client sets itself and refuses to take from callers. */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host",
+        "upgrade");
+
+    /** The largest response body, of known length, that is received whole before it is decoded. */
+    static final int BUFFERED_BODY_LIMIT = 64 * 1024;
+
+    /**
+        Receives bodies of up to {@link #BUFFERED_BODY_LIMIT} bytes whole before the caller is
+        woken, and streams larger ones and those of unknown length. A small response is thus
+        decoded in one go, instead of by a caller that blocks halfway for the rest of the body
+        while holding its decoder's buffers, which with thousands of calls in flight adds up.
+    */
+    private static final HttpResponse.BodyHandler<InputStream> BODY_HANDLER = info -> {
+        long length = info.headers().firstValueAsLong("Content-Length").orElse(-1);
+        return (length >= 0 && length <= BUFFERED_BODY_LIMIT)
+            ? HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), ByteArrayInputStream::new)
+            : HttpResponse.BodySubscribers.ofInputStream();
+    };
+
+    private final HttpClient           client;
+    private final String               apiBase;
+    private final Map<String, String>  defaultHeaders;
+    private final String               clientId;
+    private final String               clientSecret;
+    private final AccessTokenManager   tokenManager;
+    private final MetricsListener      metrics;
+    private final JSONCodec            codec;
+    private final Duration             responseTimeout;
+    private final Semaphore            streams;
+    private final int                  maxConcurrentStreams;
+    private final long                 streamTimeout;
+
+    /**
+        Creates a connector to the PokitDok Platform with the default headers and settings.
+
+        @param clientId a PokitDok client ID
+        @param clientSecret a PokitDok client secret
+    */
+    public HTTP2Connector(String clientId, String clientSecret) {
+        this(clientId, clientSecret, PokitDok.getDefaultHeaders(), PokitDok.DEFAULT_API_BASE);
+    }
+
+    public HTTP2Connector(String clientId, String clientSecret, Map<String, String> defaultHeaders, String apiBase) {
+        this(clientId, clientSecret, defaultHeaders, apiBase, new HTTP2Settings());
+    }
+
+    public HTTP2Connector(String clientId, String clientSecret, Map<String, String> defaultHeaders, String apiBase,
+                          HTTP2Settings settings) {
+        configureFlowControl(settings);
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.defaultHeaders = (defaultHeaders == null) ? Collections.<String, String>emptyMap()
+            : Collections.unmodifiableMap(new LinkedHashMap<String, String>(defaultHeaders));
+        this.apiBase = apiBase;
+        this.metrics = settings.getMetricsListener();
+        this.codec = settings.getJSONCodec();
+        this.responseTimeout = (settings.getSocketTimeout() > 0) ? Duration.ofMillis(settings.getSocketTimeout()) : null;
+        this.maxConcurrentStreams = settings.getMaxConcurrentStreams();
+        this.streams = new Semaphore(maxConcurrentStreams, true);
+        this.streamTimeout = settings.getConnectionRequestTimeout();
+        this.tokenManager = new AccessTokenManager(this::requestToken, settings.getTokenRefreshMargin());
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NEVER);
+        if (settings.getConnectTimeout() > 0) {
+            builder.connectTimeout(Duration.ofMillis(settings.getConnectTimeout()));
+        }
+        if (settings.getExecutor() != null) {
+            builder.executor(settings.getExecutor());
+        }
+        if (ProxySelector.getDefault() != null) {
+            builder.proxy(ProxySelector.getDefault());
+        }
+        client = builder.build();
+    }
+
+    /**
+        Sets the JVM-wide flow-control properties of the JDK's HTTP client that the settings
+        configure, failing before setting any of them if one already holds a different value.
+    */
+    private static synchronized void configureFlowControl(HTTP2Settings settings) {
+        String[] properties = { "jdk.httpclient.windowsize", "jdk.httpclient.connectionWindowSize",
+            "jdk.httpclient.maxframesize" };
+        int[] values = { settings.getStreamWindowSize(), settings.getConnectionWindowSize(), settings.getMaxFrameSize() };
+        int streamWindow = (values[0] > 0) ? values[0] : Integer.getInteger(properties[0], -1);
+        if (values[1] > 0 && values[1] < streamWindow) {
+            throw new IllegalArgumentException("The connection window of " + values[1]
+                + " bytes is smaller than the stream window of " + streamWindow + " bytes");
+        }
+        for (int i = 0; i < properties.length; i++) {
+            String current = System.getProperty(properties[i]);
+            if (values[i] > 0 && current != null && !current.trim().equals(Integer.toString(values[i]))) {
+                throw new IllegalStateException(properties[i] + " is already set to " + current + " for this JVM, so "
+                    + values[i] + " cannot be applied; HTTP/2 flow-control settings are shared by every connector");
+            }
+        }
+        for (int i = 0; i < properties.length; i++) {
+            if (values[i] > 0) {
+                System.setProperty(properties[i], Integer.toString(values[i]));
+            }
+        }
+    }
+
+    public void connect(String scopeName) throws IOException, ParseException, UnauthorizedException {
+        tokenManager.refresh(scopeName);
+    }
+
+    public void connect() throws IOException, ParseException, UnauthorizedException {
+        connect(PokitDok.DEFAULT_SCOPE);
+    }
+
+    private AccessToken requestToken(String scopeName) throws IOException, ParseException {
+        String auth = clientId + ":" + clientSecret;
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(apiBase + "/oauth2/token"))
+            .header("Authorization", "Basic " + Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.US_ASCII)))
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString("grant_type=client_credentials"));
+        setDefaultHeaders(request);
+        if (responseTimeout != null) {
+            request.timeout(responseTimeout);
+        }
+
+        long requestedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = send(request.build());
+        AccessToken token = AccessToken.fromTokenResponse(decode(response, response.body(), null), requestedAt);
+        if (metrics != null) {
+            metrics.onTokenRefresh(scopeName, System.nanoTime() - start);
+        }
+        return token;
+    }
+
+    public PokitDokResponse execute(PokitDokRequest request) throws IOException, ParseException, UnauthorizedException {
+        return execute(request, null);
+    }
+
+    public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        byte[] body = body(request);
+        acquireStream();
+        try {
+            HttpResponse<InputStream> response = execute(createRequest(request, body), request.getScope(), false);
+            CountingInputStream counted = (metrics != null) ? new CountingInputStream(response.body()) : null;
+            Map<String, Object> decoded = hasBody(response)
+                ? decode(response, (counted != null) ? counted : response.body(), visitor) : discard(response);
+            if (metrics != null) {
+                metrics.onResponse(request, response.statusCode(), System.nanoTime() - start,
+                    (body == null) ? 0 : body.length, counted.getCount());
+            }
+            return new PokitDokResponse(response.statusCode(), headers(response.headers()), decoded);
+        }
+        catch (IOException e) {
+            if (metrics != null) {
+                metrics.onFailure(request, e, System.nanoTime() - start);
+            }
+            throw e;
+        }
+        catch (ParseException e) {
+            if (metrics != null) {
+                metrics.onFailure(request, new IOException("Could not parse the response", e), System.nanoTime() - start);
+            }
+            throw e;
+        }
+        finally {
+            streams.release();
+        }
+    }
+
+    public String get(String url, Map<String, Object> params, Map<String, String> headers)
+    throws IOException, ParseException, UnauthorizedException {
+        return get(url, params, headers, PokitDok.DEFAULT_SCOPE);
+    }
+
+    public String get(String url, Map<String, Object> params, Map<String, String> headers, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return executeForString(new PokitDokRequest(PokitDokRequest.GET, url, params, headers, scope));
+    }
+
+    public String post(String url, Map<String, Object> params, Map<String, String> headers)
+    throws IOException, ParseException, UnauthorizedException {
+        return post(url, params, headers, PokitDok.DEFAULT_SCOPE);
+    }
+
+    public String post(String url, Map<String, Object> params, Map<String, String> headers, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return executeForString(new PokitDokRequest(PokitDokRequest.POST, url, params, headers, scope));
+    }
+
+    public String put(String url, Map<String, Object> params, Map<String, String> headers)
+    throws IOException, ParseException, UnauthorizedException {
+        return put(url, params, headers, PokitDok.DEFAULT_SCOPE);
+    }
+
+    public String put(String url, Map<String, Object> params, Map<String, String> headers, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return executeForString(new PokitDokRequest(PokitDokRequest.PUT, url, params, headers, scope));
+    }
+
+    public String delete(String url, Map<String, Object> params, Map<String, String> headers)
+    throws IOException, ParseException, UnauthorizedException {
+        return delete(url, params, headers, PokitDok.DEFAULT_SCOPE);
+    }
+
+    public String delete(String url, Map<String, Object> params, Map<String, String> headers, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return executeForString(new PokitDokRequest(PokitDokRequest.DELETE, url, params, headers, scope));
+    }
+
+    private String executeForString(PokitDokRequest request)
+    throws IOException, ParseException, UnauthorizedException {
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        byte[] body = body(request);
+        acquireStream();
+        try {
+            HttpResponse<InputStream> response = execute(createRequest(request, body), request.getScope(), false);
+            byte[] bytes;
+            try (InputStream in = response.body()) {
+                bytes = in.readAllBytes();
+            }
+            if (metrics != null) {
+                metrics.onResponse(request, response.statusCode(), System.nanoTime() - start,
+                    (body == null) ? 0 : body.length, bytes.length);
+            }
+            return new String(bytes, charset(response));
+        }
+        catch (IOException e) {
+            if (metrics != null) {
+                metrics.onFailure(request, e, System.nanoTime() - start);
+            }
+            throw e;
+        }
+        finally {
+            streams.release();
+        }
+    }
+
+    /**
+        Waits for one of the connector's streams to become free, for at most the connection
+        request timeout.
+    */
+    private void acquireStream() throws IOException {
+        try {
+            if (streamTimeout > 0) {
+                if (!streams.tryAcquire(streamTimeout, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Timed out after " + streamTimeout + " ms waiting for one of "
+                        + maxConcurrentStreams + " streams");
+                }
+            }
+            else {
+                streams.acquire();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a stream");
+        }
+    }
+
+    /**
+        Sends a request with the scope's access token and returns the response, its body still
+        to be read. A 401 response is taken to mean the token has expired or been revoked: it is
+        discarded, and the request is sent once more with a new token.
+    */
+    private HttpResponse<InputStream> execute(HttpRequest.Builder request, String scopeName, boolean failedOnceAlready)
+    throws IOException, ParseException, UnauthorizedException {
+        String accessToken = tokenManager.getToken(scopeName);
+        if (accessToken == null) {
+            throw new UnauthorizedException("Invalid credentials.  Check your client_id and client_secret.");
+        }
+
+        request.setHeader("Authorization", "Bearer " + accessToken);
+        HttpResponse<InputStream> response = send(request.build());
+        if (response.statusCode() != 401) {
+            return response;
+        }
+
+        discard(response);
+        if (failedOnceAlready) {
+            throw new UnauthorizedException("Unauthorized");
+        }
+
+        /* Recover from a token timeout */
+        tokenManager.invalidate(scopeName, accessToken);
+        return execute(request, scopeName, true);
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+        try {
+            return client.send(request, BODY_HANDLER);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a response");
+        }
+    }
+
+    /** Serializes the JSON body of a POST or PUT request, or returns null for any other. */
+    private byte[] body(PokitDokRequest request) throws IOException {
+        if (PokitDokRequest.GET.equals(request.getMethod()) || PokitDokRequest.DELETE.equals(request.getMethod())) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        codec.encode(request.getParams(), writer);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    private HttpRequest.Builder createRequest(PokitDokRequest request, byte[] body) {
+        HttpRequest.Builder httpRequest;
+        if (body == null) {
+            httpRequest = HttpRequest.newBuilder(
+                URI.create(PokitDok.apiUrl(apiBase, request.getEndpoint(), request.getParams())));
+            httpRequest.method(request.getMethod(), HttpRequest.BodyPublishers.noBody());
+        }
+        else {
+            httpRequest = HttpRequest.newBuilder(URI.create(PokitDok.apiUrl(apiBase, request.getEndpoint(), null)))
+                .header("Content-Type", JSONEntity.APPLICATION_JSON.toString());
+            httpRequest.method(request.getMethod(), HttpRequest.BodyPublishers.ofByteArray(body));
+        }
+        if (responseTimeout != null) {
+            httpRequest.timeout(responseTimeout);
+        }
+        setDefaultHeaders(httpRequest);
+        return httpRequest;
+    }
+
+    private void setDefaultHeaders(HttpRequest.Builder request) {
+        for (Map.Entry<String, String> entry : defaultHeaders.entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(entry.getKey().toLowerCase())) {
+                request.setHeader(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static boolean hasBody(HttpResponse<InputStream> response) {
+        return response.statusCode() != 204 && response.statusCode() != 304
+            && response.headers().firstValueAsLong("Content-Length").orElse(-1) != 0;
+    }
+
+    /** Reads and drops a response body, so that the stream is released. */
+    private static Map<String, Object> discard(HttpResponse<InputStream> response) throws IOException {
+        try (InputStream in = response.body()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return null;
+    }
+
+    /**
+        Decodes a JSON response body, in the charset the response declares, or UTF-8 if it
+        declares none, with the configured codec.
+    */
+    private Map<String, Object> decode(HttpResponse<InputStream> response, InputStream in, DataVisitor visitor)
+    throws IOException, ParseException {
+        try (InputStream body = in) {
+            return codec.decode(new InputStreamReader(body, charset(response)), visitor);
+        }
+        catch (ParseException e) {
+            if (response.statusCode() < 400) {
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    private static Charset charset(HttpResponse<InputStream> response) {
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        for (String parameter : contentType.split(";")) {
+            String[] pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].equalsIgnoreCase("charset")) {
+                try {
+                    return Charset.forName(pair[1].trim().replace("\"", ""));
+                }
+                catch (IllegalArgumentException e) {
+                    break;
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static Map<String, String> headers(HttpHeaders headers) {
+        Map<String, String> first = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, List<String>> header : headers.map().entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                first.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+        return first;
+    }
+
+    /**
+        Returns the number of requests currently in flight.
+
+        @return the number of streams in use
+    */
+    public int getActiveStreams() {
+        return maxConcurrentStreams - streams.availablePermits();
+    }
+
+    /**
+        Stops the token refresh thread and, on Java 21 and later, closes the HTTP client and its
+        connections once the requests in flight have completed.
+    */
+    public void close() throws IOException {
+        tokenManager.close();
+        if (client instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) client).close();
+            }
+            catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.pokitdok;
+
+import java.util.concurrent.Executor;
+
+/**
+    Settings of an {@link HTTP2Connector}: the {@link ConnectorSettings} that apply to it, plus
+    the stream concurrency cap and flow-control windows of its HTTP/2 connections and the
+    executor of its HTTP client.
+
+    <p>
+
+    Of the inherited settings, the connector honours the connect timeout, the socket timeout
+    (as the time allowed for the response headers to arrive), the connection request timeout (as
+    the time a request waits for a free stream), the token refresh margin, the JSON codec and
+    the metrics listener. Pool sizes, keep-alive and idle eviction describe HTTP/1.1 connection
+    pooling and are ignored: an HTTP/2 connector keeps a single connection per host.
+
+    <p>
+
+    The flow-control windows and frame size are JVM-wide. The JDK's HTTP client only reads them
+    from the {@code jdk.httpclient.windowsize}, {@code jdk.httpclient.connectionWindowSize} and
+    {@code jdk.httpclient.maxframesize} system properties, whenever any client in the JVM opens
+    an HTTP/2 connection. A connector created with one of them set sets the property, so it also
+    applies to the new connections of every other client. Connections opened before keep their
+    old windows. If the property already holds a different value, set on the command line or by
+    another connector, creating the connector fails with an {@link IllegalStateException} rather
+    than silently running with other windows than configured. Leave them unset to keep the JDK
+    defaults, or whatever the command line gives.
+*/
+public class HTTP2Settings extends ConnectorSettings {
+    /**
+        Default maximum number of requests in flight on a connector at once, the number of
+        concurrent streams RFC 7540 recommends servers allow at the least.
+    */
+    public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+    /** Smallest frame size HTTP/2 allows. */
+    public static final int MIN_FRAME_SIZE = 16 * 1024;
+    /** Largest frame size HTTP/2 allows. */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024 - 1;
+
+    private int      maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+    private int      streamWindowSize     = -1;
+    private int      connectionWindowSize = -1;
+    private int      maxFrameSize         = -1;
+    private Executor executor;
+
+    /**
+        Returns the maximum number of requests the connector has in flight at once.
+
+        @return the stream concurrency cap
+    */
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    /**
+        Sets the maximum number of requests the connector has in flight at once. Further
+        requests wait for a stream to free up, for at most the connection request timeout. Keep
+        it at or below the server's own limit, so that requests are never refused or spill over
+        onto additional connections.
+
+        @param maxConcurrentStreams the stream concurrency cap
+    */
+    public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+        if (maxConcurrentStreams <= 0) {
+            throw new IllegalArgumentException("The stream concurrency cap must be positive");
+        }
+        this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    /**
+        Returns the initial flow-control window of each stream.
+
+        @return the window in bytes, or -1 to leave {@code jdk.httpclient.windowsize} alone
+    */
+    public int getStreamWindowSize() {
+        return streamWindowSize;
+    }
+
+    /**
+        Sets the initial flow-control window of each stream: how much of a response the server
+        may send before the client acknowledges it. Smaller windows bound the memory a slow
+        reader of a large response holds; larger ones keep fast links full. JVM-wide: sets
+        {@code jdk.httpclient.windowsize}.
+
+        @param streamWindowSize the window in bytes, or -1 to leave the property alone
+    */
+    public void setStreamWindowSize(int streamWindowSize) {
+        if (streamWindowSize <= 0 && streamWindowSize != -1) {
+            throw new IllegalArgumentException("The stream window must be positive");
+        }
+        this.streamWindowSize = streamWindowSize;
+    }
+
+    /**
+        Returns the flow-control window of each connection, shared by all of its streams.
+
+        @return the window in bytes, or -1 to leave {@code jdk.httpclient.connectionWindowSize}
+            alone
+    */
+    public int getConnectionWindowSize() {
+        return connectionWindowSize;
+    }
+
+    /**
+        Sets the flow-control window of each connection, shared by all of its streams. It must
+        be at least the stream window, and should be a multiple of it, so that a few slow
+        streams cannot stall the others. JVM-wide: sets
+        {@code jdk.httpclient.connectionWindowSize}.
+
+        @param connectionWindowSize the window in bytes, or -1 to leave the property alone
+    */
+    public void setConnectionWindowSize(int connectionWindowSize) {
+        if (connectionWindowSize <= 0 && connectionWindowSize != -1) {
+            throw new IllegalArgumentException("The connection window must be positive");
+        }
+        this.connectionWindowSize = connectionWindowSize;
+    }
+
+    /**
+        Returns the largest frame the client accepts.
+
+        @return the frame size in bytes, or -1 to leave {@code jdk.httpclient.maxframesize} alone
+    */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+        Sets the largest frame the client accepts, between {@link #MIN_FRAME_SIZE} and
+        {@link #MAX_FRAME_SIZE}. JVM-wide: sets {@code jdk.httpclient.maxframesize}.
+
+        @param maxFrameSize the frame size in bytes, or -1 to leave the property alone
+    */
+    public void setMaxFrameSize(int maxFrameSize) {
+        if ((maxFrameSize < MIN_FRAME_SIZE || maxFrameSize > MAX_FRAME_SIZE) && maxFrameSize != -1) {
+            throw new IllegalArgumentException("The frame size must be between 16 KB and 16 MB");
+        }
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+        Returns the executor the HTTP client runs its asynchronous tasks on.
+
+        @return the executor, or null for the client's own thread pool
+    */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+        Sets the executor the HTTP client runs its asynchronous tasks on, such as delivering
+        response bodies.
+
+        @param executor the executor, or null for the client's own thread pool
+    */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+}
@@ -0,0 +1,253 @@
+package com.pokitdok.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.parser.ParseException;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class HTTP2ConnectorTests {
+	private PokitDokStubServer server;
+	private HTTP2Connector connector;
+
+	@Before
+	public void setup() throws Exception {
+		server = new PokitDokStubServer();
+		server.start();
+		connector = new HTTP2Connector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase());
+	}
+
+	@After
+	public void teardown() throws Exception {
+		connector.close();
+		server.stop();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void executeDecodesResponseTest() throws Exception {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("npi", "1467560003");
+		PokitDokResponse response = connector.execute(
+			new PokitDokRequest(PokitDokRequest.GET, "providers", params, null, null));
+
+		assertEquals(200, response.getStatus());
+		assertTrue(response.getHeader("Content-Type").startsWith("application/json"));
+		Map<String, Object> data = (Map<String, Object>) response.getBody().get("data");
+		assertEquals("providers", data.get("endpoint"));
+		assertEquals("GET", data.get("method"));
+		assertEquals(params, data.get("params"));
+		assertEquals(0, connector.getActiveStreams());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void sendsJsonBodiesTest() throws Exception {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("member", "Zo\u00eb \ud83d\ude00");
+		params.put("units", 3L);
+		PokitDokResponse response = connector.execute(
+			new PokitDokRequest(PokitDokRequest.POST, "eligibility/", params, null, null));
+
+		Map<String, Object> data = (Map<String, Object>) response.getBody().get("data");
+		assertEquals("POST", data.get("method"));
+		assertEquals(params, data.get("params"));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void recoversFromUnauthorizedStatusTest() throws Exception {
+		PokitDokRequest request = new PokitDokRequest(PokitDokRequest.GET, "activities", null, null, null);
+		connector.execute(request);
+		server.expireTokens();
+
+		assertEquals(200, connector.execute(request).getStatus());
+		assertEquals(2, server.getTokenRequests());
+		assertEquals(3, server.getApiRequests());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void selectableThroughTheClientTest() throws Exception {
+		PokitDok client = new PokitDok("client_id", "client_secret", connector);
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("npi", "1467560003");
+		params.put("radius", 10);
+
+		Map<String, Object> data = (Map<String, Object>) client.providers(params).get("data");
+		assertEquals("providers", data.get("endpoint"));
+		assertEquals("10", ((Map<String, Object>) data.get("params")).get("radius"));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void decodesBufferedAndStreamedBodiesTest() throws Exception {
+		StringBuilder large = new StringBuilder("{\"data\": [");
+		for (int i = 0; i < 5000; i++) {
+			large.append(i == 0 ? "" : ", ").append("{\"id\": ").append(i).append(", \"name\": \"Zo\u00eb\"}");
+		}
+		large.append("]}");
+		TapeReplayServer replay = new TapeReplayServer("payers");
+		replay.addRecording(PokitDokRequest.GET, "plans/", 200, large.toString());
+		replay.start();
+		HTTP2Connector client = new HTTP2Connector("client_id", "client_secret",
+			new HashMap<String, String>(), replay.getApiBase());
+		try {
+			PokitDokResponse small = client.execute(new PokitDokRequest(PokitDokRequest.GET, "payers", null, null, null));
+			assertNotNull(small.getBody().get("data"));
+
+			PokitDokResponse streamed = client.execute(new PokitDokRequest(PokitDokRequest.GET, "plans/", null, null, null));
+			assertTrue(large.length() > 64 * 1024);
+			List<Map<String, Object>> plans = (List<Map<String, Object>>) streamed.getBody().get("data");
+			assertEquals(5000, plans.size());
+			assertEquals("Zo\u00eb", plans.get(4999).get("name"));
+		}
+		finally {
+			client.close();
+			replay.stop();
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void returnsErrorPagesWithoutBodyTest() throws Exception {
+		TapeReplayServer replay = new TapeReplayServer("activities");
+		replay.start();
+		HTTP2Connector client = new HTTP2Connector("client_id", "client_secret",
+			new HashMap<String, String>(), replay.getApiBase());
+		try {
+			RetryingConnector retrying = new RetryingConnector(client, 3, 1, 10, 0.1);
+			replay.failNext(1, 503, "text/html", "<html><body><h1>503 Service Unavailable</h1></body></html>");
+
+			PokitDokResponse response = retrying.execute(
+				new PokitDokRequest(PokitDokRequest.GET, "activities", null, null, null));
+			assertEquals(200, response.getStatus());
+			assertEquals(1, retrying.getRetryCount());
+			assertEquals(1, replay.getErrorRequests());
+		}
+		finally {
+			client.close();
+			replay.stop();
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void parseFailuresAreReportedTest() throws Exception {
+		TapeReplayServer replay = new TapeReplayServer("payers");
+		replay.addRecording(PokitDokRequest.GET, "plans/", 200, "{\"data\": [");
+		replay.start();
+		InMemoryMetrics metrics = new InMemoryMetrics();
+		HTTP2Settings settings = new HTTP2Settings();
+		settings.setMetricsListener(metrics);
+		HTTP2Connector client = new HTTP2Connector("client_id", "client_secret",
+			new HashMap<String, String>(), replay.getApiBase(), settings);
+		try {
+			client.execute(new PokitDokRequest(PokitDokRequest.GET, "plans/", null, null, null));
+			fail("Expected the truncated response not to parse");
+		}
+		catch (ParseException e) {
+			assertEquals(1, metrics.getEndpointMetrics("plans/", PokitDok.DEFAULT_SCOPE).getFailureCount());
+		}
+		finally {
+			client.close();
+			replay.stop();
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void flowControlSettingsAreJvmWideTest() throws Exception {
+		HTTP2Settings settings = new HTTP2Settings();
+		try {
+			settings.setMaxFrameSize(1024);
+			fail("Expected a frame size below 16 KB to be refused");
+		}
+		catch (IllegalArgumentException e) {
+		}
+
+		settings.setStreamWindowSize(1024 * 1024);
+		settings.setConnectionWindowSize(4 * 1024 * 1024);
+		HTTP2Connector first = new HTTP2Connector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings);
+		HTTP2Connector second = new HTTP2Connector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings);
+		try {
+			assertEquals("1048576", System.getProperty("jdk.httpclient.windowsize"));
+			assertEquals(200, first.execute(new PokitDokRequest(PokitDokRequest.GET, "activities", null, null, null)).getStatus());
+
+			HTTP2Settings conflicting = new HTTP2Settings();
+			conflicting.setStreamWindowSize(2 * 1024 * 1024);
+			try {
+				new HTTP2Connector("client_id", "client_secret", new HashMap<String, String>(), server.getApiBase(),
+					conflicting);
+				fail("Expected a conflicting stream window to be refused");
+			}
+			catch (IllegalStateException e) {
+				assertEquals("1048576", System.getProperty("jdk.httpclient.windowsize"));
+			}
+
+			HTTP2Settings inconsistent = new HTTP2Settings();
+			inconsistent.setConnectionWindowSize(64 * 1024);
+			try {
+				new HTTP2Connector("client_id", "client_secret", new HashMap<String, String>(), server.getApiBase(),
+					inconsistent);
+				fail("Expected a connection window below the stream window to be refused");
+			}
+			catch (IllegalArgumentException e) {
+				assertEquals("4194304", System.getProperty("jdk.httpclient.connectionWindowSize"));
+			}
+		}
+		finally {
+			first.close();
+			second.close();
+			System.clearProperty("jdk.httpclient.windowsize");
+			System.clearProperty("jdk.httpclient.connectionWindowSize");
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void capsConcurrentStreamsTest() throws Exception {
+		TapeReplayServer replay = new TapeReplayServer("activities");
+		replay.setLatency(TapeReplayServer.fixed(50));
+		replay.start();
+		HTTP2Settings settings = new HTTP2Settings();
+		settings.setMaxConcurrentStreams(2);
+		final HTTP2Connector capped = new HTTP2Connector("client_id", "client_secret",
+			new HashMap<String, String>(), replay.getApiBase(), settings);
+		final AtomicInteger maxActive = new AtomicInteger();
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		try {
+			capped.connect();
+			long start = System.nanoTime();
+			List<Future<Integer>> calls = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 8; i++) {
+				calls.add(callers.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						int status = capped.execute(
+							new PokitDokRequest(PokitDokRequest.GET, "activities", null, null, null)).getStatus();
+						maxActive.set(Math.max(maxActive.get(), capped.getActiveStreams()));
+						return status;
+					}
+				}));
+			}
+			for (Future<Integer> call : calls) {
+				assertEquals(200, (int) call.get());
+			}
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(4 * 50));
+			assertTrue(maxActive.get() <= 2);
+			assertEquals(0, capped.getActiveStreams());
+		}
+		finally {
+			callers.shutdownNow();
+			capped.close();
+			replay.stop();
+		}
+	}
+}
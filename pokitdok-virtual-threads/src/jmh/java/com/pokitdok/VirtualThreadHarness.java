@@ -0,0 +1,281 @@
+package com.pokitdok;
+
+import com.pokitdok.tests.TapeReplayServer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.simple.JSONValue;
+
+/**
+    Starts a blocking call per thread, for an increasing number of threads at once, and reports
+    how many calls were in flight together, the heap they took and the platform threads that
+    carried them. Run with a small heap, as the {@code loadTest} task does, to see that tens of
+    thousands of concurrent calls need neither a large heap nor a thread pool of that size.
+
+    <p>
+
+    Each of a step's threads makes a few {@code payers} calls in a row through a client from
+    {@link VirtualThreads}. The server holds every response for a log-normal latency, long
+    enough that nearly all of the threads of a step wait on a response at the same time. The responses are small,
+    so that the heap reported is what the calls themselves hold rather than their results. By default the server is
+    a {@link TapeReplayServer} in a child JVM, so that neither its heap nor its sockets count
+    against the client's; {@code --api-base} points the client at another server instead.
+
+    <p>
+
+    The embedded server speaks HTTP/1.1, so every call in flight holds a connection of its own,
+    and the file descriptor limit of the process ({@code ulimit -n}) caps the concurrency that
+    can be reached. Against an HTTP/2 server the calls share a connection instead. Options, all
+    optional:
+    <pre>
+    --max-concurrency=16000   concurrency is stepped 1000, 2000, 4000, ... up to this
+    --calls=3                 calls made in a row by each thread
+    --latency=2000            median latency of the embedded server, in milliseconds
+    --threads=virtual         or platform, to compare with a thread per call of the usual kind
+    --codec=simple            or fast, the JSON codec responses are decoded with
+    --api-base=URL            server to call instead of the embedded one
+    --output=FILE             where to write the JSON results
+    </pre>
+*/
+public class VirtualThreadHarness {
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        options.put("max-concurrency", "16000");
+        options.put("calls", "3");
+        options.put("latency", "2000");
+        options.put("threads", "virtual");
+        options.put("codec", "simple");
+        options.put("output", "build/reports/virtual-threads/results.json");
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+            options.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+        if (options.containsKey("serve")) {
+            serve(Double.parseDouble(options.get("latency")));
+            return;
+        }
+
+        int maxConcurrency = Integer.parseInt(options.get("max-concurrency"));
+        int calls = Integer.parseInt(options.get("calls"));
+        boolean virtual = "virtual".equals(options.get("threads"));
+
+        Process server = null;
+        String apiBase = options.get("api-base");
+        if (apiBase == null) {
+            server = fork(options.get("latency"));
+            apiBase = new BufferedReader(new InputStreamReader(server.getInputStream(), "UTF-8")).readLine();
+            if (apiBase == null) {
+                throw new IllegalStateException("The tape replay server did not start");
+            }
+        }
+
+        HTTP2Settings settings = VirtualThreads.settings(maxConcurrency);
+        settings.setJSONCodec("fast".equals(options.get("codec")) ? new FastJSONCodec() : new SimpleJSONCodec());
+        PokitDok client = VirtualThreads.client("client_id", "client_secret", apiBase, settings);
+        List<Step> steps = new ArrayList<Step>();
+        try {
+            client.payers();
+            System.out.println(String.format("%11s %9s %7s %12s %10s %14s %16s", "concurrency", "calls", "errors",
+                "calls/s", "in flight", "live heap (MB)", "platform threads"));
+            for (int concurrency = Math.min(1000, maxConcurrency); ;
+                 concurrency = Math.min(concurrency * 2, maxConcurrency)) {
+                Step step = runStep(client, concurrency, calls, virtual);
+                steps.add(step);
+                System.out.println(step);
+                if (concurrency == maxConcurrency) {
+                    break;
+                }
+            }
+        }
+        finally {
+            client.close();
+            if (server != null) {
+                server.getOutputStream().close();
+                server.waitFor(10, TimeUnit.SECONDS);
+                server.destroy();
+            }
+        }
+
+        List<Object> results = new ArrayList<Object>();
+        for (Step step : steps) {
+            results.add(step.toJSON(virtual));
+        }
+        File output = new File(options.get("output"));
+        if (output.getAbsoluteFile().getParentFile() != null) {
+            output.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
+        try {
+            JSONValue.writeJSONString(results, writer);
+        }
+        finally {
+            writer.close();
+        }
+        System.out.println("Results written to " + output);
+    }
+
+    /** Starts the tape replay server in a child JVM on this class path. */
+    private static Process fork(String latency) throws Exception {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            VirtualThreadHarness.class.getName(), "--serve=true", "--latency=" + latency)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    }
+
+    /** Runs the tape replay server, serving on virtual threads, until standard input is closed. */
+    private static void serve(double latency) throws Exception {
+        TapeReplayServer server = new TapeReplayServer("payers");
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.setLatency(TapeReplayServer.logNormal(latency, 0.5));
+        server.start();
+        System.out.println(server.getApiBase());
+        System.out.flush();
+        try {
+            while (System.in.read() >= 0) {
+                // wait for the parent to go away
+            }
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    static Step runStep(final PokitDok client, int concurrency, final int calls, boolean virtual) throws Exception {
+        final Step step = new Step(concurrency);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final List<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) {
+                heap.add(pool);
+            }
+        }
+        System.gc();
+        threads.resetPeakThreadCount();
+        final AtomicLong peakHeap = new AtomicLong();
+        Thread sampler = new Thread(new Runnable() {
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peakHeap.accumulateAndGet(liveHeap(heap), Math::max);
+                    try {
+                        Thread.sleep(10);
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "heap-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        ThreadFactory factory = virtual ? Thread.ofVirtual().name("caller-", 0).factory()
+            : Thread.ofPlatform().name("caller-", 0).factory();
+        long start = System.nanoTime();
+        ExecutorService callers = Executors.newThreadPerTaskExecutor(factory);
+        try {
+            for (int i = 0; i < concurrency; i++) {
+                callers.execute(new Runnable() {
+                    public void run() {
+                        for (int call = 0; call < calls; call++) {
+                            step.peakInFlight.accumulateAndGet(step.inFlight.incrementAndGet(), Math::max);
+                            try {
+                                client.payers();
+                                step.calls.incrementAndGet();
+                            }
+                            catch (Exception e) {
+                                step.errors.incrementAndGet();
+                            }
+                            finally {
+                                step.inFlight.decrementAndGet();
+                            }
+                        }
+                    }
+                });
+            }
+        }
+        finally {
+            callers.close();
+        }
+        step.elapsed = System.nanoTime() - start;
+        sampler.interrupt();
+        sampler.join();
+        step.peakHeap = peakHeap.get();
+        step.peakPlatformThreads = threads.getPeakThreadCount();
+        return step;
+    }
+
+    /**
+        Returns the heap in use after the latest collection: what the calls in flight hold on to,
+        without the garbage they have left since.
+    */
+    private static long liveHeap(List<MemoryPoolMXBean> heap) {
+        long used = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            used += (usage != null) ? usage.getUsed() : 0;
+        }
+        return used;
+    }
+
+    /** The measurements of one concurrency step. */
+    static class Step {
+        final int           concurrency;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger peakInFlight = new AtomicInteger();
+        final AtomicLong    calls = new AtomicLong();
+        final AtomicLong    errors = new AtomicLong();
+        long                elapsed;
+        long                peakHeap;
+        int                 peakPlatformThreads;
+
+        Step(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        double throughput() {
+            return calls.get() / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        Map<String, Object> toJSON(boolean virtual) {
+            Map<String, Object> json = new LinkedHashMap<String, Object>();
+            json.put("threads", virtual ? "virtual" : "platform");
+            json.put("concurrency", concurrency);
+            json.put("calls", calls.get());
+            json.put("errors", errors.get());
+            json.put("throughput", throughput());
+            json.put("peakInFlight", peakInFlight.get());
+            json.put("peakLiveHeapBytes", peakHeap);
+            json.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+            json.put("peakPlatformThreads", peakPlatformThreads);
+            return json;
+        }
+
+        public String toString() {
+            return String.format("%11d %9d %7d %12.1f %10d %14.1f %16d", concurrency, calls.get(), errors.get(),
+                throughput(), peakInFlight.get(), peakHeap / (1024.0 * 1024.0), peakPlatformThreads);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+    Runs the blocking {@link PokitDok} client on virtual threads, so that fan-out code can give
+    every call a thread of its own, tens of thousands at a time, instead of sizing a pool of
+    platform threads to the number of calls it wants in flight.
+
+    <p>
+
+    A virtual thread blocked on I/O gives up its carrier thread, unless it holds a monitor, in
+    which case it stays pinned to the carrier until the I/O completes. The clients made here
+    therefore send their requests through an {@link HTTP2Connector}, whose requests, stream cap
+    and token refresh take no monitors, rather than an {@link ApacheHTTPConnector}: Apache
+    HttpClient 4.5 waits for a pooled connection inside a {@code synchronized} block, so callers
+    queued for a connection pin every carrier, and the calls holding one can no longer be
+    scheduled to finish. The JDK's HTTP client runs its own asynchronous work on virtual threads
+    as well, so a burst of responses does not grow a pool of platform threads either.
+
+    <p>
+
+    <b>Usage example:</b>
+    <pre>
+    {@code
+        PokitDok pd = VirtualThreads.client(clientId, clientSecret);
+        try (ExecutorService executor = VirtualThreads.executor()) {
+            for (Map<String, Object> member : members) {
+                executor.submit(() -> store(member, pd.eligibility(member)));
+            }
+        }
+    }
+    </pre>
+
+    The stream cap of the connector still bounds how many of those calls are on the wire at
+    once; the others wait for a stream without holding a carrier. Raise it with
+    {@link #settings(int)} to as many concurrent streams as the server accepts.
+*/
+public final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+        Returns an executor that runs every task on a new virtual thread. Closing it waits for
+        the submitted tasks to complete.
+
+        @return the executor
+    */
+    public static ExecutorService executor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("pokitdok-", 0).factory());
+    }
+
+    /**
+        Returns connector settings under which the JDK's HTTP client runs its asynchronous work
+        on virtual threads, with the default stream cap.
+
+        @return the settings, which may be changed further before creating a connector
+    */
+    public static HTTP2Settings settings() {
+        return settings(HTTP2Settings.DEFAULT_MAX_CONCURRENT_STREAMS);
+    }
+
+    /**
+        Returns connector settings under which the JDK's HTTP client runs its asynchronous work
+        on virtual threads.
+
+        @param maxConcurrentStreams the maximum number of calls on the wire at once
+        @return the settings, which may be changed further before creating a connector
+    */
+    public static HTTP2Settings settings(int maxConcurrentStreams) {
+        HTTP2Settings settings = new HTTP2Settings();
+        settings.setMaxConcurrentStreams(maxConcurrentStreams);
+        settings.setExecutor(Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("pokitdok-http-", 0).factory()));
+        return settings;
+    }
+
+    /**
+        Creates a client of the PokitDok Platform that is safe to call from virtual threads.
+
+        @param clientId a PokitDok client ID
+        @param clientSecret a PokitDok client secret
+        @return the client
+        @throws IOException if the client could not be created
+    */
+    public static PokitDok client(String clientId, String clientSecret) throws IOException {
+        return client(clientId, clientSecret, PokitDok.DEFAULT_API_BASE, settings());
+    }
+
+    /**
+        Creates a client that is safe to call from virtual threads.
+
+        @param clientId a PokitDok client ID
+        @param clientSecret a PokitDok client secret
+        @param apiBase the base Platform url
+        @param settings the connector settings, typically from {@link #settings(int)}
+        @return the client
+        @throws IOException if the client could not be created
+    */
+    public static PokitDok client(String clientId, String clientSecret, String apiBase, HTTP2Settings settings)
+        throws IOException {
+        HTTP2Connector connector = new HTTP2Connector(clientId, clientSecret, PokitDok.getDefaultHeaders(), apiBase,
+            settings);
+        return new PokitDok(clientId, clientSecret, connector, apiBase);
+    }
+
+    /**
+        Creates an eligibility batch that runs each of its checks on a virtual thread of its own.
+
+        @param client the client to send eligibility requests through, typically from
+            {@link #client(String, String)}
+        @param parallelism the maximum number of checks running at once
+        @param maxPerTradingPartner the maximum number of checks running at once against a
+            single trading partner
+        @return the batch
+    */
+    public static EligibilityBatch eligibilityBatch(PokitDok client, int parallelism, int maxPerTradingPartner) {
+        return new EligibilityBatch(client, parallelism, maxPerTradingPartner, parallelism * 4, executor());
+    }
+}
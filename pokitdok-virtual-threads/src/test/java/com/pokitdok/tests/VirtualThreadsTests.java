@@ -0,0 +1,127 @@
+package com.pokitdok.tests;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Consumer;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class VirtualThreadsTests {
+	private static final int CALLS = 500;
+
+	@Test
+	@Category(UnitTests.class)
+	public void callsDoNotPinCarrierThreadsTest() throws Exception {
+		TapeReplayServer server = new TapeReplayServer("activities");
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.setLatency(TapeReplayServer.fixed(50));
+		server.start();
+		final PokitDok client = VirtualThreads.client("client_id", "client_secret", server.getApiBase(),
+			VirtualThreads.settings(CALLS));
+		final List<String> pinned = new CopyOnWriteArrayList<String>();
+		RecordingStream recording = new RecordingStream();
+		try {
+			/* Load and initialize the classes of a call first: class initializers pin, once. */
+			client.activities();
+			recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+			recording.onEvent("jdk.VirtualThreadPinned", new Consumer<RecordedEvent>() {
+				public void accept(RecordedEvent event) {
+					if (event.getThread().getJavaName().startsWith("caller-")) {
+						pinned.add(describe(event));
+					}
+				}
+			});
+			recording.startAsync();
+
+			final AtomicInteger inFlight = new AtomicInteger();
+			final AtomicInteger maxInFlight = new AtomicInteger();
+			ExecutorService callers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("caller-", 0).factory());
+			List<Future<Map<String, Object>>> calls = new ArrayList<Future<Map<String, Object>>>();
+			for (int i = 0; i < CALLS; i++) {
+				calls.add(callers.submit(new Callable<Map<String, Object>>() {
+					public Map<String, Object> call() throws Exception {
+						maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+						try {
+							return client.activities();
+						}
+						finally {
+							inFlight.decrementAndGet();
+						}
+					}
+				}));
+			}
+			for (Future<Map<String, Object>> call : calls) {
+				assertNotNull(call.get(30, TimeUnit.SECONDS).get("data"));
+			}
+			callers.close();
+			recording.stop();
+
+			assertTrue("Pinned: " + pinned, pinned.isEmpty());
+			assertTrue(maxInFlight.get() > CALLS / 2);
+			assertEquals(1, server.getTokenRequests());
+		}
+		finally {
+			recording.close();
+			client.close();
+			server.stop();
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void eligibilityBatchRunsOnVirtualThreadsTest() throws Exception {
+		PokitDokStubServer server = new PokitDokStubServer();
+		server.start();
+		PokitDok client = VirtualThreads.client("client_id", "client_secret", server.getApiBase(),
+			VirtualThreads.settings());
+		final AtomicInteger results = new AtomicInteger();
+		final AtomicInteger platformThreads = new AtomicInteger();
+		try {
+			List<Map<String, Object>> requests = new ArrayList<Map<String, Object>>();
+			for (int i = 0; i < 50; i++) {
+				Map<String, Object> request = new HashMap<String, Object>();
+				request.put("member_id", "W" + i);
+				request.put("trading_partner_id", "MOCKPAYER");
+				requests.add(request);
+			}
+			VirtualThreads.eligibilityBatch(client, 16, 16).run(requests.iterator(),
+				new EligibilityBatch.ResultListener() {
+					public void onResult(Map<String, Object> request, Map<String, Object> response) {
+						results.incrementAndGet();
+						if (!Thread.currentThread().isVirtual()) {
+							platformThreads.incrementAndGet();
+						}
+					}
+
+					public void onFailure(Map<String, Object> request, Exception error) {
+					}
+				});
+
+			assertEquals(50, results.get());
+			assertEquals(0, platformThreads.get());
+		}
+		finally {
+			client.close();
+			server.stop();
+		}
+	}
+
+	private static String describe(RecordedEvent event) {
+		StringBuilder description = new StringBuilder(event.getThread().getJavaName());
+		if (event.getStackTrace() != null) {
+			for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+				description.append("\n\tat ").append(frame.getMethod().getType().getName())
+					.append('.').append(frame.getMethod().getName());
+			}
+		}
+		return description.toString();
+	}
+}
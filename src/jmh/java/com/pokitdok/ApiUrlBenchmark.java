@@ -0,0 +1,118 @@
+package com.pokitdok;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.utils.URIBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+    Measures building request URLs with {@link PokitDok#apiUrl(String, String, Map)}, which every
+    GET and DELETE request goes through, and with {@link Endpoint} templates. The
+    {@code uriBuilder} benchmarks build the same URLs the way {@code apiUrl} used to, by
+    concatenation and a {@link URIBuilder}, as a baseline; run with {@code -prof gc} to compare
+    allocation as well as time.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ApiUrlBenchmark {
+    private static final String API_BASE = PokitDok.DEFAULT_API_BASE;
+
+    private Map<String, Object> fewParams;
+    private Map<String, Object> manyParams;
+    private Map<String, Object> typedParams;
+    private String              npi = "1912301953";
+
+    @Setup
+    public void setup() {
+        fewParams = new LinkedHashMap<String, Object>();
+        fewParams.put("npi", "1467560003");
+
+        /* A provider search as a directory page would send it. */
+        manyParams = new LinkedHashMap<String, Object>();
+        manyParams.put("zipcode", "29307");
+        manyParams.put("radius", "10mi");
+        manyParams.put("specialty", "Family Practice");
+        manyParams.put("first_name", "JEROME");
+        manyParams.put("last_name", "AYA-AY");
+        manyParams.put("sort", "distance");
+        manyParams.put("limit", "20");
+        manyParams.put("offset", "40");
+
+        /* The same search with typed and multi-valued values, which apiUrl used to reject. */
+        typedParams = new LinkedHashMap<String, Object>();
+        typedParams.put("zipcode", 29307);
+        typedParams.put("radius", "10mi");
+        typedParams.put("specialty", Arrays.asList("Family Practice", "Internal Medicine"));
+        typedParams.put("accepting_new_patients", true);
+        typedParams.put("limit", 20);
+        typedParams.put("offset", 40);
+    }
+
+    /** The former implementation of {@code apiUrl}, for string values only. */
+    private static String uriBuilder(String apiBase, String endpoint, Map<String, Object> params) throws Exception {
+        String uri = apiBase + "/api/" + PokitDok.API_VERSION + "/" + endpoint;
+        if (params == null || params.isEmpty()) {
+            return uri;
+        }
+        URIBuilder uriWithParams = new URIBuilder(uri);
+        for (String key : params.keySet()) {
+            uriWithParams.addParameter(key, (String) params.get(key));
+        }
+        return uriWithParams.build().toString();
+    }
+
+    @Benchmark
+    public String noParams() {
+        return PokitDok.apiUrl(API_BASE, "tradingpartners/", null);
+    }
+
+    @Benchmark
+    public String fewParams() {
+        return PokitDok.apiUrl(API_BASE, "providers/", fewParams);
+    }
+
+    @Benchmark
+    public String manyParams() {
+        return PokitDok.apiUrl(API_BASE, "providers/", manyParams);
+    }
+
+    @Benchmark
+    public String typedParams() {
+        return PokitDok.apiUrl(API_BASE, "providers/", typedParams);
+    }
+
+    @Benchmark
+    public String templatedEndpoint() {
+        return Endpoint.PHARMACY_NETWORK.url(API_BASE, fewParams, npi);
+    }
+
+    @Benchmark
+    public String uriBuilderFewParams() throws Exception {
+        return uriBuilder(API_BASE, "providers/", fewParams);
+    }
+
+    @Benchmark
+    public String uriBuilderManyParams() throws Exception {
+        return uriBuilder(API_BASE, "providers/", manyParams);
+    }
+
+    @Benchmark
+    public String uriBuilderTemplatedEndpoint() throws Exception {
+        return uriBuilder(API_BASE, "pharmacy/network/" + npi, fewParams);
+    }
+}
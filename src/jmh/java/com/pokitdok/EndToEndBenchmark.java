@@ -0,0 +1,69 @@
+package com.pokitdok;
+
+import com.pokitdok.tests.PokitDokStubServer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+    Measures whole requests through a {@link PokitDok} client and {@link ApacheHTTPConnector},
+    against the in-process {@link PokitDokStubServer} over loopback, so that the client's own
+    overhead is measured rather than the network's or the platform's.
+*/
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+    private PokitDokStubServer  server;
+    private PokitDok            client;
+    private Map<String, Object> eligibility;
+    private Map<String, Object> providerSearch;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        server = new PokitDokStubServer();
+        server.start();
+        client = new PokitDok("client_id", "client_secret",
+            new ApacheHTTPConnector("client_id", "client_secret", PokitDok.getDefaultHeaders(), server.getApiBase()),
+            server.getApiBase());
+
+        eligibility = (JSONObject) new JSONParser().parse(Payloads.requestBody("eligibility"));
+        providerSearch = new HashMap<String, Object>();
+        providerSearch.put("zipcode", "29307");
+        providerSearch.put("radius", "10mi");
+        providerSearch.put("results", "20");
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public Map<String, Object> eligibility() throws Exception {
+        return client.eligibility(eligibility);
+    }
+
+    @Benchmark
+    public Map<String, Object> providers() throws Exception {
+        return client.providers(providerSearch);
+    }
+}
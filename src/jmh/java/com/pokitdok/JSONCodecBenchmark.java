@@ -0,0 +1,98 @@
+package com.pokitdok;
+
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+    Compares the {@link JSONCodec}s on the recorded API responses: decoding them, with and
+    without a {@link DataVisitor}, and encoding the decoded documents back. Run with
+    {@code -prof gc} to compare allocation rates as well.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSONCodecBenchmark {
+    /** The codec measured. */
+    @Param({"simple", "fast"})
+    public String codec;
+
+    /** The tape whose first API response is decoded. */
+    @Param({"eligibility", "activities", "providers"})
+    public String tape;
+
+    private JSONCodec           json;
+    private String              body;
+    private Map<String, Object> document;
+
+    @Setup
+    public void setup() throws Exception {
+        json = "fast".equals(codec) ? new FastJSONCodec() : new SimpleJSONCodec();
+        body = Payloads.responseBody(tape);
+        document = json.decode(new StringReader(body), null);
+    }
+
+    @Benchmark
+    public Map<String, Object> decode() throws Exception {
+        return json.decode(new StringReader(body), null);
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeWithVisitor(final Blackhole blackhole) throws Exception {
+        return json.decode(new StringReader(body), new DataVisitor() {
+            public void visit(Object element) {
+                blackhole.consume(element);
+            }
+        });
+    }
+
+    @Benchmark
+    public void encode(Blackhole blackhole) throws Exception {
+        json.encode(document, new BlackholeWriter(blackhole));
+    }
+
+    /** Swallows the encoded text, so that only the encoding is measured. */
+    private static final class BlackholeWriter extends Writer {
+        private final Blackhole blackhole;
+
+        BlackholeWriter(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        public void write(int c) {
+            blackhole.consume(c);
+        }
+
+        public void write(char[] chars, int offset, int length) {
+            blackhole.consume(chars);
+            blackhole.consume(length);
+        }
+
+        public void write(String text, int offset, int length) {
+            blackhole.consume(text);
+            blackhole.consume(length);
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+}
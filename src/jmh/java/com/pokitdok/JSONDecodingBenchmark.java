@@ -0,0 +1,66 @@
+package com.pokitdok;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.json.simple.parser.JSONParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+    Measures decoding response bodies: parsing an already buffered string, as the
+    string-returning connector methods do, against decoding straight from the byte stream, with
+    and without a {@link DataVisitor}.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSONDecodingBenchmark {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The tape whose first API response is decoded. */
+    @Param({"eligibility", "activities", "providers"})
+    public String tape;
+
+    private String body;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws Exception {
+        body = Payloads.responseBody(tape);
+        bytes = body.getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public Object parseString() throws Exception {
+        return new JSONParser().parse(body);
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeStream() throws Exception {
+        return JSONStreamDecoder.decode(new ByteArrayInputStream(bytes), UTF_8, null);
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeStreamWithVisitor(final Blackhole blackhole) throws Exception {
+        return JSONStreamDecoder.decode(new ByteArrayInputStream(bytes), UTF_8, new DataVisitor() {
+            public void visit(Object element) {
+                blackhole.consume(element);
+            }
+        });
+    }
+}
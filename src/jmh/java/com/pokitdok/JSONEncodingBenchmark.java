@@ -0,0 +1,83 @@
+package com.pokitdok;
+
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+    Measures serializing request parameters into the JSON body of POST and PUT requests: into
+    a string and then bytes, against streaming straight to the connection with a
+    {@link JSONEntity}.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSONEncodingBenchmark {
+    private static final JSONCodec CODEC = new SimpleJSONCodec();
+
+    private Map<String, Object> eligibility;
+    private Map<String, Object> claim;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        eligibility = (JSONObject) new JSONParser().parse(Payloads.requestBody("eligibility"));
+        claim = Payloads.fixture("claim.json");
+    }
+
+    @Benchmark
+    public String eligibility() {
+        return JSONValue.toJSONString(eligibility);
+    }
+
+    @Benchmark
+    public String claim() {
+        return JSONValue.toJSONString(claim);
+    }
+
+    @Benchmark
+    public byte[] claimBytes() throws Exception {
+        return JSONValue.toJSONString(claim).getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public long claimStreamed() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        new JSONEntity(claim, CODEC).writeTo(out);
+        return out.count;
+    }
+
+    @Benchmark
+    public long claimMeasured() {
+        return new JSONEntity(claim, CODEC).measure();
+    }
+
+    /** Stands in for the connection, discarding what is written. */
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        public void write(int b) {
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.pokitdok;
+
+import com.pokitdok.tests.TapeReplayServer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+
+/**
+    Drives a weighted mix of API calls through a real {@link PokitDok} client at increasing
+    concurrency, and reports the throughput and latency percentiles reached at each step.
+
+    <p>
+
+    Each step runs a fixed number of closed-loop workers, each sending its next request as soon
+    as the previous one completes. A closed loop hides stalls: while a worker waits on a slow
+    response, the requests it would have sent in the meantime are never sent, and never
+    measured. The corrected percentiles make up for this the way HdrHistogram does: a warm-up
+    at the same concurrency gives the expected interval between a worker's requests, and every
+    response slower than that is recorded together with the samples of the requests that
+    should have been sent while it was outstanding.
+
+    <p>
+
+    By default the client talks to an embedded {@link TapeReplayServer} with log-normal latency;
+    {@code --api-base} points it at another server instead. Options, all optional:
+    <pre>
+    --mix=eligibility=70,providers=20,claims=10   endpoint weights; also activities,
+                                                  tradingpartners, mpc and payers
+    --max-concurrency=64      concurrency is stepped 1, 2, 4, ... up to this
+    --duration=10             measured seconds per step
+    --warmup=3                warm-up seconds per step
+    --latency=20              median injected latency of the embedded server, in milliseconds
+    --connections=64          connection pool size
+    --api-base=URL            server to load instead of the embedded one
+    --output=FILE             where to write the JSON results
+    </pre>
+*/
+public class LoadHarness {
+    /** One kind of API call in the mix. */
+    interface Call {
+        void call(PokitDok client) throws Exception;
+    }
+
+    private static final String CLAIM_RESPONSE = "{\"meta\": {\"application_mode\": \"test\"}, \"data\": {"
+        + "\"id\": \"5362b5a064da150ef6f2526c\", \"name\": \"Claim\", \"state\": {\"name\": \"init\"}, "
+        + "\"transition_path\": [\"init\", \"submit\", \"wait\", \"complete\"], \"units_total\": 1}}";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        options.put("mix", "eligibility=70,providers=20,claims=10");
+        options.put("max-concurrency", "64");
+        options.put("duration", "10");
+        options.put("warmup", "3");
+        options.put("latency", "20");
+        options.put("output", "build/reports/load/results.json");
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+            options.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+
+        int maxConcurrency = Integer.parseInt(options.get("max-concurrency"));
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+        long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+        Mix mix = new Mix(options.get("mix"), calls());
+
+        TapeReplayServer server = null;
+        String apiBase = options.get("api-base");
+        if (apiBase == null) {
+            server = new TapeReplayServer();
+            server.addRecording(PokitDokRequest.POST, "claims/", 200, CLAIM_RESPONSE);
+            server.setLatency(TapeReplayServer.logNormal(Double.parseDouble(options.get("latency")), 0.5));
+            server.start();
+            apiBase = server.getApiBase();
+        }
+
+        ConnectorSettings settings = new ConnectorSettings();
+        int connections = options.containsKey("connections")
+            ? Integer.parseInt(options.get("connections")) : maxConcurrency;
+        settings.setMaxTotalConnections(connections);
+        settings.setMaxConnectionsPerRoute(connections);
+        PokitDok client = new PokitDok("client_id", "client_secret",
+            new ApacheHTTPConnector("client_id", "client_secret", PokitDok.getDefaultHeaders(), apiBase, settings),
+            apiBase);
+
+        List<Step> steps = new ArrayList<Step>();
+        try {
+            System.out.println(String.format("%11s %12s %7s | %-36s | %-36s", "concurrency", "requests/s", "errors",
+                "p50 / p99 / p999 / max (ms)", "corrected p50 / p99 / p999 / max"));
+            for (int concurrency = 1; ; concurrency = Math.min(concurrency * 2, maxConcurrency)) {
+                Step step = runStep(client, mix, concurrency, warmup, duration);
+                steps.add(step);
+                System.out.println(step);
+                if (concurrency == maxConcurrency) {
+                    break;
+                }
+            }
+        }
+        finally {
+            client.close();
+            if (server != null) {
+                server.stop();
+            }
+        }
+
+        List<Object> results = new ArrayList<Object>();
+        for (Step step : steps) {
+            results.add(step.toJSON());
+        }
+        File output = new File(options.get("output"));
+        if (output.getAbsoluteFile().getParentFile() != null) {
+            output.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
+        try {
+            JSONValue.writeJSONString(results, writer);
+        }
+        finally {
+            writer.close();
+        }
+        System.out.println("Results written to " + output);
+    }
+
+    /** The calls the mix can be made of, with payloads from the tapes and test fixtures. */
+    @SuppressWarnings("unchecked")
+    static Map<String, Call> calls() throws Exception {
+        final Map<String, Object> eligibility =
+            (JSONObject) new JSONParser().parse(Payloads.requestBody("eligibility"));
+        final Map<String, Object> claim = Payloads.fixture("claim.json");
+        final Map<String, Object> providerSearch = new HashMap<String, Object>();
+        providerSearch.put("npi", "1467560003");
+
+        Map<String, Call> calls = new LinkedHashMap<String, Call>();
+        calls.put("eligibility", new Call() {
+            public void call(PokitDok client) throws Exception {
+                client.eligibility(eligibility);
+            }
+        });
+        calls.put("providers", new Call() {
+            public void call(PokitDok client) throws Exception {
+                client.providers(providerSearch);
+            }
+        });
+        calls.put("claims", new Call() {
+            public void call(PokitDok client) throws Exception {
+                client.claims(claim);
+            }
+        });
+        calls.put("activities", new Call() {
+            public void call(PokitDok client) throws Exception {
+                client.activities();
+            }
+        });
+        calls.put("tradingpartners", new Call() {
+            public void call(PokitDok client) throws Exception {
+                client.tradingPartners();
+            }
+        });
+        calls.put("mpc", new Call() {
+            public void call(PokitDok client) throws Exception {
+                client.mpc("99213", null);
+            }
+        });
+        calls.put("payers", new Call() {
+            public void call(PokitDok client) throws Exception {
+                client.payers();
+            }
+        });
+        return calls;
+    }
+
+    /**
+        Runs one step: a warm-up to find the expected interval between a worker's requests, then
+        the measured run.
+    */
+    static Step runStep(PokitDok client, Mix mix, int concurrency, long warmup, long duration) throws Exception {
+        Step warm = new Step(concurrency, 0);
+        run(client, mix, warm, warmup);
+        Step step = new Step(concurrency, warm.raw.getP50());
+        run(client, mix, step, duration);
+        return step;
+    }
+
+    private static void run(final PokitDok client, final Mix mix, final Step step, long duration) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(step.concurrency);
+        final long start = System.nanoTime();
+        final long end = start + duration;
+        try {
+            List<Future<Void>> running = new ArrayList<Future<Void>>();
+            for (int i = 0; i < step.concurrency; i++) {
+                final long seed = i;
+                running.add(workers.submit(new Callable<Void>() {
+                    public Void call() {
+                        Random random = new Random(seed);
+                        for (long sent = System.nanoTime(); sent < end; sent = System.nanoTime()) {
+                            try {
+                                mix.next(random).call(client);
+                            }
+                            catch (Exception e) {
+                                step.errors.incrementAndGet();
+                            }
+                            step.record(System.nanoTime() - sent);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> worker : running) {
+                worker.get();
+            }
+        }
+        finally {
+            workers.shutdownNow();
+        }
+        step.elapsed = System.nanoTime() - start;
+    }
+
+    /** Picks calls at random in proportion to their weights. */
+    static class Mix {
+        private final Call[] calls;
+        private final int[]  cumulativeWeights;
+
+        Mix(String spec, Map<String, Call> available) {
+            String[] entries = spec.split(",");
+            calls = new Call[entries.length];
+            cumulativeWeights = new int[entries.length];
+            int total = 0;
+            for (int i = 0; i < entries.length; i++) {
+                String[] entry = entries[i].trim().split("=");
+                calls[i] = available.get(entry[0]);
+                if (calls[i] == null || entry.length != 2) {
+                    throw new IllegalArgumentException("Unknown mix entry " + entries[i] + "; expected one of "
+                        + available.keySet() + " with a weight, such as eligibility=70");
+                }
+                total += Integer.parseInt(entry[1]);
+                cumulativeWeights[i] = total;
+            }
+        }
+
+        Call next(Random random) {
+            int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = 0;
+            while (cumulativeWeights[i] <= pick) {
+                i++;
+            }
+            return calls[i];
+        }
+    }
+
+    /** The measurements of one concurrency step. */
+    static class Step {
+        final int              concurrency;
+        final long             expectedInterval;
+        final LatencyHistogram raw = new LatencyHistogram();
+        final LatencyHistogram corrected = new LatencyHistogram();
+        final AtomicLong       errors = new AtomicLong();
+        long                   elapsed;
+
+        Step(int concurrency, long expectedInterval) {
+            this.concurrency = concurrency;
+            this.expectedInterval = expectedInterval;
+        }
+
+        /**
+            Records a response time, and in the corrected histogram also the requests a stalled
+            worker did not send: one for each expected interval the response overran, each
+            having waited an interval less than the one before.
+        */
+        void record(long nanos) {
+            raw.record(nanos);
+            corrected.record(nanos);
+            if (expectedInterval > 0) {
+                for (long missed = nanos - expectedInterval; missed >= expectedInterval; missed -= expectedInterval) {
+                    corrected.record(missed);
+                }
+            }
+        }
+
+        double throughput() {
+            return raw.getCount() / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        Map<String, Object> toJSON() {
+            Map<String, Object> json = new LinkedHashMap<String, Object>();
+            json.put("concurrency", concurrency);
+            json.put("requests", raw.getCount());
+            json.put("errors", errors.get());
+            json.put("throughput", throughput());
+            json.put("expectedIntervalMicros", TimeUnit.NANOSECONDS.toMicros(expectedInterval));
+            json.put("latencyMicros", percentiles(raw));
+            json.put("correctedLatencyMicros", percentiles(corrected));
+            return json;
+        }
+
+        private static Map<String, Object> percentiles(LatencyHistogram histogram) {
+            Map<String, Object> json = new LinkedHashMap<String, Object>();
+            json.put("p50", TimeUnit.NANOSECONDS.toMicros(histogram.getP50()));
+            json.put("p90", TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(0.9)));
+            json.put("p99", TimeUnit.NANOSECONDS.toMicros(histogram.getP99()));
+            json.put("p999", TimeUnit.NANOSECONDS.toMicros(histogram.getP999()));
+            json.put("max", TimeUnit.NANOSECONDS.toMicros(histogram.getMax()));
+            return json;
+        }
+
+        private static String millis(LatencyHistogram histogram) {
+            return String.format("%.1f / %.1f / %.1f / %.1f", histogram.getP50() / 1e6, histogram.getP99() / 1e6,
+                histogram.getP999() / 1e6, histogram.getMax() / 1e6);
+        }
+
+        public String toString() {
+            return String.format("%11d %12.1f %7d | %-36s | %-36s", concurrency, throughput(), errors.get(),
+                millis(raw), millis(corrected));
+        }
+    }
+}
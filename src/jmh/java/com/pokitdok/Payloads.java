@@ -0,0 +1,61 @@
+package com.pokitdok;
+
+import com.pokitdok.tests.BetamaxTape;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+    Realistic request and response bodies for the benchmarks, taken from the Betamax tapes and
+    JSON fixtures the tests use.
+*/
+final class Payloads {
+    private Payloads() {
+    }
+
+    /**
+        Returns the body of the first API response recorded on a tape.
+
+        @param tape the tape name, such as "providers"
+    */
+    static String responseBody(String tape) throws IOException {
+        return BetamaxTape.load(tape).getApiInteractions().get(0).responseBody;
+    }
+
+    /**
+        Returns the body of the first API request recorded on a tape.
+
+        @param tape the tape name, such as "eligibility"
+    */
+    static String requestBody(String tape) throws IOException {
+        return BetamaxTape.load(tape).getApiInteractions().get(0).requestBody;
+    }
+
+    /** Returns the headers of the first API response recorded on a tape. */
+    static Map<String, String> responseHeaders(String tape) throws IOException {
+        return BetamaxTape.load(tape).getApiInteractions().get(0).responseHeaders;
+    }
+
+    /**
+        Returns a JSON fixture from the test resources, decoded.
+
+        @param name the fixture name, such as "claim.json"
+    */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> fixture(String name) throws IOException, ParseException {
+        InputStream in = Payloads.class.getResourceAsStream("/" + name);
+        if (in == null) {
+            throw new IOException("No fixture named " + name);
+        }
+        try {
+            return (JSONObject) new JSONParser().parse(IOUtils.toString(in, "UTF-8"));
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.pokitdok;
+
+import java.util.Map;
+
+/**
+    An OAuth2 access token issued by the platform's {@code /oauth2/token} endpoint, together with
+    the time at which it expires.
+*/
+public class AccessToken {
+    /** Expiry used for tokens whose response carried neither {@code expires_in} nor {@code expires}. */
+    public static final long NEVER_EXPIRES = Long.MAX_VALUE;
+
+    private final String token;
+    private final long   expiresAt;
+
+    /**
+        Creates a new access token.
+
+        @param token the bearer token value
+        @param expiresAt the expiry time, in milliseconds since the epoch
+    */
+    public AccessToken(String token, long expiresAt) {
+        this.token = token;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+        Builds an access token from a parsed {@code /oauth2/token} response. The relative
+        {@code expires_in} field is preferred over the absolute {@code expires} timestamp, since
+        it does not depend on the client's clock agreeing with the server's.
+
+        @param response the parsed token response
+        @param now the time at which the token was requested, in milliseconds since the epoch
+        @return the access token, or null if the response contains no {@code access_token}
+    */
+    public static AccessToken fromTokenResponse(Map<String, Object> response, long now) {
+        Object token = response.get("access_token");
+        if (token == null) {
+            return null;
+        }
+
+        long expiresAt = NEVER_EXPIRES;
+        Object expiresIn = response.get("expires_in");
+        Object expires = response.get("expires");
+        if (expiresIn instanceof Number) {
+            expiresAt = now + ((Number) expiresIn).longValue() * 1000L;
+        }
+        else if (expires instanceof Number) {
+            expiresAt = ((Number) expires).longValue() * 1000L;
+        }
+
+        return new AccessToken(token.toString(), expiresAt);
+    }
+
+    /**
+        Returns the bearer token value.
+
+        @return the bearer token value
+    */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+        Returns the expiry time of this token.
+
+        @return the expiry time, in milliseconds since the epoch, or {@link #NEVER_EXPIRES}
+    */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+        Checks whether this token has expired at the given time.
+
+        @param now the current time, in milliseconds since the epoch
+        @return true if the token can no longer be used
+    */
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+}
@@ -0,0 +1,292 @@
+package com.pokitdok;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.json.simple.parser.ParseException;
+
+/**
+    Keeps one access token alive per scope on behalf of a connector.
+
+    <p>
+
+    Tokens are requested lazily on first use and then refreshed ahead of their expiry: a
+    background task renews each token a configurable margin before it runs out (or halfway
+    through its lifetime, for tokens shorter-lived than twice the margin), and a caller that
+    finds a token past that point triggers the renewal itself while carrying on with the
+    still-valid token. Only a caller that finds no usable token at all waits for a new one.
+
+    <p>
+
+    Refreshes are single-flight per scope. However many threads need a new token at the same
+    moment, exactly one request is made to the token endpoint and every waiting thread receives
+    its result. Scopes are tracked independently, so renewing the {@link PokitDok#USER_SCHEDULE_SCOPE}
+    token never disturbs the {@link PokitDok#DEFAULT_SCOPE} one.
+
+    <p>
+
+    No lock is held while a token is being fetched; waiting threads block on the in-flight
+    refresh's {@link FutureTask} instead.
+*/
+public class AccessTokenManager implements Closeable {
+    /**
+        Requests new access tokens from the platform. Implemented by connectors on top of their
+        own HTTP client.
+    */
+    public interface TokenSource {
+        /**
+            Requests a new access token for the given scope.
+
+            @param scope the scope to authenticate
+            @return the new token, or null if the platform did not issue one
+            @throws IOException usually implying a connectivity error reaching the platform server
+            @throws ParseException if the platform server's response couldn't be parsed
+            @throws UnauthorizedException if the platform rejected the client's credentials
+        */
+        AccessToken requestToken(String scope) throws IOException, ParseException, UnauthorizedException;
+    }
+
+    /** Default margin before expiry at which tokens are renewed. */
+    public static final long DEFAULT_REFRESH_MARGIN = 60000;
+
+    private final TokenSource                                      source;
+    private final long                                             refreshMargin;
+    private final ConcurrentMap<String, Entry>                     tokens;
+    private final ConcurrentMap<String, FutureTask<AccessToken>>   refreshes;
+    private final ConcurrentMap<String, ScheduledFuture<?>>        scheduledRefreshes;
+    private final ScheduledExecutorService                         scheduler;
+
+    /**
+        Creates a token manager with the default refresh margin.
+
+        @param source the source of new tokens
+    */
+    public AccessTokenManager(TokenSource source) {
+        this(source, DEFAULT_REFRESH_MARGIN);
+    }
+
+    /**
+        Creates a token manager.
+
+        @param source the source of new tokens
+        @param refreshMargin how long before expiry a token is renewed, in milliseconds
+    */
+    public AccessTokenManager(TokenSource source, long refreshMargin) {
+        this.source = source;
+        this.refreshMargin = refreshMargin;
+        this.tokens = new ConcurrentHashMap<String, Entry>();
+        this.refreshes = new ConcurrentHashMap<String, FutureTask<AccessToken>>();
+        this.scheduledRefreshes = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "pokitdok-token-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+        Returns a usable token for the given scope, requesting one if there is none yet or the
+        current one has expired.
+
+        @param scope the scope to return a token for
+        @return the bearer token value, or null if the platform did not issue one
+        @throws IOException usually implying a connectivity error reaching the platform server
+        @throws ParseException if the platform server's response couldn't be parsed
+        @throws UnauthorizedException if the platform rejected the client's credentials
+    */
+    public String getToken(String scope) throws IOException, ParseException, UnauthorizedException {
+        Entry current = tokens.get(scope);
+        long now = System.currentTimeMillis();
+
+        if (current == null || current.token.isExpired(now)) {
+            AccessToken token = awaitRefresh(scope, current);
+            return token == null ? null : token.getToken();
+        }
+        if (now >= current.refreshAt) {
+            refreshInBackground(scope, current);
+        }
+        return current.token.getToken();
+    }
+
+    /**
+        Forces a new token to be requested for the given scope, joining a refresh already in
+        flight if there is one.
+
+        @param scope the scope to authenticate
+        @return the bearer token value, or null if the platform did not issue one
+        @throws IOException usually implying a connectivity error reaching the platform server
+        @throws ParseException if the platform server's response couldn't be parsed
+        @throws UnauthorizedException if the platform rejected the client's credentials
+    */
+    public String refresh(String scope) throws IOException, ParseException, UnauthorizedException {
+        AccessToken token = awaitRefresh(scope, tokens.get(scope));
+        return token == null ? null : token.getToken();
+    }
+
+    /**
+        Discards a token the platform has rejected. The token is only dropped if it is still the
+        current one for its scope, so when many requests fail with the same stale token, only
+        the first causes a refresh.
+
+        @param scope the scope the token belongs to
+        @param token the rejected bearer token value
+    */
+    public void invalidate(String scope, String token) {
+        Entry current = tokens.get(scope);
+        if (current != null && current.token.getToken().equals(token)) {
+            tokens.remove(scope, current);
+        }
+    }
+
+    /**
+        Stops the background refresh thread. Tokens can still be requested on demand afterwards.
+    */
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private AccessToken awaitRefresh(String scope, Entry stale)
+    throws IOException, ParseException, UnauthorizedException {
+        FutureTask<AccessToken> refresh = startRefresh(scope, stale);
+        try {
+            return refresh.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an access token");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            }
+            if (cause instanceof UnauthorizedException) {
+                throw (UnauthorizedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private void refreshInBackground(final String scope, final Entry stale) {
+        if (refreshes.containsKey(scope)) {
+            return;
+        }
+        try {
+            scheduler.execute(new Runnable() {
+                public void run() {
+                    startRefresh(scope, stale);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            /* Closed; the token will be renewed on demand once it expires. */
+        }
+    }
+
+    /**
+        Returns the refresh in flight for the scope, starting one on the calling thread if none is
+        running. Only the thread that installs the task runs it; everybody else waits on it.
+        The stale entry is the one the caller found unusable: if another refresh has replaced it
+        with a valid token in the meantime, that token is returned without asking for a new one.
+    */
+    private FutureTask<AccessToken> startRefresh(final String scope, final Entry stale) {
+        FutureTask<AccessToken> refresh = refreshes.get(scope);
+        if (refresh != null) {
+            return refresh;
+        }
+
+        refresh = new FutureTask<AccessToken>(new Callable<AccessToken>() {
+            public AccessToken call() throws Exception {
+                long requestedAt = System.currentTimeMillis();
+                Entry latest = tokens.get(scope);
+                if (latest != null && latest != stale && !latest.token.isExpired(requestedAt)) {
+                    return latest.token;
+                }
+
+                AccessToken token = source.requestToken(scope);
+                if (token != null) {
+                    Entry entry = new Entry(token, refreshTime(token, requestedAt));
+                    tokens.put(scope, entry);
+                    scheduleRefresh(scope, entry);
+                }
+                else {
+                    tokens.remove(scope);
+                }
+                return token;
+            }
+        });
+
+        FutureTask<AccessToken> inFlight = refreshes.putIfAbsent(scope, refresh);
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        try {
+            refresh.run();
+        }
+        finally {
+            refreshes.remove(scope, refresh);
+        }
+        return refresh;
+    }
+
+    private long refreshTime(AccessToken token, long requestedAt) {
+        if (token.getExpiresAt() == AccessToken.NEVER_EXPIRES) {
+            return AccessToken.NEVER_EXPIRES;
+        }
+        long lifetime = Math.max(0, token.getExpiresAt() - requestedAt);
+        return requestedAt + Math.max(lifetime - refreshMargin, lifetime / 2);
+    }
+
+    private void scheduleRefresh(final String scope, final Entry entry) {
+        if (entry.refreshAt == AccessToken.NEVER_EXPIRES) {
+            return;
+        }
+
+        ScheduledFuture<?> scheduled;
+        try {
+            scheduled = scheduler.schedule(new Runnable() {
+                public void run() {
+                    startRefresh(scope, entry);
+                }
+            }, Math.max(0, entry.refreshAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            return;
+        }
+
+        ScheduledFuture<?> previous = scheduledRefreshes.put(scope, scheduled);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    /** A token together with the time at which it should be renewed. */
+    private static class Entry {
+        final AccessToken token;
+        final long        refreshAt;
+
+        Entry(AccessToken token, long refreshAt) {
+            this.token = token;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
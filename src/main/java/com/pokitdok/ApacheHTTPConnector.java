@@ -1,204 +1,531 @@
 package com.pokitdok;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.http.Consts;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
-import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.protocol.HTTP;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
-import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-public class ApacheHTTPConnector implements PokitDokHTTPConnector {
-    private HttpClientBuilder     builder;
-    private JSONParser            parser;
-    private boolean               failedOnceAlready;
-    private final String          apiBase;
-    private Map<String, String>   defaultHeaders;
-    private String                clientId;
-    private String                clientSecret;
-    private Map<String, String>   scopeTokens;
+/**
+    The default {@link PokitDokHTTPConnector}, built on Apache HttpClient. It implements
+    {@link PokitDokExchangeConnector}, so {@link PokitDok} receives decoded responses from it.
+
+    <p>
+
+    Each connector owns one long-lived {@link CloseableHttpClient} backed by a
+    {@link PoolingHttpClientConnectionManager}, configured through {@link ConnectorSettings}.
+    Connections are kept alive and re-used across requests, and a background thread evicts
+    expired and idle connections. Call {@link #close()} to release the pool once the connector
+    is no longer needed.
+
+    <p>
+
+    Access tokens are managed per scope by an {@link AccessTokenManager}, which renews them
+    shortly before they expire and collapses concurrent renewals into a single request.
+
+    <p>
+
+    Response bodies are decoded straight from the connection's stream, never copied into an
+    intermediate string; see {@link #execute(PokitDokRequest, DataVisitor)} to stream through
+    very large result sets. Gzip and deflate compressed responses are decompressed on the way,
+    and large request bodies can be compressed too; see
+    {@link ConnectorSettings#setRequestCompressionThreshold(int)}. Bodies are decoded as JSON
+    whatever content type they declare, since the platform does not always declare it; an error
+    response whose body is not JSON, such as a gateway's 503 page, is returned with its status
+    and no body, so that callers and a {@link RetryingConnector} can act on the status.
+
+    <p>
+
+    When {@link ConnectorSettings#setMetricsListener(MetricsListener) configured} with a
+    {@link MetricsListener}, the connector reports the duration, status and size of every
+    request, and the duration of every token refresh. With a {@link RequestPhaseListener}, it
+    also breaks the duration of every request down into its phases.
+
+    <p>
+
+    Instances are thread-safe: responses are parsed with a parser per call, and the default
+    headers are copied at construction time. A single connector can therefore serve any number
+    of threads, limited only by the size of the connection pool.
+*/
+public class ApacheHTTPConnector implements PokitDokExchangeConnector, Closeable {
+    private final CloseableHttpClient                client;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final String                             apiBase;
+    private final Map<String, String>                defaultHeaders;
+    private final String                             clientId;
+    private final String                             clientSecret;
+    private final AccessTokenManager                 tokenManager;
+    private final MetricsListener                    metrics;
+    private final RequestPhaseListener               phaseListener;
+    private final int                                compressionThreshold;
+    private final JSONCodec                          codec;
 
     public ApacheHTTPConnector(String clientId, String clientSecret, Map<String, String> defaultHeaders, String apiBase) {
+        this(clientId, clientSecret, defaultHeaders, apiBase, new ConnectorSettings());
+    }
+
+    public ApacheHTTPConnector(String clientId, String clientSecret, Map<String, String> defaultHeaders, String apiBase,
+                               ConnectorSettings settings) {
         this.clientId = clientId;
         this.clientSecret = clientSecret;
-        this.defaultHeaders = defaultHeaders;
+        this.defaultHeaders = (defaultHeaders == null) ? Collections.<String, String>emptyMap()
+            : Collections.unmodifiableMap(new LinkedHashMap<String, String>(defaultHeaders));
         this.apiBase = apiBase;
-        this.scopeTokens = new HashMap<String, String>();
+        this.metrics = settings.getMetricsListener();
+        this.phaseListener = settings.getRequestPhaseListener();
+        this.compressionThreshold = settings.getRequestCompressionThreshold();
+        this.codec = settings.getJSONCodec();
+        this.tokenManager = new AccessTokenManager(new AccessTokenManager.TokenSource() {
+            public AccessToken requestToken(String scope) throws IOException, ParseException {
+                return ApacheHTTPConnector.this.requestToken(scope);
+            }
+        }, settings.getTokenRefreshMargin());
+
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", (phaseListener == null) ? SSLConnectionSocketFactory.getSystemSocketFactory()
+                : PhaseTimingHooks.systemSocketFactory())
+            .build();
+        connectionManager = (phaseListener == null)
+            ? new PoolingHttpClientConnectionManager(socketFactories, null, null, null,
+                settings.getConnectionTimeToLive(), TimeUnit.MILLISECONDS)
+            : new PhaseTimingHooks.TimingConnectionManager(socketFactories,
+                settings.getConnectionTimeToLive(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(settings.getMaxTotalConnections());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity(settings.getValidateAfterInactivity());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(settings.getConnectTimeout())
+            .setSocketTimeout(settings.getSocketTimeout())
+            .setConnectionRequestTimeout(settings.getConnectionRequestTimeout())
+            .build();
+
+        HttpClientBuilder builder = HttpClientBuilder.create()
+            .useSystemProperties()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .setKeepAliveStrategy(new BoundedKeepAliveStrategy(settings.getKeepAlive()))
+            .evictExpiredConnections();
+        if (settings.getMaxIdleTime() > 0) {
+            builder.evictIdleConnections(settings.getMaxIdleTime(), TimeUnit.MILLISECONDS);
+        }
+        if (phaseListener != null) {
+            builder.setRequestExecutor(new PhaseTimingHooks.TimingRequestExecutor());
+        }
+        if (!settings.isResponseCompression()) {
+            builder.disableContentCompression();
+        }
+        client = builder.build();
+    }
+
+    public void connect(String scopeName) throws IOException, ParseException, UnauthorizedException {
+        tokenManager.refresh(scopeName);
     }
 
-    public void connect(String scopeName) throws IOException, ParseException {
-        scopeTokens = new HashMap<String, String>();
+    public void connect() throws IOException, ParseException, UnauthorizedException {
+        connect(PokitDok.DEFAULT_SCOPE);
+    }
 
-        parser = new JSONParser();
-        failedOnceAlready = false;
-        builder = HttpClientBuilder.create();
-        builder.useSystemProperties();
+    /**
+        Builds a client credentials grant request against the platform's token endpoint.
 
+        @param apiBase the base Platform url
+        @param clientId a PokitDok client ID
+        @param clientSecret a PokitDok client secret
+        @return the token request, without default headers
+    */
+    static HttpPost createTokenRequest(String apiBase, String clientId, String clientSecret) {
         HttpPost request = new HttpPost(apiBase + "/oauth2/token");
         List<NameValuePair> urlParameters = new ArrayList<NameValuePair>();
         urlParameters.add(new BasicNameValuePair("grant_type", "client_credentials"));
-        request.setEntity(new UrlEncodedFormEntity(urlParameters));
+        try {
+            request.setEntity(new UrlEncodedFormEntity(urlParameters));
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
 
-        String auth = this.clientId + ":" + this.clientSecret;
+        String auth = clientId + ":" + clientSecret;
         byte[] encodedAuth = Base64.encodeBase64(auth.getBytes(Charset.forName("US-ASCII")));
         String authHeader = "Basic " + new String(encodedAuth);
 
         request.setHeader(HttpHeaders.AUTHORIZATION, authHeader);
+        return request;
+    }
+
+    private AccessToken requestToken(String scopeName) throws IOException, ParseException {
+        HttpPost request = createTokenRequest(apiBase, clientId, clientSecret);
         setDefaultHeaders(request);
 
-        CloseableHttpClient client = builder.build();
+        long requestedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        CloseableHttpResponse response = client.execute(request);
         try {
-            HttpResponse response = client.execute(request);
-            Map<String, Object> parsedResponse = (JSONObject) parser.parse(
-                EntityUtils.toString(response.getEntity()));
-            scopeTokens.put(scopeName, (String) parsedResponse.get("access_token"));
+            AccessToken token = AccessToken.fromTokenResponse(decode(response.getEntity(), null), requestedAt);
+            if (metrics != null) {
+                metrics.onTokenRefresh(scopeName, System.nanoTime() - start);
+            }
+            return token;
         }
         finally {
-            if (client != null) client.close();
+            response.close();
         }
     }
 
-    public void connect() throws IOException, ParseException {
-        connect(PokitDok.DEFAULT_SCOPE);
+    public PokitDokResponse execute(PokitDokRequest request) throws IOException, ParseException, UnauthorizedException {
+        return execute(request, null);
     }
 
-    private String execute(HttpRequestBase request, String scopeName, Map<String, String> headers)
+    public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor)
     throws IOException, ParseException, UnauthorizedException {
-        String accessToken = getAccessTokenForScope(scopeName);
-        if (accessToken == null) {
-            throw new UnauthorizedException("Invalid credentials.  Check your client_id and client_secret.");
+        boolean instrumented = metrics != null || phaseListener != null;
+        long start = instrumented ? System.nanoTime() : 0;
+        RequestPhases phases = (phaseListener == null) ? null : new RequestPhases();
+        final HttpRequestBase httpRequest = createRequest(request);
+        if (request.getCancellation() != null) {
+            /* Aborting shuts the leased connection down, which a blocked read would not notice otherwise. */
+            request.getCancellation().setCancellable(new Cancellable() {
+                public boolean cancel() {
+                    httpRequest.abort();
+                    return true;
+                }
+            });
         }
-
-        request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
-        setDefaultHeaders(request);
-        CloseableHttpClient client = builder.build();
-        HttpResponse response = client.execute(request);
-
-        String res = EntityUtils.toString(response.getEntity());
-        Map<String, Object> parsedResponse = (JSONObject) parser.parse(res);
-
-        /* Check for, and recover from, potential token timeout */
-        if (isUnauthorized(parsedResponse, failedOnceAlready)) {
-            failedOnceAlready = true;
-
-            connect();
-            res = execute(request, scopeName, headers);
-
-            /* If we fall through, all is okay. */
-            failedOnceAlready = false;
+        try {
+            CloseableHttpResponse response = execute(httpRequest, request.getScope(), false, phases);
+            try {
+                Map<String, String> headers = new LinkedHashMap<String, String>();
+                for (Header header : response.getAllHeaders()) {
+                    headers.put(header.getName(), header.getValue());
+                }
+                int status = response.getStatusLine().getStatusCode();
+                HttpEntity entity = response.getEntity();
+                Map<String, Object> body = null;
+                CountingInputStream counted = null;
+                if (entity != null && instrumented) {
+                    long decodeStart = System.nanoTime();
+                    counted = new CountingInputStream(entity.getContent(), phases != null);
+                    body = decode(status, entity, counted, visitor);
+                    if (phases != null) {
+                        phases.setBody(counted.getReadTime(), System.nanoTime() - decodeStart - counted.getReadTime());
+                    }
+                }
+                else if (entity != null) {
+                    body = decode(status, entity, entity.getContent(), visitor);
+                }
+                if (instrumented) {
+                    completed(request, status, start, httpRequest, counted, phases);
+                }
+                return new PokitDokResponse(status, headers, body);
+            }
+            finally {
+                response.close();
+            }
+        }
+        catch (IOException e) {
+            if (metrics != null) {
+                metrics.onFailure(request, e, System.nanoTime() - start);
+            }
+            throw e;
+        }
+        catch (ParseException e) {
+            if (metrics != null) {
+                metrics.onFailure(request, new IOException("Could not parse the response", e), System.nanoTime() - start);
+            }
+            throw e;
         }
-
-        return res;
     }
 
     public String get(String url, Map<String, Object> params, Map<String, String> headers)
     throws IOException, ParseException, UnauthorizedException {
-      return get(url, params, headers, PokitDok.DEFAULT_SCOPE);
+        return get(url, params, headers, PokitDok.DEFAULT_SCOPE);
     }
 
     public String get(String url, Map<String, Object> params, Map<String, String> headers, String scope)
     throws IOException, ParseException, UnauthorizedException {
-	HttpGet getRequest = new HttpGet(PokitDok.apiUrl(apiBase, url, params));
-
-      return execute(getRequest, scope, headers);
+        return executeForString(new PokitDokRequest(PokitDokRequest.GET, url, params, headers, scope));
     }
 
     public String post(String url, Map<String, Object> params, Map<String, String> headers)
     throws IOException, ParseException, UnauthorizedException {
-      return post(url, params, headers, PokitDok.DEFAULT_SCOPE);
+        return post(url, params, headers, PokitDok.DEFAULT_SCOPE);
     }
 
     public String post(String url, Map<String, Object> params, Map<String, String> headers, String scope)
     throws IOException, ParseException, UnauthorizedException {
-	HttpPost postRequest = new HttpPost(PokitDok.apiUrl(apiBase, url, null));
-
-      String json = JSONValue.toJSONString(params);
-      StringEntity entity = new StringEntity(json);
-      entity.setContentEncoding(HTTP.UTF_8);
-      entity.setContentType("application/json");
-      postRequest.setEntity(entity);
-
-      return execute(postRequest, scope, headers);
+        return executeForString(new PokitDokRequest(PokitDokRequest.POST, url, params, headers, scope));
     }
 
     public String put(String url, Map<String, Object> params, Map<String, String> headers)
     throws IOException, ParseException, UnauthorizedException {
-      return put(url, params, headers, PokitDok.DEFAULT_SCOPE);
+        return put(url, params, headers, PokitDok.DEFAULT_SCOPE);
     }
 
     public String put(String url, Map<String, Object> params, Map<String, String> headers, String scope)
     throws IOException, ParseException, UnauthorizedException {
-
-        HttpPut putRequest = new HttpPut(PokitDok.apiUrl(apiBase, url, null));
-	String json = JSONValue.toJSONString(params);
-	StringEntity entity = new StringEntity(json);
-        entity.setContentEncoding(HTTP.UTF_8);
-        entity.setContentType("application/json");
-
-        putRequest.setEntity(entity);
-
-      return execute(putRequest, scope, headers);
+        return executeForString(new PokitDokRequest(PokitDokRequest.PUT, url, params, headers, scope));
     }
 
     public String delete(String url, Map<String, Object> params, Map<String, String> headers)
     throws IOException, ParseException, UnauthorizedException {
-      return delete(url, params, headers, PokitDok.DEFAULT_SCOPE);
+        return delete(url, params, headers, PokitDok.DEFAULT_SCOPE);
     }
 
     public String delete(String url, Map<String, Object> params, Map<String, String> headers, String scope)
     throws IOException, ParseException, UnauthorizedException {
-	HttpDelete deleteRequest = new HttpDelete(PokitDok.apiUrl(apiBase,url, params));
+        return executeForString(new PokitDokRequest(PokitDokRequest.DELETE, url, params, headers, scope));
+    }
+
+    private String executeForString(PokitDokRequest request)
+    throws IOException, ParseException, UnauthorizedException {
+        if (metrics == null && phaseListener == null) {
+            CloseableHttpResponse response = execute(createRequest(request), request.getScope(), false, null);
+            try {
+                return EntityUtils.toString(response.getEntity());
+            }
+            finally {
+                response.close();
+            }
+        }
+
+        long start = System.nanoTime();
+        RequestPhases phases = (phaseListener == null) ? null : new RequestPhases();
+        HttpRequestBase httpRequest = createRequest(request);
+        try {
+            CloseableHttpResponse response = execute(httpRequest, request.getScope(), false, phases);
+            try {
+                final CountingInputStream in = new CountingInputStream(response.getEntity().getContent(), phases != null);
+                String body = EntityUtils.toString(new HttpEntityWrapper(response.getEntity()) {
+                    public InputStream getContent() {
+                        return in;
+                    }
+                });
+                if (phases != null) {
+                    phases.setBody(in.getReadTime(), 0);
+                }
+                completed(request, response.getStatusLine().getStatusCode(), start, httpRequest, in, phases);
+                return body;
+            }
+            finally {
+                response.close();
+            }
+        }
+        catch (IOException e) {
+            if (metrics != null) {
+                metrics.onFailure(request, e, System.nanoTime() - start);
+            }
+            throw e;
+        }
+    }
+
+    /** Reports a completed request to the listeners. */
+    private void completed(PokitDokRequest request, int status, long start, HttpRequestBase httpRequest,
+                           CountingInputStream body, RequestPhases phases) {
+        long duration = System.nanoTime() - start;
+        if (metrics != null) {
+            metrics.onResponse(request, status, duration, bytesSent(httpRequest), (body == null) ? 0 : body.getCount());
+        }
+        if (phases != null) {
+            phases.setTotal(duration);
+            phaseListener.onPhases(request, phases);
+        }
+    }
+
+    private static long bytesSent(HttpRequestBase request) {
+        if (!(request instanceof HttpEntityEnclosingRequestBase)) {
+            return 0;
+        }
+        HttpEntity entity = ((HttpEntityEnclosingRequestBase) request).getEntity();
+        if (entity instanceof CountingEntity) {
+            return ((CountingEntity) entity).getCount();
+        }
+        return (entity == null) ? 0 : Math.max(0, entity.getContentLength());
+    }
 
-      return execute(deleteRequest, scope, headers);
+    private Map<String, Object> decode(HttpEntity entity, DataVisitor visitor) throws IOException, ParseException {
+        return decode(entity, entity.getContent(), visitor);
     }
 
-    private boolean isUnauthorized(Map<String, Object> response, boolean throwOnUnauthorized) throws UnauthorizedException {
-      boolean unauthorized = false;
-      if (response != null) {
-        if (response.containsKey("message")) {
-          if ("Unauthorized".equals(response.get("message"))) {
-            unauthorized = true;
-          }
+    /**
+        Decodes the body of a response with the given status, or returns null for the body of an
+        error response that is not JSON.
+    */
+    private Map<String, Object> decode(int status, HttpEntity entity, InputStream in, DataVisitor visitor)
+    throws IOException, ParseException {
+        try {
+            return decode(entity, in, visitor);
+        }
+        catch (ParseException e) {
+            if (status < 400) {
+                throw e;
+            }
+            return null;
         }
-      }
+    }
 
-      if (throwOnUnauthorized && unauthorized) {
-        throw new UnauthorizedException("Unauthorized");
-      }
+    /**
+        Decodes a JSON response body directly from the entity's stream, in the charset the
+        response declares, or UTF-8 if it declares none, with the configured codec.
+    */
+    private Map<String, Object> decode(HttpEntity entity, InputStream in, DataVisitor visitor)
+    throws IOException, ParseException {
+        Charset charset = ContentType.getOrDefault(entity).getCharset();
+        try {
+            return codec.decode(new InputStreamReader(in, charset != null ? charset : Consts.UTF_8), visitor);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private HttpRequestBase createRequest(PokitDokRequest request) {
+        HttpRequestBase httpRequest;
+        if (PokitDokRequest.GET.equals(request.getMethod())) {
+            httpRequest = new HttpGet(PokitDok.apiUrl(apiBase, request.getEndpoint(), request.getParams()));
+        }
+        else if (PokitDokRequest.DELETE.equals(request.getMethod())) {
+            httpRequest = new HttpDelete(PokitDok.apiUrl(apiBase, request.getEndpoint(), request.getParams()));
+        }
+        else {
+            HttpEntityEnclosingRequestBase bodyRequest = PokitDokRequest.PUT.equals(request.getMethod())
+                ? new HttpPut(PokitDok.apiUrl(apiBase, request.getEndpoint(), null))
+                : new HttpPost(PokitDok.apiUrl(apiBase, request.getEndpoint(), null));
 
-      return unauthorized;
+            bodyRequest.setEntity(body(request.getParams()));
+            httpRequest = bodyRequest;
+        }
+        return httpRequest;
     }
 
-    private String getAccessTokenForScope(String scopeName) throws IOException, ParseException {
-      if (!scopeTokens.containsKey(scopeName)) {
-        connect(scopeName);
-      }
+    /**
+        Creates the JSON body of a request, serialized as it is sent. With a compression
+        threshold set, the body is measured first, then either sent with a known length or
+        gzip-compressed on the way out. Bodies sent chunked, without a known length, are counted
+        as they are written for the metrics.
+    */
+    private HttpEntity body(Map<String, Object> params) {
+        JSONEntity entity = new JSONEntity(params, codec);
+        HttpEntity body = entity;
+        if (compressionThreshold >= 0 && entity.measure() >= compressionThreshold) {
+            body = new GzipCompressingEntity(entity);
+        }
+        return (metrics != null && body.getContentLength() < 0) ? new CountingEntity(body) : body;
+    }
 
-      return scopeTokens.get(scopeName);
+    /**
+        Sends a request with the scope's access token and returns the still open response. A 401
+        response is taken to mean the token has expired or been revoked: it is discarded, and the
+        request is sent once more with a new token.
+    */
+    private CloseableHttpResponse execute(HttpRequestBase request, String scopeName, boolean failedOnceAlready,
+                                          RequestPhases phases)
+    throws IOException, ParseException, UnauthorizedException {
+        String accessToken = tokenManager.getToken(scopeName);
+        if (accessToken == null) {
+            throw new UnauthorizedException("Invalid credentials.  Check your client_id and client_secret.");
+        }
+
+        request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+        setDefaultHeaders(request);
+
+        CloseableHttpResponse response;
+        if (phases == null) {
+            response = client.execute(request);
+        }
+        else {
+            PhaseTimingHooks.begin(phases);
+            try {
+                response = client.execute(request);
+            }
+            finally {
+                PhaseTimingHooks.end();
+            }
+        }
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_UNAUTHORIZED) {
+            return response;
+        }
+
+        /* Release the connection back to the pool before trying again. */
+        try {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+        finally {
+            response.close();
+        }
+        if (failedOnceAlready) {
+            throw new UnauthorizedException("Unauthorized");
+        }
+
+        /* Recover from a token timeout */
+        tokenManager.invalidate(scopeName, accessToken);
+        return execute(request, scopeName, true, phases);
     }
+
     private void setDefaultHeaders(HttpRequestBase request) {
         for (Map.Entry<String, String> entry: defaultHeaders.entrySet()) {
             request.setHeader(entry.getKey(), entry.getValue());
         }
     }
+
+    /**
+        Returns a snapshot of the connection pool's usage, covering leased, idle and pending
+        connections across all routes.
+
+        @return the current pool statistics
+    */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+        Shuts down the underlying HTTP client, closing every pooled connection and stopping the
+        idle connection evictor and token refresh threads. The connector cannot be used afterwards.
+
+        @throws IOException if the client could not be closed cleanly
+    */
+    public void close() throws IOException {
+        tokenManager.close();
+        client.close();
+    }
 }
@@ -0,0 +1,306 @@
+package com.pokitdok;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.util.EntityUtils;
+import org.json.simple.parser.ParseException;
+
+/**
+    A {@link PokitDokAsyncHTTPConnector} built on Apache HttpAsyncClient.
+
+    <p>
+
+    Requests are multiplexed by a small, fixed set of I/O dispatch threads over a pool of
+    non-blocking connections, so the number of requests in flight is bounded by the pool size
+    from {@link ConnectorSettings} rather than by the number of threads. Responses are read
+    and checked on the dispatch threads; callbacks passed to this connector run there too and
+    must not block.
+
+    <p>
+
+    Request bodies are encoded and token responses decoded with the {@link JSONCodec} of the
+    {@link ConnectorSettings}, and a {@link PokitDokAsync} built on this connector decodes API
+    responses with it as well. Bodies from the settings' compression threshold up are sent
+    gzip-compressed.
+
+    <p>
+
+    Access tokens are handled by an {@link AccessTokenManager}, which renews them in the
+    background, so issuing a request normally never waits for authentication. Only the very
+    first request of a scope, or one that finds its token rejected, waits for a new token; in
+    the latter case the re-authentication runs on a dedicated thread, never on a dispatch thread.
+
+    <p>
+
+    Instances are thread-safe. Call {@link #close()} to shut down the I/O reactor.
+*/
+public class AsyncApacheHTTPConnector implements PokitDokAsyncHTTPConnector, Closeable {
+    private final CloseableHttpAsyncClient client;
+    private final String                   apiBase;
+    private final Map<String, String>      defaultHeaders;
+    private final AccessTokenManager       tokenManager;
+    private final ExecutorService          authExecutor;
+    private final JSONCodec                codec;
+    private final int                      compressionThreshold;
+
+    public AsyncApacheHTTPConnector(String clientId, String clientSecret, Map<String, String> defaultHeaders,
+                                    String apiBase) throws IOException {
+        this(clientId, clientSecret, defaultHeaders, apiBase, new ConnectorSettings());
+    }
+
+    public AsyncApacheHTTPConnector(final String clientId, final String clientSecret, Map<String, String> defaultHeaders,
+                                    final String apiBase, ConnectorSettings settings) throws IOException {
+        this.apiBase = apiBase;
+        this.codec = settings.getJSONCodec();
+        this.compressionThreshold = settings.getRequestCompressionThreshold();
+        this.defaultHeaders = (defaultHeaders == null) ? Collections.<String, String>emptyMap()
+            : Collections.unmodifiableMap(new LinkedHashMap<String, String>(defaultHeaders));
+
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+            .setConnectTimeout(Math.max(0, settings.getConnectTimeout()))
+            .setSoTimeout(Math.max(0, settings.getSocketTimeout()))
+            .build();
+        Registry<SchemeIOSessionStrategy> sessionStrategies = RegistryBuilder.<SchemeIOSessionStrategy>create()
+            .register("http", NoopIOSessionStrategy.INSTANCE)
+            .register("https", SSLIOSessionStrategy.getSystemDefaultStrategy())
+            .build();
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+            new DefaultConnectingIOReactor(reactorConfig), sessionStrategies);
+        connectionManager.setMaxTotal(settings.getMaxTotalConnections());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(settings.getConnectTimeout())
+            .setSocketTimeout(settings.getSocketTimeout())
+            .setConnectionRequestTimeout(settings.getConnectionRequestTimeout())
+            .build();
+
+        client = HttpAsyncClients.custom()
+            .useSystemProperties()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .setKeepAliveStrategy(new BoundedKeepAliveStrategy(settings.getKeepAlive()))
+            .build();
+        client.start();
+
+        authExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "pokitdok-async-auth");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        tokenManager = new AccessTokenManager(new AccessTokenManager.TokenSource() {
+            public AccessToken requestToken(String scope) throws IOException, ParseException {
+                HttpPost request = ApacheHTTPConnector.createTokenRequest(apiBase, clientId, clientSecret);
+                setDefaultHeaders(request);
+
+                long requestedAt = System.currentTimeMillis();
+                HttpResponse response = await(client.execute(request, null));
+                return AccessToken.fromTokenResponse(decode(response.getEntity()), requestedAt);
+            }
+        }, settings.getTokenRefreshMargin());
+    }
+
+    public Future<String> get(String url, Map<String, Object> params, Map<String, String> headers, String scope,
+                              FutureCallback<String> callback) {
+        return execute(new HttpGet(PokitDok.apiUrl(apiBase, url, params)), scope, callback);
+    }
+
+    public Future<String> post(String url, Map<String, Object> params, Map<String, String> headers, String scope,
+                               FutureCallback<String> callback) {
+        HttpPost postRequest = new HttpPost(PokitDok.apiUrl(apiBase, url, null));
+        postRequest.setEntity(body(params));
+        return execute(postRequest, scope, callback);
+    }
+
+    public Future<String> put(String url, Map<String, Object> params, Map<String, String> headers, String scope,
+                              FutureCallback<String> callback) {
+        HttpPut putRequest = new HttpPut(PokitDok.apiUrl(apiBase, url, null));
+        putRequest.setEntity(body(params));
+        return execute(putRequest, scope, callback);
+    }
+
+    public Future<String> delete(String url, Map<String, Object> params, Map<String, String> headers, String scope,
+                                 FutureCallback<String> callback) {
+        return execute(new HttpDelete(PokitDok.apiUrl(apiBase, url, params)), scope, callback);
+    }
+
+    /**
+        Returns the codec responses of this connector are decoded with.
+
+        @return the JSON codec from the connector's settings
+    */
+    JSONCodec getJSONCodec() {
+        return codec;
+    }
+
+    /**
+        Shuts down the I/O reactor and closes every pooled connection. Requests still in flight
+        are aborted.
+
+        @throws IOException if the client could not be closed cleanly
+    */
+    public void close() throws IOException {
+        tokenManager.close();
+        authExecutor.shutdownNow();
+        client.close();
+    }
+
+    private Future<String> execute(HttpRequestBase request, String scope, FutureCallback<String> callback) {
+        LinkedFuture<String> result = new LinkedFuture<String>(callback);
+        setDefaultHeaders(request);
+        send(request, scope, false, result);
+        return result;
+    }
+
+    private void send(final HttpRequestBase request, final String scope, final boolean failedOnceAlready,
+                      final LinkedFuture<String> result) {
+        final String accessToken;
+        try {
+            accessToken = tokenManager.getToken(scope);
+        }
+        catch (Exception e) {
+            result.failed(e);
+            return;
+        }
+        if (accessToken == null) {
+            result.failed(new UnauthorizedException("Invalid credentials.  Check your client_id and client_secret."));
+            return;
+        }
+
+        request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+        result.link(client.execute(request, new FutureCallback<HttpResponse>() {
+            public void completed(HttpResponse response) {
+                try {
+                    String res = EntityUtils.toString(response.getEntity());
+                    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_UNAUTHORIZED) {
+                        result.completed(res);
+                    }
+                    else if (failedOnceAlready) {
+                        result.failed(new UnauthorizedException("Unauthorized"));
+                    }
+                    else {
+                        /* Recover from a token timeout off the dispatch thread. */
+                        tokenManager.invalidate(scope, accessToken);
+                        authExecutor.execute(new Runnable() {
+                            public void run() {
+                                send(request, scope, true, result);
+                            }
+                        });
+                    }
+                }
+                catch (RejectedExecutionException e) {
+                    result.failed(new IOException("Connector has been closed"));
+                }
+                catch (Exception e) {
+                    result.failed(e);
+                }
+            }
+
+            public void failed(Exception e) {
+                result.failed(e);
+            }
+
+            public void cancelled() {
+                result.cancel();
+            }
+        }));
+    }
+
+    /**
+        Creates the JSON body of a request, encoded with the configured codec. Bodies from the
+        compression threshold up are gzip-compressed up front, since the I/O reactor reads a
+        body from its content stream, which a compressing entity does not offer.
+    */
+    private HttpEntity body(Map<String, Object> params) {
+        JSONEntity entity = new JSONEntity(params, codec);
+        if (compressionThreshold < 0 || entity.measure() < compressionThreshold) {
+            return entity;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try {
+            new GzipCompressingEntity(entity).writeTo(compressed);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteArrayEntity body = new ByteArrayEntity(compressed.toByteArray(), JSONEntity.APPLICATION_JSON);
+        body.setContentEncoding("gzip");
+        return body;
+    }
+
+    /** Decodes a buffered JSON response body in the charset it declares, or UTF-8. */
+    private Map<String, Object> decode(HttpEntity entity) throws IOException, ParseException {
+        Charset charset = ContentType.getOrDefault(entity).getCharset();
+        InputStreamReader reader = new InputStreamReader(entity.getContent(), charset != null ? charset : Consts.UTF_8);
+        try {
+            return codec.decode(reader, null);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private static HttpResponse await(Future<HttpResponse> response) throws IOException {
+        try {
+            return response.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a response");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void setDefaultHeaders(HttpRequestBase request) {
+        for (Map.Entry<String, String> entry: defaultHeaders.entrySet()) {
+            request.setHeader(entry.getKey(), entry.getValue());
+        }
+    }
+}
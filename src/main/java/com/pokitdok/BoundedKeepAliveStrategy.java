@@ -0,0 +1,26 @@
+package com.pokitdok;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.HttpContext;
+
+/**
+    Honours the server's Keep-Alive header, but caps it at the configured keep-alive period
+    and falls back to that period when the header is absent.
+*/
+class BoundedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+    private final long keepAlive;
+
+    BoundedKeepAliveStrategy(long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        if (keepAlive <= 0) {
+            return duration;
+        }
+        return (duration <= 0) ? keepAlive : Math.min(duration, keepAlive);
+    }
+}
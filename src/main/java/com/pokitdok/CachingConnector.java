@@ -0,0 +1,280 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.http.HttpStatus;
+import org.json.simple.parser.ParseException;
+
+/**
+    A connector that caches the responses of slowly-changing reference data endpoints.
+
+    <p>
+
+    Only successful GET requests are cached, and only for endpoints that have a time to live
+    configured. By default these are the payers, trading partners, plans, medical procedure
+    code, appointment types, pharmacy plans and schedulers endpoints, each cached for
+    {@link #DEFAULT_TIME_TO_LIVE}. Entries are keyed on the endpoint, the parameters and the
+    scope of the request.
+
+    <p>
+
+    The platform's {@code Cache-Control} response header is honoured: responses marked
+    {@code no-store} or {@code no-cache} are never cached, and a {@code max-age} shorter than the
+    configured time to live takes precedence. When the cache is full, the least recently used
+    entry is evicted.
+
+    <p>
+
+    A response is made unmodifiable when it is cached, and from then on every caller receives
+    the same response, so that a hit costs no copying; its body's maps and lists throw
+    {@link UnsupportedOperationException} when modified. Only callers streaming the
+    {@code data} array to a {@link DataVisitor} receive a copy. Instances are thread-safe.
+*/
+public class CachingConnector extends ForwardingConnector {
+    /** Default maximum number of cached responses. */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    /** Default time to live of the responses of the reference data endpoints. */
+    public static final long DEFAULT_TIME_TO_LIVE = 15 * 60 * 1000;
+
+    private final int                              maxEntries;
+    private final EndpointMap<Long>                timesToLive = new EndpointMap<Long>();
+    private final Lock                             lock = new ReentrantLock();
+    private final LinkedHashMap<RequestKey, Entry> entries;
+    private final AtomicLong                       hits = new AtomicLong();
+    private final AtomicLong                       misses = new AtomicLong();
+    private final AtomicLong                       evictions = new AtomicLong();
+
+    /**
+        Creates a cache of up to {@link #DEFAULT_MAX_ENTRIES} responses in front of the given
+        connector, with the default times to live.
+
+        @param delegate the connector to send uncached requests through
+    */
+    public CachingConnector(PokitDokHTTPConnector delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+        Creates a cache in front of the given connector, with the default times to live.
+
+        @param delegate the connector to send uncached requests through
+        @param maxEntries the maximum number of cached responses
+    */
+    public CachingConnector(PokitDokHTTPConnector delegate, int maxEntries) {
+        super(delegate);
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<RequestKey, Entry>(16, 0.75f, true);
+
+        String[] referenceEndpoints = { "payers", "tradingpartners", "plans", "mpc", "appointment_types",
+            "pharmacy/plans", "schedulers" };
+        for (String endpoint : referenceEndpoints) {
+            setTimeToLive(endpoint, DEFAULT_TIME_TO_LIVE);
+        }
+    }
+
+    /**
+        Sets how long the responses of an endpoint are cached. The endpoint is matched as a path
+        prefix, so {@code "mpc"} covers both {@code mpc/} and {@code mpc/<code>}; the longest
+        configured prefix wins.
+
+        @param endpoint the endpoint path prefix, without leading or trailing slash
+        @param timeToLive the time to live in milliseconds, or zero or less to stop caching the
+            endpoint
+    */
+    public void setTimeToLive(String endpoint, long timeToLive) {
+        timesToLive.put(endpoint, Long.valueOf(Math.max(0, timeToLive)));
+    }
+
+    public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        long timeToLive = PokitDokRequest.GET.equals(request.getMethod()) ? timeToLive(request.getEndpoint()) : 0;
+        if (timeToLive <= 0) {
+            return super.execute(request, visitor);
+        }
+
+        RequestKey key = new RequestKey(request);
+        long now = System.currentTimeMillis();
+        Entry cached = lookup(key, now);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return (visitor == null) ? cached.response : copyOf(cached.response, visitor);
+        }
+        misses.incrementAndGet();
+
+        PokitDokResponse response = super.execute(request, null);
+        long maxAge = cacheLifetime(response, timeToLive);
+        if (maxAge > 0) {
+            PokitDokResponse shared = new PokitDokResponse(response.getStatus(), response.getHeaders(),
+                JSONTrees.unmodifiable(response.getBody()));
+            store(key, new Entry(shared, now + maxAge));
+            return (visitor == null) ? shared : copyOf(shared, visitor);
+        }
+        return (visitor == null) ? response
+            : new PokitDokResponse(response.getStatus(), response.getHeaders(),
+                JSONStreamDecoder.visitData(response.getBody(), visitor));
+    }
+
+    /**
+        Drops every cached response.
+    */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+        Drops the cached responses of an endpoint.
+
+        @param endpoint the endpoint path prefix whose responses are dropped
+    */
+    public void invalidate(String endpoint) {
+        lock.lock();
+        try {
+            for (Iterator<RequestKey> keys = entries.keySet().iterator(); keys.hasNext();) {
+                if (EndpointMap.covers(endpoint, keys.next().getEndpoint())) {
+                    keys.remove();
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+        Returns the number of requests answered from the cache.
+
+        @return the hit count
+    */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+        Returns the number of cacheable requests that had to be sent to the platform.
+
+        @return the miss count
+    */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+        Returns the number of responses evicted to make room for newer ones.
+
+        @return the eviction count
+    */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+        Returns the number of responses currently cached, including expired ones not yet
+        evicted.
+
+        @return the number of cached responses
+    */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private long timeToLive(String endpoint) {
+        Long timeToLive = timesToLive.get(endpoint);
+        return (timeToLive == null) ? 0 : timeToLive.longValue();
+    }
+
+    /**
+        Returns how long a response may be cached, given the configured time to live and the
+        response's {@code Cache-Control} header.
+    */
+    private static long cacheLifetime(PokitDokResponse response, long timeToLive) {
+        if (response.getStatus() != HttpStatus.SC_OK || response.getBody() == null) {
+            return 0;
+        }
+        String cacheControl = response.getHeader("Cache-Control");
+        if (cacheControl == null) {
+            return timeToLive;
+        }
+
+        long lifetime = timeToLive;
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim().toLowerCase();
+            if (directive.equals("no-store") || directive.equals("no-cache")) {
+                return 0;
+            }
+            if (directive.startsWith("max-age=")) {
+                try {
+                    lifetime = Math.min(lifetime, Long.parseLong(directive.substring(8).trim()) * 1000);
+                }
+                catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return lifetime;
+    }
+
+    private Entry lookup(RequestKey key, long now) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= now) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void store(RequestKey key, Entry entry) {
+        lock.lock();
+        try {
+            entries.put(key, entry);
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries) {
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private static PokitDokResponse copyOf(PokitDokResponse response, DataVisitor visitor) {
+        PokitDokResponse copy = response.copy();
+        if (visitor != null) {
+            JSONStreamDecoder.visitData(copy.getBody(), visitor);
+        }
+        return copy;
+    }
+
+    private static class Entry {
+        final PokitDokResponse response;
+        final long             expiresAt;
+
+        Entry(PokitDokResponse response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.json.simple.parser.ParseException;
+
+/**
+    A connector that stops sending requests to an endpoint that keeps failing, so that a
+    degraded dependency fails fast instead of tying up the caller's threads until they time
+    out.
+
+    <p>
+
+    Each endpoint has its own circuit breaker, which tracks the outcome of its last
+    {@link #SLIDING_WINDOW_SIZE} calls. A call fails when it throws an I/O or parse error or
+    the platform answers with a 5xx status, and is slow when it takes longer than the slow call
+    duration. Once at least {@link #MINIMUM_CALLS} calls have been recorded and either the
+    failure rate or the slow call rate reaches its threshold, the circuit opens: requests to the
+    endpoint are refused with a {@link CircuitOpenException} without being sent. After the open
+    duration, the circuit goes half-open and lets {@link #HALF_OPEN_CALLS} trial requests
+    through. If they all succeed in time the circuit closes again; otherwise it re-opens. A
+    call's outcome only counts towards the state it was let through in, so calls still in flight
+    when the circuit opened count neither as trials nor towards the next closed window.
+
+    <p>
+
+    Path segments containing digits, such as activity IDs or procedure codes, are left out of
+    the endpoint a breaker covers, so {@code mpc/99213} and {@code mpc/99214} share the
+    {@code mpc} breaker. Breakers can additionally be kept per {@code trading_partner_id}, so
+    that one payer's outage does not cut off the others.
+
+    <p>
+
+    No lock is held while a request is in flight. Instances are thread-safe.
+*/
+public class CircuitBreakingConnector extends ForwardingConnector {
+    /** The states of a circuit breaker. */
+    public enum State {
+        /** Requests are sent, and their outcomes recorded. */
+        CLOSED,
+        /** Requests are refused. */
+        OPEN,
+        /** A limited number of trial requests are sent to decide whether to close again. */
+        HALF_OPEN
+    }
+
+    /** Default failure rate at which a circuit opens. */
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    /** Default slow call rate at which a circuit opens. */
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 1.0;
+    /** Default duration beyond which a call counts as slow, in milliseconds. */
+    public static final long   DEFAULT_SLOW_CALL_DURATION = 10 * 1000;
+    /** Default time a circuit stays open before letting trial requests through, in milliseconds. */
+    public static final long   DEFAULT_OPEN_DURATION = 30 * 1000;
+    /** Number of most recent calls whose outcomes are tracked per circuit. */
+    public static final int    SLIDING_WINDOW_SIZE = 20;
+    /** Number of calls to record before a circuit may open. */
+    public static final int    MINIMUM_CALLS = 10;
+    /** Number of trial requests let through by a half-open circuit. */
+    public static final int    HALF_OPEN_CALLS = 3;
+
+    private final double                           failureRateThreshold;
+    private final double                           slowCallRateThreshold;
+    private final long                             slowCallDuration;
+    private final long                             openDuration;
+    private volatile boolean                       perTradingPartner;
+    private final ConcurrentMap<String, Breaker>   breakers = new ConcurrentHashMap<String, Breaker>();
+    private final AtomicLong                       rejected = new AtomicLong();
+
+    /**
+        Creates a circuit breaking connector in front of the given connector, with the default
+        thresholds.
+
+        @param delegate the connector to send requests through
+    */
+    public CircuitBreakingConnector(PokitDokHTTPConnector delegate) {
+        this(delegate, DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_SLOW_CALL_RATE_THRESHOLD, DEFAULT_SLOW_CALL_DURATION,
+            DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+        Creates a circuit breaking connector in front of the given connector.
+
+        @param delegate the connector to send requests through
+        @param failureRateThreshold the fraction of failed calls at which a circuit opens
+        @param slowCallRateThreshold the fraction of slow calls at which a circuit opens
+        @param slowCallDuration the duration beyond which a call counts as slow, in milliseconds
+        @param openDuration how long a circuit stays open before letting trial requests through,
+            in milliseconds
+    */
+    public CircuitBreakingConnector(PokitDokHTTPConnector delegate, double failureRateThreshold,
+                                    double slowCallRateThreshold, long slowCallDuration, long openDuration) {
+        super(delegate);
+        if (failureRateThreshold <= 0 || slowCallRateThreshold <= 0 || slowCallDuration < 0 || openDuration < 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker thresholds");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDuration = TimeUnit.MILLISECONDS.toNanos(slowCallDuration);
+        this.openDuration = TimeUnit.MILLISECONDS.toNanos(openDuration);
+    }
+
+    /**
+        Sets whether requests naming a {@code trading_partner_id} get a circuit of their own for
+        each trading partner. Off by default.
+
+        @param perTradingPartner true to keep separate circuits per trading partner
+    */
+    public void setPerTradingPartner(boolean perTradingPartner) {
+        this.perTradingPartner = perTradingPartner;
+    }
+
+    public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        String key = circuitFor(request.getEndpoint(), request.getParams());
+        Breaker breaker = breakers.get(key);
+        if (breaker == null) {
+            Breaker created = new Breaker();
+            breaker = breakers.putIfAbsent(key, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+
+        long start = System.nanoTime();
+        long generation = breaker.tryAcquire(start);
+        if (generation < 0) {
+            rejected.incrementAndGet();
+            throw new CircuitOpenException("Circuit open for " + key);
+        }
+
+        boolean failed = true;
+        try {
+            PokitDokResponse response = super.execute(request, visitor);
+            failed = response.getStatus() >= 500;
+            return response;
+        }
+        catch (UnauthorizedException e) {
+            /* Bad credentials say nothing about the health of the endpoint. */
+            failed = false;
+            throw e;
+        }
+        finally {
+            breaker.record(generation, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+        Returns the state of the circuit covering a request.
+
+        @param endpoint the endpoint path of the request
+        @param params the request parameters, consulted for the trading partner; may be null
+        @return the circuit's state, {@link State#CLOSED} if no request has used it yet
+    */
+    public State getState(String endpoint, Map<String, Object> params) {
+        Breaker breaker = breakers.get(circuitFor(endpoint, params));
+        return (breaker == null) ? State.CLOSED : breaker.state(System.nanoTime());
+    }
+
+    /**
+        Returns the number of requests refused because their circuit was open.
+
+        @return the rejected request count
+    */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+        Returns the name of the circuit covering a request: its endpoint group, followed by the
+        trading partner if circuits are kept per trading partner.
+    */
+    private String circuitFor(String endpoint, Map<String, Object> params) {
+        String group = PokitDokRequest.endpointGroup(endpoint);
+        if (perTradingPartner && params != null) {
+            Object tradingPartnerId = params.get("trading_partner_id");
+            if (tradingPartnerId != null) {
+                return group + " " + tradingPartnerId;
+            }
+        }
+        return group;
+    }
+
+    /**
+        The circuit breaker of one endpoint. Call outcomes are kept in a ring buffer, along with
+        running totals of the failed and slow calls in it. Every change of state starts a new
+        generation, and outcomes of calls let through in an earlier one are dropped.
+    */
+    private class Breaker {
+        private static final int FAILED = 1;
+        private static final int SLOW   = 2;
+
+        private final Lock   lock = new ReentrantLock();
+        private final byte[] outcomes = new byte[SLIDING_WINDOW_SIZE];
+        private State        state = State.CLOSED;
+        private int          recorded;
+        private int          next;
+        private int          failures;
+        private int          slowCalls;
+        private long         openedAt;
+        private int          trials;
+        private int          trialSuccesses;
+        private long         generation;
+
+        /** Returns the generation to record a request's outcome in, or -1 if it may not be sent now. */
+        long tryAcquire(long now) {
+            lock.lock();
+            try {
+                if (state(now) == State.OPEN) {
+                    return -1;
+                }
+                if (state == State.HALF_OPEN) {
+                    if (trials >= HALF_OPEN_CALLS) {
+                        return -1;
+                    }
+                    trials++;
+                }
+                return generation;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        void record(long callGeneration, long duration, boolean failed) {
+            boolean slow = duration > slowCallDuration;
+            lock.lock();
+            try {
+                if (callGeneration != generation) {
+                    /* A call let through before the circuit last changed state. */
+                    return;
+                }
+                if (state == State.HALF_OPEN) {
+                    if (failed || slow) {
+                        open(System.nanoTime());
+                    }
+                    else if (++trialSuccesses >= HALF_OPEN_CALLS) {
+                        close();
+                    }
+                    return;
+                }
+
+                if (recorded == SLIDING_WINDOW_SIZE) {
+                    int evicted = outcomes[next];
+                    failures -= evicted & FAILED;
+                    slowCalls -= (evicted & SLOW) >> 1;
+                }
+                else {
+                    recorded++;
+                }
+                outcomes[next] = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+                failures += failed ? 1 : 0;
+                slowCalls += slow ? 1 : 0;
+                next = (next + 1) % SLIDING_WINDOW_SIZE;
+
+                if (recorded >= MINIMUM_CALLS
+                        && (failures >= failureRateThreshold * recorded || slowCalls >= slowCallRateThreshold * recorded)) {
+                    open(System.nanoTime());
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /** Returns the current state, moving an open circuit to half-open once its time is up. */
+        State state(long now) {
+            lock.lock();
+            try {
+                if (state == State.OPEN && now - openedAt >= openDuration) {
+                    state = State.HALF_OPEN;
+                    generation++;
+                    trials = 0;
+                    trialSuccesses = 0;
+                }
+                return state;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private void open(long now) {
+            state = State.OPEN;
+            generation++;
+            openedAt = now;
+        }
+
+        private void close() {
+            state = State.CLOSED;
+            generation++;
+            recorded = 0;
+            next = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+    }
+}
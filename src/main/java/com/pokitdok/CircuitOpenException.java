@@ -0,0 +1,20 @@
+package com.pokitdok;
+
+import java.io.IOException;
+
+/**
+    Thrown by a {@link CircuitBreakingConnector} when a request is refused without being sent,
+    because the circuit for its endpoint is open. The exception carries no stack trace, so that
+    failing fast stays cheap.
+*/
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+
+    public Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.simple.parser.ParseException;
+
+/**
+    A connector that collapses identical concurrent GET requests into a single call to the
+    platform.
+
+    <p>
+
+    While a GET request is in flight, any other thread issuing a GET request for the same
+    endpoint, with the same parameters and scope, waits for the first one's response instead of
+    sending its own. Every waiting thread then receives the result, or the exception, of that
+    single call. Each caller still gets its own copy of the response, so callers may modify
+    what they get back. Requests are only shared while they are in flight; combine with a
+    {@link CachingConnector} to re-use responses afterwards.
+
+    <p>
+
+    Requests streaming their results to a {@link DataVisitor} are never coalesced, since
+    sharing them would require keeping the whole response in memory.
+
+    <p>
+
+    No lock is held while a request is in flight; waiting threads block on the in-flight
+    request's {@link FutureTask}. Instances are thread-safe.
+*/
+public class CoalescingConnector extends ForwardingConnector {
+    private final ConcurrentMap<RequestKey, Flight> flights = new ConcurrentHashMap<RequestKey, Flight>();
+    private final AtomicLong                        requests = new AtomicLong();
+    private final AtomicLong                        coalesced = new AtomicLong();
+
+    /**
+        Creates a coalescing connector in front of the given connector.
+
+        @param delegate the connector to send requests through
+    */
+    public CoalescingConnector(PokitDokHTTPConnector delegate) {
+        super(delegate);
+    }
+
+    public PokitDokResponse execute(final PokitDokRequest request, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        if (visitor != null || !PokitDokRequest.GET.equals(request.getMethod())) {
+            return super.execute(request, visitor);
+        }
+
+        RequestKey key = new RequestKey(request);
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight != null) {
+                if (flight.join()) {
+                    coalesced.incrementAndGet();
+                    return await(flight.task).copy();
+                }
+                /* The flight landed before we could join it; look again. */
+                flights.remove(key, flight);
+                continue;
+            }
+
+            flight = new Flight(new FutureTask<PokitDokResponse>(new Callable<PokitDokResponse>() {
+                public PokitDokResponse call() throws Exception {
+                    return CoalescingConnector.super.execute(request, null);
+                }
+            }));
+            if (flights.putIfAbsent(key, flight) != null) {
+                continue;
+            }
+
+            requests.incrementAndGet();
+            try {
+                flight.task.run();
+            }
+            finally {
+                flights.remove(key, flight);
+            }
+            PokitDokResponse response = await(flight.task);
+            /* Hand out the original only if nobody else is reading it. */
+            return flight.land() ? response : response.copy();
+        }
+    }
+
+    /**
+        Returns the number of GET requests actually sent to the platform.
+
+        @return the number of sent requests
+    */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+        Returns the number of GET requests answered by joining an identical request already in
+        flight.
+
+        @return the number of coalesced requests
+    */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    private static PokitDokResponse await(FutureTask<PokitDokResponse> task)
+    throws IOException, ParseException, UnauthorizedException {
+        try {
+            return task.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a response");
+        }
+        catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+        A request in flight, together with the number of threads waiting for it. Once the
+        request has landed, the count is sealed and no further thread can join.
+    */
+    private static class Flight {
+        final FutureTask<PokitDokResponse> task;
+        final AtomicInteger                passengers = new AtomicInteger();
+
+        Flight(FutureTask<PokitDokResponse> task) {
+            this.task = task;
+        }
+
+        boolean join() {
+            while (true) {
+                int count = passengers.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (passengers.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /** Seals the flight, returning whether nobody joined it. */
+        boolean land() {
+            return passengers.getAndSet(-1) == 0;
+        }
+    }
+}
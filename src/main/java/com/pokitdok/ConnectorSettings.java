@@ -0,0 +1,336 @@
+package com.pokitdok;
+
+/**
+    Tuning knobs for the HTTP connection pool and token handling of an {@link ApacheHTTPConnector}.
+
+    <p>
+
+    Every connector keeps a single long-lived HTTP client backed by a pooling connection manager,
+    so consecutive calls to the platform re-use already established (and TLS-negotiated)
+    connections instead of opening a new socket per request. The defaults are sized for a
+    single client talking to a single platform host; raise {@link #setMaxConnectionsPerRoute(int)}
+    when many threads share one client.
+
+    <p>
+
+    All durations are expressed in milliseconds. A value of zero or less disables the
+    corresponding limit, except for the timeouts, where it selects the system default.
+*/
+public class ConnectorSettings {
+    /** Default maximum number of pooled connections across all routes. */
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 50;
+    /** Default maximum number of pooled connections to a single host. */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    /** Default keep-alive period used when the server does not send a Keep-Alive header. */
+    public static final long DEFAULT_KEEP_ALIVE = 30000;
+    /** Default time after which an unused pooled connection is closed by the evictor. */
+    public static final long DEFAULT_MAX_IDLE_TIME = 60000;
+    /** Default period of inactivity after which a pooled connection is re-validated before use. */
+    public static final int DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+
+    private int  maxTotalConnections      = DEFAULT_MAX_TOTAL_CONNECTIONS;
+    private int  maxConnectionsPerRoute   = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private long keepAlive                = DEFAULT_KEEP_ALIVE;
+    private long maxIdleTime              = DEFAULT_MAX_IDLE_TIME;
+    private long connectionTimeToLive     = -1;
+    private int  validateAfterInactivity  = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+    private int  connectTimeout           = -1;
+    private int  socketTimeout            = -1;
+    private int  connectionRequestTimeout = -1;
+    private long tokenRefreshMargin       = AccessTokenManager.DEFAULT_REFRESH_MARGIN;
+    private int     requestCompressionThreshold = -1;
+    private boolean responseCompression         = true;
+    private JSONCodec       jsonCodec                   = new SimpleJSONCodec();
+    private MetricsListener metricsListener;
+    private RequestPhaseListener requestPhaseListener;
+
+    /**
+        Returns the maximum number of connections kept by the pool across all routes.
+
+        @return the maximum number of pooled connections
+    */
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    /**
+        Sets the maximum number of connections kept by the pool across all routes.
+
+        @param maxTotalConnections the maximum number of pooled connections
+    */
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    /**
+        Returns the maximum number of connections kept by the pool for a single route. Since a
+        client normally talks to one platform host only, this is the effective concurrency limit.
+
+        @return the maximum number of pooled connections per route
+    */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+        Sets the maximum number of connections kept by the pool for a single route.
+
+        @param maxConnectionsPerRoute the maximum number of pooled connections per route
+    */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+        Returns the keep-alive period applied to connections whose response carries no
+        Keep-Alive header. Server-provided timeouts are honoured but never exceed this value.
+
+        @return the keep-alive period in milliseconds, or zero or less to keep connections
+            alive indefinitely
+    */
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+        Sets the keep-alive period applied to pooled connections.
+
+        @param keepAlive the keep-alive period in milliseconds
+    */
+    public void setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+        Returns how long a connection may sit idle in the pool before the background evictor
+        closes it.
+
+        @return the maximum idle time in milliseconds, or zero or less to disable idle eviction
+    */
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+        Sets how long a connection may sit idle in the pool before it is evicted.
+
+        @param maxIdleTime the maximum idle time in milliseconds
+    */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+        Returns the total time to live of a pooled connection, regardless of activity.
+
+        @return the connection time to live in milliseconds, or zero or less for no limit
+    */
+    public long getConnectionTimeToLive() {
+        return connectionTimeToLive;
+    }
+
+    /**
+        Sets the total time to live of a pooled connection. Bounding it lets the client pick up
+        DNS changes of the platform host.
+
+        @param connectionTimeToLive the connection time to live in milliseconds
+    */
+    public void setConnectionTimeToLive(long connectionTimeToLive) {
+        this.connectionTimeToLive = connectionTimeToLive;
+    }
+
+    /**
+        Returns the period of inactivity after which a pooled connection is checked for
+        staleness before it is leased again.
+
+        @return the stale-check period in milliseconds, or zero or less to disable the check
+    */
+    public int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+        Sets the period of inactivity after which a pooled connection is checked for staleness.
+
+        @param validateAfterInactivity the stale-check period in milliseconds
+    */
+    public void setValidateAfterInactivity(int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    /**
+        Returns the timeout for establishing a new connection.
+
+        @return the connect timeout in milliseconds
+    */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+        Sets the timeout for establishing a new connection.
+
+        @param connectTimeout the connect timeout in milliseconds
+    */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+        Returns the maximum period of inactivity between two data packets of a response.
+
+        @return the socket timeout in milliseconds
+    */
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    /**
+        Sets the maximum period of inactivity between two data packets of a response.
+
+        @param socketTimeout the socket timeout in milliseconds
+    */
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+        Returns how long a request waits for a connection to become available in the pool.
+
+        @return the pool lease timeout in milliseconds
+    */
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+        Sets how long a request waits for a connection to become available in the pool.
+
+        @param connectionRequestTimeout the pool lease timeout in milliseconds
+    */
+    public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    /**
+        Returns how long before its expiry an access token is renewed in the background.
+
+        @return the token refresh margin in milliseconds
+    */
+    public long getTokenRefreshMargin() {
+        return tokenRefreshMargin;
+    }
+
+    /**
+        Sets how long before its expiry an access token is renewed in the background.
+
+        @param tokenRefreshMargin the token refresh margin in milliseconds
+    */
+    public void setTokenRefreshMargin(long tokenRefreshMargin) {
+        this.tokenRefreshMargin = tokenRefreshMargin;
+    }
+
+    /**
+        Returns the body size from which requests are sent gzip-compressed.
+
+        @return the threshold in bytes, or a negative value if requests are never compressed
+    */
+    public int getRequestCompressionThreshold() {
+        return requestCompressionThreshold;
+    }
+
+    /**
+        Sets the body size from which POST and PUT requests are sent gzip-compressed, with a
+        {@code Content-Encoding: gzip} header. Compressing pays off for large submissions such
+        as claims with many service lines or enrollment files; small bodies are best sent as
+        they are. Off by default.
+
+        @param requestCompressionThreshold the threshold in bytes, or a negative value to never
+            compress requests
+    */
+    public void setRequestCompressionThreshold(int requestCompressionThreshold) {
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    /**
+        Returns whether gzip and deflate compressed responses are accepted.
+
+        @return true if responses may be compressed
+    */
+    public boolean isResponseCompression() {
+        return responseCompression;
+    }
+
+    /**
+        Sets whether to accept gzip and deflate compressed responses. When on, requests carry an
+        {@code Accept-Encoding} header and compressed responses are decompressed as they are
+        read, without being buffered. On by default.
+
+        @param responseCompression true to accept compressed responses
+    */
+    public void setResponseCompression(boolean responseCompression) {
+        this.responseCompression = responseCompression;
+    }
+
+    /**
+        Returns the codec request bodies are encoded and responses decoded with.
+
+        @return the codec
+    */
+    public JSONCodec getJSONCodec() {
+        return jsonCodec;
+    }
+
+    /**
+        Sets the codec request bodies are encoded and responses decoded with. The default is a
+        {@link SimpleJSONCodec}; a {@link FastJSONCodec} cuts the time and garbage spent on
+        large responses.
+
+        @param jsonCodec the codec
+    */
+    public void setJSONCodec(JSONCodec jsonCodec) {
+        if (jsonCodec == null) {
+            throw new IllegalArgumentException("A JSON codec is required");
+        }
+        this.jsonCodec = jsonCodec;
+    }
+
+    /**
+        Returns the listener told about every request and token refresh of the connector.
+
+        @return the listener, or null if none is set
+    */
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+        Sets a listener to be told about every request and token refresh of the connector, such
+        as an {@link InMemoryMetrics}. Without one, no measurements are taken at all.
+
+        @param metricsListener the listener, or null for none
+    */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+        Returns the listener told how long each phase of every request took.
+
+        @return the listener, or null if none is set
+    */
+    public RequestPhaseListener getRequestPhaseListener() {
+        return requestPhaseListener;
+    }
+
+    /**
+        Sets a listener to be told how long each phase of every request took, from leasing a
+        pooled connection to parsing the response. The timing hooks are only installed in
+        connectors created with a listener set.
+
+        @param requestPhaseListener the listener, or null for none
+    */
+    public void setRequestPhaseListener(RequestPhaseListener requestPhaseListener) {
+        this.requestPhaseListener = requestPhaseListener;
+    }
+}
@@ -0,0 +1,39 @@
+package com.pokitdok;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+    A request entity that counts the bytes it writes to the connection, for bodies whose size is
+    not known up front, such as compressed or chunked ones. The count covers the last time the
+    entity was written. Not thread-safe.
+*/
+final class CountingEntity extends HttpEntityWrapper {
+    private long count;
+
+    CountingEntity(HttpEntity wrapped) {
+        super(wrapped);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        count = 0;
+        super.writeTo(new FilterOutputStream(out) {
+            public void write(int b) throws IOException {
+                out.write(b);
+                count++;
+            }
+
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                count += len;
+            }
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package com.pokitdok;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+    An input stream that counts the bytes read through it and, optionally, the time spent
+    blocked reading them. Not thread-safe.
+*/
+final class CountingInputStream extends FilterInputStream {
+    private final boolean timed;
+    private long          count;
+    private long          mark;
+    private long          readTime;
+
+    CountingInputStream(InputStream in) {
+        this(in, false);
+    }
+
+    CountingInputStream(InputStream in, boolean timed) {
+        super(in);
+        this.timed = timed;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+        Returns the time spent inside the read methods of the underlying stream.
+
+        @return the read time in nanoseconds, always zero unless the stream is timed
+    */
+    long getReadTime() {
+        return readTime;
+    }
+
+    public int read() throws IOException {
+        long start = timed ? System.nanoTime() : 0;
+        int b = super.read();
+        if (timed) {
+            readTime += System.nanoTime() - start;
+        }
+        if (b >= 0) {
+            count++;
+        }
+        return b;
+    }
+
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long start = timed ? System.nanoTime() : 0;
+        int read = super.read(buffer, offset, length);
+        if (timed) {
+            readTime += System.nanoTime() - start;
+        }
+        if (read > 0) {
+            count += read;
+        }
+        return read;
+    }
+
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    public void mark(int readLimit) {
+        super.mark(readLimit);
+        mark = count;
+    }
+
+    public void reset() throws IOException {
+        super.reset();
+        count = mark;
+    }
+}
@@ -0,0 +1,21 @@
+package com.pokitdok;
+
+/**
+    Receives the elements of a response's {@code data} array one at a time, as they are decoded.
+
+    <p>
+
+    Endpoints that can return very large result sets, such as providers or activities, accept a
+    visitor. Each element of the {@code data} array is handed to it as soon as it has been
+    parsed and is not kept afterwards, so memory use stays flat however many results are
+    returned. The response returned by the endpoint method still carries every other field,
+    with {@code data} left as an empty array.
+*/
+public interface DataVisitor {
+    /**
+        Called once for every element of the {@code data} array, in order.
+
+        @param element the decoded element, typically a {@link java.util.Map}
+    */
+    void visit(Object element);
+}
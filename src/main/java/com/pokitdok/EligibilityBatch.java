@@ -0,0 +1,308 @@
+package com.pokitdok;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+    Runs large numbers of eligibility checks through a shared {@link PokitDok} client with
+    bounded concurrency.
+
+    <p>
+
+    Requests are pulled lazily from an {@link Iterator}, so a sweep over hundreds of thousands
+    of members never holds more than a bounded window of them in memory. At most
+    {@code parallelism} checks run at once, and at most {@code maxPerTradingPartner} of them
+    target the same {@code trading_partner_id}; requests for a trading partner that is at its
+    cap wait in a per-partner queue while the others carry on. Results are handed to a
+    {@link ResultListener} as soon as each check completes, together with the request that
+    produced them. A failed check is reported to the listener and does not stop the sweep.
+
+    <p>
+
+    <b>Usage example:</b>
+    <pre>
+    {@code
+        EligibilityBatch batch = new EligibilityBatch(pd, 32, 4);
+        batch.run(members.iterator(), new EligibilityBatch.ResultListener() {
+            public void onResult(Map<String, Object> request, Map<String, Object> response) {
+                store(request, response);
+            }
+            public void onFailure(Map<String, Object> request, Exception error) {
+                retryLater(request, error);
+            }
+        });
+    }
+    </pre>
+
+    The progress counters may be read from any thread while a sweep is running. A batch runs
+    one sweep at a time.
+*/
+public class EligibilityBatch {
+    /**
+        Receives the outcome of every eligibility check of a sweep. Methods are called from the
+        worker threads, possibly concurrently, so implementations must be thread-safe.
+    */
+    public interface ResultListener {
+        /**
+            Called when an eligibility check has completed.
+
+            @param request the request, as it was read from the sweep's iterator
+            @param response the parsed eligibility response
+        */
+        void onResult(Map<String, Object> request, Map<String, Object> response);
+
+        /**
+            Called when an eligibility check has failed.
+
+            @param request the request, as it was read from the sweep's iterator
+            @param error the reason the check failed
+        */
+        void onFailure(Map<String, Object> request, Exception error);
+    }
+
+    private final PokitDok        client;
+    private final int             parallelism;
+    private final int             maxPerTradingPartner;
+    private final int             maxPending;
+    private final ExecutorService executor;
+
+    private final Lock               lanesLock = new ReentrantLock();
+    private final Map<String, Lane>  lanes     = new HashMap<String, Lane>();
+    private final AtomicLong         submitted = new AtomicLong();
+    private final AtomicLong         succeeded = new AtomicLong();
+    private final AtomicLong         failed    = new AtomicLong();
+    private final AtomicLong         running   = new AtomicLong();
+
+    /**
+        Creates a batch that runs its checks on its own pool of {@code parallelism} threads.
+
+        @param client the client to send eligibility requests through
+        @param parallelism the maximum number of checks running at once
+        @param maxPerTradingPartner the maximum number of checks running at once against a
+            single trading partner
+    */
+    public EligibilityBatch(PokitDok client, int parallelism, int maxPerTradingPartner) {
+        this(client, parallelism, maxPerTradingPartner, parallelism * 4, null);
+    }
+
+    /**
+        Creates a batch that runs its checks on the given executor.
+
+        @param client the client to send eligibility requests through
+        @param parallelism the maximum number of checks running at once
+        @param maxPerTradingPartner the maximum number of checks running at once against a
+            single trading partner
+        @param maxPending the maximum number of requests read from the iterator but not yet
+            completed, including those running
+        @param executor the executor to run checks on, or null to use a fixed pool of
+            {@code parallelism} threads per sweep
+    */
+    public EligibilityBatch(PokitDok client, int parallelism, int maxPerTradingPartner, int maxPending,
+                            ExecutorService executor) {
+        if (parallelism < 1 || maxPerTradingPartner < 1 || maxPending < parallelism) {
+            throw new IllegalArgumentException("parallelism and maxPerTradingPartner must be positive, "
+                + "and maxPending at least parallelism");
+        }
+        this.client = client;
+        this.parallelism = parallelism;
+        this.maxPerTradingPartner = maxPerTradingPartner;
+        this.maxPending = maxPending;
+        this.executor = executor;
+    }
+
+    /**
+        Runs an eligibility check for every request of the iterator, and waits until all of them
+        have completed or failed.
+
+        @param requests the eligibility requests to send, read lazily
+        @param listener receives the outcome of every check
+        @throws InterruptedException if the calling thread was interrupted while reading requests
+            or waiting for checks to complete
+    */
+    public void run(Iterator<Map<String, Object>> requests, ResultListener listener) throws InterruptedException {
+        submitted.set(0);
+        succeeded.set(0);
+        failed.set(0);
+
+        ExecutorService workers = (executor != null) ? executor : Executors.newFixedThreadPool(parallelism);
+        Semaphore window = new Semaphore(maxPending);
+        Semaphore concurrency = new Semaphore(parallelism);
+        try {
+            while (requests.hasNext()) {
+                window.acquire();
+                Map<String, Object> request = requests.next();
+                submitted.incrementAndGet();
+                dispatch(new Check(request, listener, window, concurrency), workers);
+            }
+
+            /* Every permit comes back once the last check has completed. */
+            window.acquire(maxPending);
+            window.release(maxPending);
+        }
+        finally {
+            if (executor == null) {
+                workers.shutdown();
+            }
+        }
+    }
+
+    /**
+        Returns the number of requests read from the iterator so far in the current sweep.
+
+        @return the number of submitted requests
+    */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+        Returns the number of checks completed successfully so far in the current sweep.
+
+        @return the number of successful checks
+    */
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    /**
+        Returns the number of checks that failed so far in the current sweep.
+
+        @return the number of failed checks
+    */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+        Returns the number of checks currently waiting on a response.
+
+        @return the number of running checks
+    */
+    public long getRunning() {
+        return running.get();
+    }
+
+    /**
+        Returns the number of submitted requests that have not completed yet, including those
+        that are running.
+
+        @return the number of outstanding requests
+    */
+    public long getPending() {
+        return submitted.get() - succeeded.get() - failed.get();
+    }
+
+    private static String tradingPartnerOf(Map<String, Object> request) {
+        Object tradingPartnerId = request.get("trading_partner_id");
+        return tradingPartnerId == null ? "" : tradingPartnerId.toString();
+    }
+
+    /** Starts the check now if its trading partner is below its cap, or queues it otherwise. */
+    private void dispatch(Check check, ExecutorService workers) {
+        String tradingPartnerId = tradingPartnerOf(check.request);
+        lanesLock.lock();
+        try {
+            Lane lane = lanes.get(tradingPartnerId);
+            if (lane == null) {
+                lane = new Lane();
+                lanes.put(tradingPartnerId, lane);
+            }
+            if (lane.active < maxPerTradingPartner) {
+                lane.active++;
+            }
+            else {
+                lane.waiting.add(check);
+                return;
+            }
+        }
+        finally {
+            lanesLock.unlock();
+        }
+        check.workers = workers;
+        workers.execute(check);
+    }
+
+    /** Hands the trading partner's slot to its next queued check, or gives it back. */
+    private void complete(Check check) {
+        String tradingPartnerId = tradingPartnerOf(check.request);
+        Check next;
+        lanesLock.lock();
+        try {
+            Lane lane = lanes.get(tradingPartnerId);
+            next = lane.waiting.poll();
+            if (next == null && --lane.active == 0) {
+                lanes.remove(tradingPartnerId);
+            }
+        }
+        finally {
+            lanesLock.unlock();
+        }
+        if (next != null) {
+            next.workers = check.workers;
+            check.workers.execute(next);
+        }
+    }
+
+    /** The checks running and waiting for a single trading partner. */
+    private static class Lane {
+        int          active;
+        Queue<Check> waiting = new LinkedList<Check>();
+    }
+
+    private class Check implements Runnable {
+        final Map<String, Object> request;
+        final ResultListener      listener;
+        final Semaphore           window;
+        final Semaphore           concurrency;
+        ExecutorService           workers;
+
+        Check(Map<String, Object> request, ResultListener listener, Semaphore window, Semaphore concurrency) {
+            this.request = request;
+            this.listener = listener;
+            this.window = window;
+            this.concurrency = concurrency;
+        }
+
+        public void run() {
+            Map<String, Object> response = null;
+            Exception error = null;
+
+            concurrency.acquireUninterruptibly();
+            running.incrementAndGet();
+            try {
+                response = client.eligibility(request);
+            }
+            catch (Exception e) {
+                error = e;
+            }
+            finally {
+                running.decrementAndGet();
+                concurrency.release();
+            }
+
+            try {
+                if (error == null) {
+                    succeeded.incrementAndGet();
+                    listener.onResult(request, response);
+                }
+                else {
+                    failed.incrementAndGet();
+                    listener.onFailure(request, error);
+                }
+            }
+            finally {
+                complete(this);
+                window.release();
+            }
+        }
+    }
+}
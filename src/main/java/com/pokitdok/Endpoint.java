@@ -0,0 +1,163 @@
+package com.pokitdok;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+    A compiled endpoint template, such as {@code appointments/{uuid}}, that fills in its
+    variables to give the endpoint of a request.
+
+    <p>
+
+    The template is split into its literal text and variables once, when it is compiled, so
+    expanding it takes a single {@link StringBuilder} and the resulting string. Variable values
+    are percent-encoded as path segments, so a value containing {@code /}, {@code ?} or spaces
+    cannot change which resource is addressed. Endpoints are immutable and can be shared
+    freely; the templated endpoints of the platform are available as constants.
+*/
+public final class Endpoint {
+    public static final Endpoint APPOINTMENT       = compile("appointments/{uuid}");
+    public static final Endpoint APPOINTMENT_TYPE  = compile("appointment_types/{type}");
+    public static final Endpoint IDENTITY          = compile("identity/{uuid}");
+    public static final Endpoint MPC               = compile("mpc/{code}");
+    public static final Endpoint PHARMACY_NETWORK  = compile("pharmacy/network/{npi}");
+    public static final Endpoint SCHEDULER         = compile("schedulers/{uuid}");
+    public static final Endpoint TRADING_PARTNER   = compile("tradingpartners/{id}");
+
+    private final String       template;
+    private final String[]     literals;
+    private final List<String> variables;
+    private final int          literalLength;
+
+    private Endpoint(String template, String[] literals, List<String> variables) {
+        this.template = template;
+        this.literals = literals;
+        this.variables = variables;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+        Compiles an endpoint template: an endpoint path relative to the API root, with variables
+        in braces, such as {@code pharmacy/network/{npi}}.
+
+        @param template the template
+        @return the compiled endpoint
+        @throws IllegalArgumentException if a brace is unmatched or a variable has no name
+    */
+    public static Endpoint compile(String template) {
+        List<String> literals = new ArrayList<String>();
+        List<String> variables = new ArrayList<String>();
+        int start = 0;
+        for (int open = template.indexOf('{'); open >= 0; open = template.indexOf('{', start)) {
+            int close = template.indexOf('}', open);
+            int nested = template.indexOf('{', open + 1);
+            if (close < 0 || close == open + 1 || (nested >= 0 && nested < close)) {
+                throw new IllegalArgumentException("Malformed variable in endpoint template " + template);
+            }
+            literals.add(literal(template, start, open));
+            variables.add(template.substring(open + 1, close));
+            start = close + 1;
+        }
+        literals.add(literal(template, start, template.length()));
+        return new Endpoint(template, literals.toArray(new String[literals.size()]),
+            Collections.unmodifiableList(variables));
+    }
+
+    private static String literal(String template, int start, int end) {
+        String literal = template.substring(start, end);
+        if (literal.indexOf('}') >= 0) {
+            throw new IllegalArgumentException("Unmatched } in endpoint template " + template);
+        }
+        return literal;
+    }
+
+    /**
+        Fills in the template's variables, in the order they appear in it. Values may be of any
+        type; each is used as its {@link String#valueOf(Object)}.
+
+        @param values a value for each variable
+        @return the endpoint, ready to be passed to a {@link PokitDokRequest} or connector
+        @throws IllegalArgumentException if the number of values does not match the template,
+            or a value is null
+    */
+    public String expand(Object... values) {
+        return appendTo(new StringBuilder(literalLength + 16 * values.length), values).toString();
+    }
+
+    private StringBuilder appendTo(StringBuilder endpoint, Object[] values) {
+        if (values.length != variables.size()) {
+            throw new IllegalArgumentException("Endpoint " + template + " takes " + variables.size()
+                + " values, got " + values.length);
+        }
+        endpoint.append(literals[0]);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException("No value for {" + variables.get(i) + "} in " + template);
+            }
+            URLEncoding.appendPathSegment(endpoint, String.valueOf(values[i]));
+            endpoint.append(literals[i + 1]);
+        }
+        return endpoint;
+    }
+
+    /**
+        Fills in the template's variables by name.
+
+        @param values a value for each variable, keyed by its name
+        @return the endpoint
+        @throws IllegalArgumentException if a variable has no value
+    */
+    public String expand(Map<String, ?> values) {
+        Object[] ordered = new Object[variables.size()];
+        for (int i = 0; i < ordered.length; i++) {
+            ordered[i] = values.get(variables.get(i));
+        }
+        return expand(ordered);
+    }
+
+    /**
+        Builds the full URL of a request to this endpoint, with the query string built as by
+        {@link PokitDok#apiUrl(String, String, Map)}.
+
+        @param apiBase the base Platform url
+        @param params the query parameters, or null for none
+        @param values a value for each variable of the template
+        @return the URL
+    */
+    public String url(String apiBase, Map<String, Object> params, Object... values) {
+        StringBuilder url = PokitDok.apiRoot(apiBase, literalLength + 16 * values.length, params);
+        appendTo(url, values);
+        if (params != null) {
+            URLEncoding.appendQuery(url, params);
+        }
+        return url.toString();
+    }
+
+    /** @return the template this endpoint was compiled from */
+    public String getTemplate() {
+        return template;
+    }
+
+    /** @return the names of the template's variables, in order */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    public String toString() {
+        return template;
+    }
+
+    public boolean equals(Object other) {
+        return other instanceof Endpoint && template.equals(((Endpoint) other).template);
+    }
+
+    public int hashCode() {
+        return template.hashCode();
+    }
+}
@@ -0,0 +1,61 @@
+package com.pokitdok;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+    Per-endpoint settings of a connector, looked up by longest matching path prefix, so that a
+    setting for {@code "mpc"} covers both {@code mpc/} and {@code mpc/<code>}, while one for
+    {@code "pharmacy/plans"} overrides one for {@code "pharmacy"}. Prefixes only match whole path
+    segments: {@code "plans"} does not cover {@code plans_history}. Thread-safe.
+*/
+final class EndpointMap<V> {
+    private final Map<String, V> values = new ConcurrentHashMap<String, V>();
+
+    void put(String prefix, V value) {
+        values.put(prefix, value);
+    }
+
+    void remove(String prefix) {
+        values.remove(prefix);
+    }
+
+    /**
+        Returns the longest configured prefix of an endpoint.
+
+        @param endpoint the endpoint path of a request
+        @return the matching prefix, or null if none matches
+    */
+    String match(String endpoint) {
+        String match = null;
+        for (String prefix : values.keySet()) {
+            if ((match == null || prefix.length() > match.length()) && covers(prefix, endpoint)) {
+                match = prefix;
+            }
+        }
+        return match;
+    }
+
+    /**
+        Returns whether an endpoint is the given prefix, or lies below it in the path.
+
+        @param prefix the path prefix, with or without trailing slash
+        @param endpoint the endpoint path of a request
+        @return true if the prefix ends at a path segment boundary of the endpoint
+    */
+    static boolean covers(String prefix, String endpoint) {
+        return endpoint.startsWith(prefix)
+            && (endpoint.length() == prefix.length() || prefix.endsWith("/") || endpoint.charAt(prefix.length()) == '/');
+    }
+
+    /**
+        Returns the value of the longest configured prefix of an endpoint.
+
+        @param endpoint the endpoint path of a request
+        @return the value, or null if no prefix matches
+    */
+    V get(String endpoint) {
+        String match = match(endpoint);
+        return (match == null) ? null : values.get(match);
+    }
+}
@@ -0,0 +1,466 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONAware;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.json.simple.parser.ParseException;
+
+/**
+    A {@link JSONCodec} with a hand-written parser and writer, for services that decode large
+    eligibility or provider responses at high rates: it decodes several times faster than
+    json-simple, with far fewer allocations, and encodes somewhat faster.
+
+    <p>
+
+    The parser reads the text through a buffer of its own in a single pass: strings without
+    escapes are cut straight out of the buffer, and numbers are accumulated as they are read
+    rather than collected into a string and parsed again. Decoded documents have exactly the
+    shape json-simple gives them. The writer escapes only what JSON requires, plus the line and
+    paragraph separators, and writes the unescaped stretches of a string in one call.
+
+    <p>
+
+    Instances hold no state and are thread-safe.
+*/
+public final class FastJSONCodec implements JSONCodec {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public Map<String, Object> decode(Reader reader, DataVisitor visitor) throws IOException, ParseException {
+        return new Parser(reader, visitor).parseDocument();
+    }
+
+    public void encode(Object value, Writer writer) throws IOException {
+        write(value, writer);
+    }
+
+    private static void write(Object value, Writer out) throws IOException {
+        if (value == null) {
+            out.write("null");
+        }
+        else if (value instanceof String) {
+            writeString((String) value, out);
+        }
+        else if (value instanceof Map) {
+            out.write('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                writeString(String.valueOf(entry.getKey()), out);
+                out.write(':');
+                write(entry.getValue(), out);
+            }
+            out.write('}');
+        }
+        else if (value instanceof Collection) {
+            out.write('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                write(element, out);
+            }
+            out.write(']');
+        }
+        else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            out.write(Double.isNaN(number) || Double.isInfinite(number) ? "null" : value.toString());
+        }
+        else if (value instanceof Number || value instanceof Boolean) {
+            out.write(value.toString());
+        }
+        else if (value instanceof JSONStreamAware) {
+            ((JSONStreamAware) value).writeJSONString(out);
+        }
+        else if (value instanceof JSONAware) {
+            out.write(((JSONAware) value).toJSONString());
+        }
+        else if (value.getClass().isArray()) {
+            out.write('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                write(Array.get(value, i), out);
+            }
+            out.write(']');
+        }
+        else {
+            writeString(value.toString(), out);
+        }
+    }
+
+    private static void writeString(String value, Writer out) throws IOException {
+        out.write('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            out.write(value, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"':  out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                case '\b': out.write("\\b"); break;
+                case '\f': out.write("\\f"); break;
+                default:
+                    out.write("\\u");
+                    out.write(HEX[(c >> 12) & 0xF]);
+                    out.write(HEX[(c >> 8) & 0xF]);
+                    out.write(HEX[(c >> 4) & 0xF]);
+                    out.write(HEX[c & 0xF]);
+            }
+        }
+        out.write(value, start, length - start);
+        out.write('"');
+    }
+
+    /**
+        A recursive descent parser over a buffered reader. Positions in errors are character
+        offsets from the start of the text.
+    */
+    private static final class Parser {
+        private static final int MAX_DEPTH = 512;
+
+        private final Reader        reader;
+        private final DataVisitor   visitor;
+        private final char[]        buffer = new char[8192];
+        private final StringBuilder text = new StringBuilder();
+        private int                 position;
+        private int                 limit;
+        private long                consumed;
+        private int                 depth;
+
+        Parser(Reader reader, DataVisitor visitor) {
+            this.reader = reader;
+            this.visitor = visitor;
+        }
+
+        Map<String, Object> parseDocument() throws IOException, ParseException {
+            if (skipWhitespace() != '{') {
+                throw unexpected();
+            }
+            position++;
+            Map<String, Object> document = parseObject(true);
+            if (skipWhitespace() != -1) {
+                throw unexpected();
+            }
+            return document;
+        }
+
+        private Object parseValue() throws IOException, ParseException {
+            int c = skipWhitespace();
+            switch (c) {
+                case '{':
+                    position++;
+                    return parseObject(false);
+                case '[':
+                    position++;
+                    return parseArray(null);
+                case '"':
+                    position++;
+                    return parseString();
+                case 't':
+                    expectLiteral("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    expectLiteral("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    expectLiteral("null");
+                    return null;
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        return parseNumber();
+                    }
+                    throw unexpected();
+            }
+        }
+
+        /** Parses an object whose opening brace has been consumed. */
+        @SuppressWarnings("unchecked")
+        private JSONObject parseObject(boolean document) throws IOException, ParseException {
+            enter();
+            JSONObject object = new JSONObject();
+            if (skipWhitespace() == '}') {
+                position++;
+                depth--;
+                return object;
+            }
+            while (true) {
+                if (skipWhitespace() != '"') {
+                    throw unexpected();
+                }
+                position++;
+                String key = parseString();
+                if (skipWhitespace() != ':') {
+                    throw unexpected();
+                }
+                position++;
+
+                if (document && visitor != null && key.equals("data") && skipWhitespace() == '[') {
+                    position++;
+                    object.put(key, parseArray(visitor));
+                }
+                else {
+                    object.put(key, parseValue());
+                }
+
+                int c = skipWhitespace();
+                if (c != ',' && c != '}') {
+                    throw unexpected();
+                }
+                position++;
+                if (c == '}') {
+                    depth--;
+                    return object;
+                }
+            }
+        }
+
+        /**
+            Parses an array whose opening bracket has been consumed, handing its elements to the
+            visitor instead of keeping them if there is one.
+        */
+        @SuppressWarnings("unchecked")
+        private JSONArray parseArray(DataVisitor elements) throws IOException, ParseException {
+            enter();
+            JSONArray array = new JSONArray();
+            if (skipWhitespace() == ']') {
+                position++;
+                depth--;
+                return array;
+            }
+            while (true) {
+                Object element = parseValue();
+                if (elements != null) {
+                    elements.visit(element);
+                }
+                else {
+                    array.add(element);
+                }
+
+                int c = skipWhitespace();
+                if (c != ',' && c != ']') {
+                    throw unexpected();
+                }
+                position++;
+                if (c == ']') {
+                    depth--;
+                    return array;
+                }
+            }
+        }
+
+        /** Parses a string whose opening quote has been consumed. */
+        private String parseString() throws IOException, ParseException {
+            /* The common case: no escapes, and the whole string already in the buffer. */
+            for (int i = position; i < limit; i++) {
+                char c = buffer[i];
+                if (c == '"') {
+                    String value = new String(buffer, position, i - position);
+                    position = i + 1;
+                    return value;
+                }
+                if (c == '\\' || c < 0x20) {
+                    break;
+                }
+            }
+
+            text.setLength(0);
+            while (true) {
+                if (position == limit && !fill()) {
+                    throw unexpected();
+                }
+                int start = position;
+                while (position < limit) {
+                    char c = buffer[position];
+                    if (c == '"' || c == '\\' || c < 0x20) {
+                        break;
+                    }
+                    position++;
+                }
+                text.append(buffer, start, position - start);
+                if (position == limit) {
+                    continue;
+                }
+
+                char c = buffer[position];
+                if (c == '"') {
+                    position++;
+                    return text.toString();
+                }
+                if (c < 0x20) {
+                    throw unexpected();
+                }
+                position++;
+                text.append(parseEscape());
+            }
+        }
+
+        private char parseEscape() throws IOException, ParseException {
+            int c = read();
+            switch (c) {
+                case '"':  return '"';
+                case '\\': return '\\';
+                case '/':  return '/';
+                case 'b':  return '\b';
+                case 'f':  return '\f';
+                case 'n':  return '\n';
+                case 'r':  return '\r';
+                case 't':  return '\t';
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int hex = read();
+                        int digit = (hex < 0) ? -1 : Character.digit((char) hex, 16);
+                        if (digit < 0) {
+                            throw unexpected(hex);
+                        }
+                        value = (value << 4) | digit;
+                    }
+                    return (char) value;
+                default:
+                    throw unexpected(c);
+            }
+        }
+
+        /**
+            Parses a number as json-simple does: a {@link Long} if it has no fraction or
+            exponent, and a {@link Double} otherwise. Integers of up to 18 digits are
+            accumulated as they are read; longer ones fall back to parsing the text.
+        */
+        private Object parseNumber() throws IOException, ParseException {
+            text.setLength(0);
+            boolean negative = peek() == '-';
+            if (negative) {
+                text.append('-');
+                position++;
+            }
+            long integer = 0;
+            int digits = 0;
+            boolean integral = true;
+            for (int c = peek(); c >= 0; c = peek()) {
+                if (c >= '0' && c <= '9') {
+                    integer = integer * 10 + (c - '0');
+                    digits++;
+                }
+                else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                    integral = false;
+                }
+                else {
+                    break;
+                }
+                text.append((char) c);
+                position++;
+            }
+
+            if (digits == 0) {
+                throw unexpected();
+            }
+            if (integral && digits <= 18) {
+                return Long.valueOf(negative ? -integer : integer);
+            }
+            try {
+                return integral ? (Object) Long.valueOf(text.toString()) : (Object) Double.valueOf(text.toString());
+            }
+            catch (NumberFormatException e) {
+                if (integral) {
+                    /* Too large for a long. */
+                    return Double.valueOf(text.toString());
+                }
+                throw new ParseException((int) (consumed + position), ParseException.ERROR_UNEXPECTED_TOKEN,
+                    text.toString());
+            }
+        }
+
+        private void expectLiteral(String literal) throws IOException, ParseException {
+            for (int i = 0; i < literal.length(); i++) {
+                int c = read();
+                if (c != literal.charAt(i)) {
+                    throw unexpected(c);
+                }
+            }
+        }
+
+        private void enter() throws ParseException {
+            if (++depth > MAX_DEPTH) {
+                throw new ParseException((int) (consumed + position), ParseException.ERROR_UNEXPECTED_EXCEPTION,
+                    "Nesting deeper than " + MAX_DEPTH);
+            }
+        }
+
+        /** Skips whitespace and returns the next character without consuming it, or -1 at the end. */
+        private int skipWhitespace() throws IOException {
+            while (true) {
+                if (position == limit && !fill()) {
+                    return -1;
+                }
+                char c = buffer[position];
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                    return c;
+                }
+                position++;
+            }
+        }
+
+        private int peek() throws IOException {
+            return (position < limit || fill()) ? buffer[position] : -1;
+        }
+
+        private int read() throws IOException {
+            return (position < limit || fill()) ? buffer[position++] : -1;
+        }
+
+        /** Refills the buffer once it has been consumed; returns false at the end of the text. */
+        private boolean fill() throws IOException {
+            consumed += limit;
+            position = 0;
+            limit = 0;
+            int count;
+            do {
+                count = reader.read(buffer, 0, buffer.length);
+            }
+            while (count == 0);
+            if (count < 0) {
+                return false;
+            }
+            limit = count;
+            return true;
+        }
+
+        /** Reports the next, not yet consumed, character as unexpected. */
+        private ParseException unexpected() throws IOException {
+            int c = peek();
+            return error(c, consumed + position);
+        }
+
+        /** Reports a character just consumed with {@link #read()} as unexpected. */
+        private ParseException unexpected(int c) {
+            return error(c, consumed + position - ((c < 0) ? 0 : 1));
+        }
+
+        private static ParseException error(int c, long offset) {
+            return (c < 0)
+                ? new ParseException((int) offset, ParseException.ERROR_UNEXPECTED_TOKEN, null)
+                : new ParseException((int) offset, ParseException.ERROR_UNEXPECTED_CHAR, Character.valueOf((char) c));
+        }
+    }
+}
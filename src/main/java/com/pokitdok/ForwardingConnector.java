@@ -0,0 +1,192 @@
+package com.pokitdok;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import org.apache.http.HttpStatus;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+    Base class for connectors that add behaviour, such as caching or retries, in front of
+    another connector.
+
+    <p>
+
+    Every request is funnelled through {@link #execute(PokitDokRequest, DataVisitor)}, which
+    subclasses override; by default it simply forwards to the wrapped connector. The
+    string-returning methods of {@link PokitDokHTTPConnector} are implemented on top of it, by
+    re-encoding the decoded body, so that callers using them go through the same logic as
+    {@link PokitDok}, which always uses {@code execute}.
+
+    <p>
+
+    If the wrapped connector is not a {@link PokitDokExchangeConnector}, its string responses
+    are parsed here and reported with a 200 status and no headers.
+
+    <p>
+
+    <b>Usage example:</b>
+    <pre>
+    {@code
+        PokitDokHTTPConnector connector = new CachingConnector(
+            new ApacheHTTPConnector(clientId, clientSecret, PokitDok.getDefaultHeaders(), PokitDok.DEFAULT_API_BASE));
+        PokitDok pd = new PokitDok(clientId, clientSecret, connector);
+    }
+    </pre>
+*/
+public abstract class ForwardingConnector implements PokitDokExchangeConnector, Closeable {
+    private final PokitDokHTTPConnector delegate;
+
+    /**
+        Creates a connector forwarding to the given one.
+
+        @param delegate the connector to forward requests to
+    */
+    protected ForwardingConnector(PokitDokHTTPConnector delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must not be null");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+        Returns the connector requests are forwarded to.
+
+        @return the wrapped connector
+    */
+    protected PokitDokHTTPConnector getDelegate() {
+        return delegate;
+    }
+
+    public void connect() throws IOException, ParseException, UnauthorizedException {
+        delegate.connect();
+    }
+
+    public void connect(String scopeName) throws IOException, ParseException, UnauthorizedException {
+        delegate.connect(scopeName);
+    }
+
+    public PokitDokResponse execute(PokitDokRequest request) throws IOException, ParseException, UnauthorizedException {
+        return execute(request, null);
+    }
+
+    /**
+        Sends a request through the wrapped connector. Subclasses override this method to act on
+        requests and responses.
+
+        @param request the request to send
+        @param visitor receives the elements of the {@code data} array, or null
+        @return the response, with its body decoded
+        @throws IOException usually implying a connectivity error reaching the platform server
+        @throws ParseException if the platform server's response couldn't be parsed
+        @throws UnauthorizedException if, after 2 tries, the client could not authenticate with the
+            given client ID and client secret
+    */
+    public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        if (delegate instanceof PokitDokExchangeConnector) {
+            return ((PokitDokExchangeConnector) delegate).execute(request, visitor);
+        }
+
+        String results;
+        String method = request.getMethod();
+        if (PokitDokRequest.GET.equals(method)) {
+            results = delegate.get(request.getEndpoint(), request.getParams(), request.getHeaders(), request.getScope());
+        }
+        else if (PokitDokRequest.POST.equals(method)) {
+            results = delegate.post(request.getEndpoint(), request.getParams(), request.getHeaders(), request.getScope());
+        }
+        else if (PokitDokRequest.PUT.equals(method)) {
+            results = delegate.put(request.getEndpoint(), request.getParams(), request.getHeaders(), request.getScope());
+        }
+        else {
+            results = delegate.delete(request.getEndpoint(), request.getParams(), request.getHeaders(), request.getScope());
+        }
+
+        Map<String, Object> body = (JSONObject) new JSONParser().parse(results);
+        if (visitor != null) {
+            JSONStreamDecoder.visitData(body, visitor);
+        }
+        return new PokitDokResponse(HttpStatus.SC_OK, Collections.<String, String>emptyMap(), body);
+    }
+
+    public String get(String url, Map<String, Object> params, Map<String, String> headers)
+    throws IOException, ParseException, UnauthorizedException {
+        return get(url, params, headers, PokitDok.DEFAULT_SCOPE);
+    }
+
+    public String get(String url, Map<String, Object> params, Map<String, String> headers, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return encode(execute(new PokitDokRequest(PokitDokRequest.GET, url, params, headers, scope)));
+    }
+
+    public String post(String url, Map<String, Object> params, Map<String, String> headers)
+    throws IOException, ParseException, UnauthorizedException {
+        return post(url, params, headers, PokitDok.DEFAULT_SCOPE);
+    }
+
+    public String post(String url, Map<String, Object> params, Map<String, String> headers, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return encode(execute(new PokitDokRequest(PokitDokRequest.POST, url, params, headers, scope)));
+    }
+
+    public String put(String url, Map<String, Object> params, Map<String, String> headers)
+    throws IOException, ParseException, UnauthorizedException {
+        return put(url, params, headers, PokitDok.DEFAULT_SCOPE);
+    }
+
+    public String put(String url, Map<String, Object> params, Map<String, String> headers, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return encode(execute(new PokitDokRequest(PokitDokRequest.PUT, url, params, headers, scope)));
+    }
+
+    public String delete(String url, Map<String, Object> params, Map<String, String> headers)
+    throws IOException, ParseException, UnauthorizedException {
+        return delete(url, params, headers, PokitDok.DEFAULT_SCOPE);
+    }
+
+    public String delete(String url, Map<String, Object> params, Map<String, String> headers, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return encode(execute(new PokitDokRequest(PokitDokRequest.DELETE, url, params, headers, scope)));
+    }
+
+    /**
+        Closes the wrapped connector, if it supports it.
+
+        @throws IOException if the wrapped connector could not be closed cleanly
+    */
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    /**
+        Rethrows the exception a request failed with on another thread, as thrown by
+        {@link #execute(PokitDokRequest, DataVisitor)}. Declared to return an exception so
+        that callers can write {@code throw rethrow(cause)}.
+    */
+    static RuntimeException rethrow(Throwable cause) throws IOException, ParseException, UnauthorizedException {
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof ParseException) {
+            throw (ParseException) cause;
+        }
+        if (cause instanceof UnauthorizedException) {
+            throw (UnauthorizedException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        throw (Error) cause;
+    }
+
+    private static String encode(PokitDokResponse response) {
+        return JSONValue.toJSONString(response.getBody());
+    }
+}
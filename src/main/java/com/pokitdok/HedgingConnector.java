@@ -0,0 +1,360 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.json.simple.parser.ParseException;
+
+/**
+    A connector that cuts the tail latency of interactive lookups by hedging: when a GET request
+    has not been answered within the usual response time of its endpoint, an identical second
+    request is sent, and whichever response arrives first is used.
+
+    <p>
+
+    The hedging delay of each endpoint is the configured percentile of its recent response
+    times, so that only the slowest requests are hedged; no request is hedged until
+    {@link #MINIMUM_SAMPLES} response times have been observed. Once one of the two requests
+    answers, the other is aborted through a {@link RequestCancellation}, which makes an
+    {@link ApacheHTTPConnector} close its connection rather than keep it leased until the
+    response arrives, and its thread is interrupted; should its response still arrive, it is
+    discarded. If the first request to finish fails, the other one's outcome is used instead.
+    The response time of an aborted request is recorded as the time it ran for, so that a slow
+    tail keeps raising the hedging delay even while hedges win.
+
+    <p>
+
+    Hedges are limited by a budget: every hedged-endpoint request adds {@code budgetRatio} of a
+    hedge to it, up to {@link #BUDGET_RESERVE} hedges, and every hedge uses one, so hedging adds
+    at most {@code budgetRatio} extra load. Only GET requests to the providers, medical procedure
+    code, trading partners and pharmacy network endpoints are hedged by default; requests
+    streaming to a {@link DataVisitor} never are.
+
+    <p>
+
+    Requests to hedged endpoints run on the connector's own daemon threads, which are shut down
+    by {@link #close()}. There are at most {@link #DEFAULT_MAX_THREADS} of them unless configured
+    otherwise; when they are all busy, a request runs on the calling thread instead, and a slow
+    request is not hedged. Instances are thread-safe.
+*/
+public class HedgingConnector extends ForwardingConnector {
+    /** Default percentile of response times after which a request is hedged. */
+    public static final double DEFAULT_PERCENTILE = 0.95;
+    /** Default fraction of extra load hedges may add. */
+    public static final double DEFAULT_BUDGET_RATIO = 0.05;
+    /** Number of hedges the budget starts with and can hold at most. */
+    public static final int    BUDGET_RESERVE = 10;
+    /** Number of response times to observe for an endpoint before hedging its requests. */
+    public static final int    MINIMUM_SAMPLES = 20;
+    /** Default number of threads hedged requests run on at most. */
+    public static final int    DEFAULT_MAX_THREADS = 64;
+
+    private final double                            percentile;
+    private final TokenBudget                       budget;
+    private final EndpointMap<Boolean>              hedged = new EndpointMap<Boolean>();
+    private final ConcurrentMap<String, Latencies>  latencies = new ConcurrentHashMap<String, Latencies>();
+    private final ExecutorService                   executor;
+    private final AtomicLong                        hedges = new AtomicLong();
+    private final AtomicLong                        hedgeWins = new AtomicLong();
+    private final AtomicLong                        budgetExhausted = new AtomicLong();
+
+    /**
+        Creates a hedging connector in front of the given connector, hedging at the
+        {@link #DEFAULT_PERCENTILE} within the {@link #DEFAULT_BUDGET_RATIO}.
+
+        @param delegate the connector to send requests through
+    */
+    public HedgingConnector(PokitDokHTTPConnector delegate) {
+        this(delegate, DEFAULT_PERCENTILE, DEFAULT_BUDGET_RATIO);
+    }
+
+    /**
+        Creates a hedging connector in front of the given connector.
+
+        @param delegate the connector to send requests through
+        @param percentile the percentile of response times after which a request is hedged,
+            such as 0.95
+        @param budgetRatio the fraction of extra load hedges may add, such as 0.05 for 5%
+    */
+    public HedgingConnector(PokitDokHTTPConnector delegate, double percentile, double budgetRatio) {
+        this(delegate, percentile, budgetRatio, DEFAULT_MAX_THREADS);
+    }
+
+    /**
+        Creates a hedging connector in front of the given connector.
+
+        @param delegate the connector to send requests through
+        @param percentile the percentile of response times after which a request is hedged,
+            such as 0.95
+        @param budgetRatio the fraction of extra load hedges may add, such as 0.05 for 5%
+        @param maxThreads the number of threads hedged requests run on at most
+    */
+    public HedgingConnector(PokitDokHTTPConnector delegate, double percentile, double budgetRatio, int maxThreads) {
+        super(delegate);
+        if (percentile <= 0 || percentile >= 1 || budgetRatio < 0 || maxThreads < 1) {
+            throw new IllegalArgumentException("Invalid hedging policy");
+        }
+        this.percentile = percentile;
+        this.budget = new TokenBudget(budgetRatio, BUDGET_RESERVE);
+        this.executor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pokitdok-hedge");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+        String[] lookupEndpoints = { "providers", "mpc", "tradingpartners", "pharmacy/network" };
+        for (String endpoint : lookupEndpoints) {
+            setHedged(endpoint, true);
+        }
+    }
+
+    /**
+        Sets whether GET requests to an endpoint are hedged. The endpoint is matched as a path
+        prefix; the longest configured prefix wins.
+
+        @param endpoint the endpoint path prefix, without leading or trailing slash
+        @param hedge true to hedge requests to the endpoint
+    */
+    public void setHedged(String endpoint, boolean hedge) {
+        hedged.put(endpoint, Boolean.valueOf(hedge));
+    }
+
+    public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        String prefix = null;
+        if (visitor == null && PokitDokRequest.GET.equals(request.getMethod())) {
+            prefix = hedged.match(request.getEndpoint());
+        }
+        Boolean hedge = (prefix == null) ? null : hedged.get(request.getEndpoint());
+        if (hedge == null || !hedge.booleanValue()) {
+            return super.execute(request, visitor);
+        }
+
+        budget.deposit();
+        Latencies endpointLatencies = latenciesFor(prefix);
+        long delay = endpointLatencies.percentile(percentile);
+        if (delay < 0) {
+            return timed(request, endpointLatencies);
+        }
+
+        CompletionService<PokitDokResponse> calls = new ExecutorCompletionService<PokitDokResponse>(executor);
+        RequestCancellation primaryCancellation = new RequestCancellation();
+        RequestCancellation secondaryCancellation = new RequestCancellation();
+        Future<PokitDokResponse> primary;
+        try {
+            primary = calls.submit(call(request.withCancellation(primaryCancellation), endpointLatencies));
+        }
+        catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                throw e;
+            }
+            return timed(request, endpointLatencies);
+        }
+        Future<PokitDokResponse> secondary = null;
+        try {
+            Future<PokitDokResponse> first = calls.poll(delay, TimeUnit.NANOSECONDS);
+            if (first == null) {
+                if (budget.withdraw()) {
+                    secondary = hedge(calls, request.withCancellation(secondaryCancellation), endpointLatencies);
+                }
+                else {
+                    budgetExhausted.incrementAndGet();
+                }
+                first = calls.take();
+            }
+
+            try {
+                PokitDokResponse response = first.get();
+                if (first == secondary) {
+                    hedgeWins.incrementAndGet();
+                }
+                return response;
+            }
+            catch (ExecutionException e) {
+                if (secondary == null) {
+                    throw rethrow(e.getCause());
+                }
+                try {
+                    Future<PokitDokResponse> second = calls.take();
+                    PokitDokResponse response = second.get();
+                    if (second == secondary) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    return response;
+                }
+                catch (ExecutionException ignored) {
+                    throw rethrow(e.getCause());
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a response");
+        }
+        finally {
+            cancel(primary, primaryCancellation);
+            if (secondary != null) {
+                cancel(secondary, secondaryCancellation);
+            }
+        }
+    }
+
+    /**
+        Returns the number of hedge requests sent.
+
+        @return the hedge count
+    */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+        Returns the number of hedge requests that answered before the request they hedged.
+
+        @return the number of winning hedges
+    */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    /**
+        Returns the number of requests that were slow enough to hedge, but were not hedged
+        because the hedge budget was empty.
+
+        @return the number of requests denied a hedge by the budget
+    */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.get();
+    }
+
+    /**
+        Stops the hedging threads and closes the wrapped connector.
+
+        @throws IOException if the wrapped connector could not be closed cleanly
+    */
+    public void close() throws IOException {
+        executor.shutdownNow();
+        super.close();
+    }
+
+    /** Sends a hedge request, unless every hedging thread is busy. */
+    private Future<PokitDokResponse> hedge(CompletionService<PokitDokResponse> calls, PokitDokRequest request,
+                                           Latencies endpointLatencies) {
+        try {
+            Future<PokitDokResponse> hedge = calls.submit(call(request, endpointLatencies));
+            hedges.incrementAndGet();
+            return hedge;
+        }
+        catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /** Aborts a request that is still running, and interrupts its thread. */
+    private static void cancel(Future<PokitDokResponse> call, RequestCancellation cancellation) {
+        if (!call.isDone()) {
+            cancellation.cancel();
+            call.cancel(true);
+        }
+    }
+
+    private Latencies latenciesFor(String prefix) {
+        Latencies endpointLatencies = latencies.get(prefix);
+        if (endpointLatencies == null) {
+            Latencies created = new Latencies();
+            endpointLatencies = latencies.putIfAbsent(prefix, created);
+            if (endpointLatencies == null) {
+                endpointLatencies = created;
+            }
+        }
+        return endpointLatencies;
+    }
+
+    private Callable<PokitDokResponse> call(final PokitDokRequest request, final Latencies endpointLatencies) {
+        return new Callable<PokitDokResponse>() {
+            public PokitDokResponse call() throws Exception {
+                return timed(request, endpointLatencies);
+            }
+        };
+    }
+
+    private PokitDokResponse timed(PokitDokRequest request, Latencies endpointLatencies)
+    throws IOException, ParseException, UnauthorizedException {
+        long start = System.nanoTime();
+        try {
+            return super.execute(request, null);
+        }
+        finally {
+            endpointLatencies.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+        The most recent response times of an endpoint. The percentile is recomputed only after
+        a batch of new samples, so that reading it is usually just a field access.
+    */
+    private static class Latencies {
+        private static final int SIZE = 256;
+        private static final int RECOMPUTE_EVERY = 32;
+
+        private final Lock   lock = new ReentrantLock();
+        private final long[] samples = new long[SIZE];
+        private int          count;
+        private int          next;
+        private int          sinceComputed;
+        private double       computedFor = -1;
+        private long         computed = -1;
+
+        void record(long duration) {
+            lock.lock();
+            try {
+                samples[next] = duration;
+                next = (next + 1) % SIZE;
+                count = Math.min(count + 1, SIZE);
+                sinceComputed++;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /** Returns the given percentile in nanoseconds, or -1 if too few samples were recorded. */
+        long percentile(double percentile) {
+            lock.lock();
+            try {
+                if (count < MINIMUM_SAMPLES) {
+                    return -1;
+                }
+                if (computed < 0 || computedFor != percentile || sinceComputed >= RECOMPUTE_EVERY) {
+                    long[] sorted = Arrays.copyOf(samples, count);
+                    Arrays.sort(sorted);
+                    computed = sorted[Math.min(count - 1, (int) (percentile * count))];
+                    computedFor = percentile;
+                    sinceComputed = 0;
+                }
+                return computed;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+}
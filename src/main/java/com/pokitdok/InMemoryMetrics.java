@@ -0,0 +1,249 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+    A {@link MetricsListener} that keeps latency histograms and counters in memory, per endpoint
+    and scope.
+
+    <p>
+
+    Endpoints are grouped without their identifier segments, so that requests for different
+    activities or procedure codes add up under {@code activities} or {@code mpc}. Each group
+    records a {@link LatencyHistogram} of response times, the number of responses by status,
+    failures, retries, and bytes sent and received. Token refreshes are recorded per scope.
+    Recording never locks: every measurement is an atomic increment.
+
+    <p>
+
+    <b>Usage example:</b>
+    <pre>
+    {@code
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        ConnectorSettings settings = new ConnectorSettings();
+        settings.setMetricsListener(metrics);
+        ...
+        System.out.println(metrics.report());
+    }
+    </pre>
+*/
+public class InMemoryMetrics implements MetricsListener {
+    private final ConcurrentMap<String, EndpointMetrics>  endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+    private final ConcurrentMap<String, LatencyHistogram> tokenRefreshes =
+        new ConcurrentHashMap<String, LatencyHistogram>();
+
+    public void onResponse(PokitDokRequest request, int status, long duration, long bytesSent, long bytesReceived) {
+        EndpointMetrics metrics = metricsFor(request);
+        metrics.latency.record(duration);
+        metrics.bytesSent.addAndGet(bytesSent);
+        metrics.bytesReceived.addAndGet(bytesReceived);
+        if (status >= 0 && status < EndpointMetrics.STATUSES) {
+            metrics.statuses.incrementAndGet(status);
+        }
+    }
+
+    public void onFailure(PokitDokRequest request, IOException error, long duration) {
+        metricsFor(request).failures.incrementAndGet();
+    }
+
+    public void onTokenRefresh(String scope, long duration) {
+        LatencyHistogram histogram = tokenRefreshes.get(scope);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = tokenRefreshes.putIfAbsent(scope, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(duration);
+    }
+
+    public void onRetry(PokitDokRequest request, int attempt) {
+        metricsFor(request).retries.incrementAndGet();
+    }
+
+    /**
+        Returns the metrics of an endpoint and scope.
+
+        @param endpoint the endpoint path, with or without identifier segments
+        @param scope the scope of the requests
+        @return the metrics, or null if no request has been recorded for them
+    */
+    public EndpointMetrics getEndpointMetrics(String endpoint, String scope) {
+        return endpoints.get(key(PokitDokRequest.endpointGroup(endpoint), scope));
+    }
+
+    /**
+        Returns the metrics of every endpoint and scope that has seen requests.
+
+        @return the metrics, sorted by endpoint and scope
+    */
+    public Collection<EndpointMetrics> getAllEndpointMetrics() {
+        return new ArrayList<EndpointMetrics>(new TreeMap<String, EndpointMetrics>(endpoints).values());
+    }
+
+    /**
+        Returns the number of access tokens obtained for a scope.
+
+        @param scope the scope
+        @return the token refresh count
+    */
+    public long getTokenRefreshCount(String scope) {
+        LatencyHistogram histogram = tokenRefreshes.get(scope);
+        return (histogram == null) ? 0 : histogram.getCount();
+    }
+
+    /**
+        Returns the histogram of the time taken to obtain access tokens for a scope.
+
+        @param scope the scope
+        @return the histogram, or null if no token has been obtained for the scope
+    */
+    public LatencyHistogram getTokenRefreshLatency(String scope) {
+        return tokenRefreshes.get(scope);
+    }
+
+    /**
+        Drops everything recorded so far.
+    */
+    public void reset() {
+        endpoints.clear();
+        tokenRefreshes.clear();
+    }
+
+    /**
+        Returns a human-readable report with a line per endpoint and scope, and per scope for
+        token refreshes.
+
+        @return the report
+    */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (EndpointMetrics metrics : getAllEndpointMetrics()) {
+            report.append(metrics).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(tokenRefreshes).entrySet()) {
+            report.append("token ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return report.toString();
+    }
+
+    private EndpointMetrics metricsFor(PokitDokRequest request) {
+        String endpoint = PokitDokRequest.endpointGroup(request.getEndpoint());
+        String key = key(endpoint, request.getScope());
+        EndpointMetrics metrics = endpoints.get(key);
+        if (metrics == null) {
+            EndpointMetrics created = new EndpointMetrics(endpoint, request.getScope());
+            metrics = endpoints.putIfAbsent(key, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    private static String key(String endpoint, String scope) {
+        return endpoint + " " + scope;
+    }
+
+    /**
+        The measurements of one endpoint and scope. Values are live: they keep changing as
+        requests are recorded.
+    */
+    public static class EndpointMetrics {
+        static final int STATUSES = 600;
+
+        private final String           endpoint;
+        private final String           scope;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLongArray  statuses = new AtomicLongArray(STATUSES);
+        private final AtomicLong       failures = new AtomicLong();
+        private final AtomicLong       retries = new AtomicLong();
+        private final AtomicLong       bytesSent = new AtomicLong();
+        private final AtomicLong       bytesReceived = new AtomicLong();
+
+        EndpointMetrics(String endpoint, String scope) {
+            this.endpoint = endpoint;
+            this.scope = scope;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public String getScope() {
+            return scope;
+        }
+
+        /**
+            Returns the histogram of the response times of the endpoint, in nanoseconds.
+
+            @return the live histogram; take a {@link LatencyHistogram#snapshot()} to read
+                several statistics consistently
+        */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+            Returns the number of responses received, whatever their status.
+
+            @return the response count
+        */
+        public long getResponseCount() {
+            return latency.getCount();
+        }
+
+        /**
+            Returns the number of responses received, by HTTP status.
+
+            @return a map of statuses to counts, holding only the statuses seen
+        */
+        public SortedMap<Integer, Long> getStatusCounts() {
+            SortedMap<Integer, Long> counts = new TreeMap<Integer, Long>();
+            for (int status = 0; status < STATUSES; status++) {
+                long count = statuses.get(status);
+                if (count > 0) {
+                    counts.put(Integer.valueOf(status), Long.valueOf(count));
+                }
+            }
+            return counts;
+        }
+
+        /**
+            Returns the number of requests that failed with an I/O error, without a response.
+
+            @return the failure count
+        */
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        public long getRetryCount() {
+            return retries.get();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        public String toString() {
+            return endpoint + " " + scope + ": " + latency + " statuses=" + getStatusCounts()
+                + " failures=" + getFailureCount() + " retries=" + getRetryCount()
+                + " sent=" + getBytesSent() + "B received=" + getBytesReceived() + "B";
+        }
+    }
+}
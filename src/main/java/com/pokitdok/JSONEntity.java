@@ -0,0 +1,131 @@
+package com.pokitdok;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import org.apache.http.Consts;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+    A request body that serializes its parameters as UTF-8 JSON straight onto the connection as
+    it is sent, instead of first building the whole document as a {@link String} and then
+    copying it into a byte array.
+
+    <p>
+
+    The length of the body is not known up front, so it is sent with chunked transfer encoding,
+    unless {@link #measure()} was called first. The entity is repeatable: it is serialized again
+    each time it is written, so a request can be re-sent after a token renewal. The parameter
+    map must not be modified until the request has completed.
+*/
+final class JSONEntity extends AbstractHttpEntity {
+    static final ContentType APPLICATION_JSON = ContentType.create("application/json", Consts.UTF_8);
+
+    private final Map<String, Object> params;
+    private final JSONCodec           codec;
+    private long                      length = -1;
+
+    JSONEntity(Map<String, Object> params, JSONCodec codec) {
+        this.params = params;
+        this.codec = codec;
+        setContentType(APPLICATION_JSON.toString());
+        setChunked(true);
+    }
+
+    /**
+        Works out the size of the serialized body without keeping it, by serializing it once
+        into a counter. Afterwards the body is sent with a {@code Content-Length} instead of
+        chunked.
+
+        @return the size in bytes
+    */
+    long measure() {
+        if (length < 0) {
+            Utf8Counter counter = new Utf8Counter();
+            try {
+                codec.encode(params, counter);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            length = counter.count;
+            setChunked(false);
+        }
+        return length;
+    }
+
+    public long getContentLength() {
+        return length;
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /** Serializes the body into memory; only for callers that insist on reading it. */
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, Consts.UTF_8);
+        codec.encode(params, writer);
+        writer.flush();
+    }
+
+    /**
+        Counts the bytes that characters take up in UTF-8, without encoding them. Like the
+        encoder, it counts an unpaired surrogate as the single byte of its replacement.
+    */
+    private static final class Utf8Counter extends Writer {
+        long            count;
+        private boolean highSurrogate;
+
+        public void write(char[] chars, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                count(chars[i]);
+            }
+        }
+
+        public void write(String text, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                count(text.charAt(i));
+            }
+        }
+
+        private void count(char c) {
+            if (highSurrogate) {
+                highSurrogate = false;
+                if (Character.isLowSurrogate(c)) {
+                    count += 4;
+                    return;
+                }
+                count += 1;
+            }
+            if (Character.isHighSurrogate(c)) {
+                highSurrogate = true;
+            }
+            else {
+                count += (c < 0x80 || Character.isLowSurrogate(c)) ? 1 : (c < 0x800) ? 2 : 3;
+            }
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+}
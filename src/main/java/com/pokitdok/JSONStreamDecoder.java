@@ -0,0 +1,160 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+    Decodes JSON response bodies straight from their stream, without first copying them into a
+    {@link String}.
+
+    <p>
+
+    With a {@link DataVisitor}, the decoder builds the response tree event by event and hands
+    each element of the top-level {@code data} array to the visitor instead of keeping it.
+*/
+final class JSONStreamDecoder {
+    private JSONStreamDecoder() {
+    }
+
+    /**
+        Decodes a JSON object from a stream. The stream is read to its end but not closed.
+
+        @param in the response body
+        @param charset the character set of the body
+        @param visitor receives the elements of the top-level {@code data} array, or null to keep
+            them in the returned tree
+        @return the decoded object
+        @throws IOException if the stream could not be read
+        @throws ParseException if the body is not valid JSON
+    */
+    static Map<String, Object> decode(InputStream in, Charset charset, DataVisitor visitor)
+    throws IOException, ParseException {
+        return decode(new InputStreamReader(in, charset), visitor);
+    }
+
+    /**
+        Decodes a JSON object from a reader, which is read to its end but not closed.
+
+        @see #decode(InputStream, Charset, DataVisitor)
+    */
+    static Map<String, Object> decode(Reader reader, DataVisitor visitor) throws IOException, ParseException {
+        if (visitor == null) {
+            return (JSONObject) new JSONParser().parse(reader);
+        }
+
+        TreeBuilder builder = new TreeBuilder(visitor);
+        new JSONParser().parse(reader, builder);
+        return (JSONObject) builder.result;
+    }
+
+    /**
+        Hands the elements of an already decoded response's {@code data} array to a visitor, and
+        empties the array, just as {@link #decode(InputStream, Charset, DataVisitor)} would have.
+
+        @param response the decoded response
+        @param visitor receives the elements of the {@code data} array
+        @return the response
+    */
+    static Map<String, Object> visitData(Map<String, Object> response, DataVisitor visitor) {
+        if (response != null && response.get("data") instanceof List) {
+            List<?> data = (List<?>) response.get("data");
+            response.put("data", new JSONArray());
+            for (Object element : data) {
+                visitor.visit(element);
+            }
+        }
+        return response;
+    }
+
+    /**
+        Builds the same tree as {@link JSONParser#parse(Reader)}, except for the top-level
+        {@code data} array, whose elements go to the visitor.
+    */
+    private static class TreeBuilder implements ContentHandler {
+        private final DataVisitor        visitor;
+        private final LinkedList<Object> containers = new LinkedList<Object>();
+        private final LinkedList<String> keys       = new LinkedList<String>();
+        private JSONArray                data;
+        private Object                   result;
+
+        TreeBuilder(DataVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        public void startJSON() {
+            containers.clear();
+            keys.clear();
+            data = null;
+            result = null;
+        }
+
+        public void endJSON() {
+        }
+
+        public boolean startObject() {
+            containers.push(new JSONObject());
+            return true;
+        }
+
+        public boolean endObject() {
+            add(containers.pop());
+            return true;
+        }
+
+        public boolean startObjectEntry(String key) {
+            keys.push(key);
+            return true;
+        }
+
+        public boolean endObjectEntry() {
+            keys.pop();
+            return true;
+        }
+
+        public boolean startArray() {
+            JSONArray array = new JSONArray();
+            if (containers.size() == 1 && containers.peek() instanceof JSONObject && "data".equals(keys.peek())) {
+                data = array;
+            }
+            containers.push(array);
+            return true;
+        }
+
+        public boolean endArray() {
+            add(containers.pop());
+            return true;
+        }
+
+        public boolean primitive(Object value) {
+            add(value);
+            return true;
+        }
+
+        private void add(Object value) {
+            Object parent = containers.peek();
+            if (parent == null) {
+                result = value;
+            }
+            else if (parent instanceof JSONObject) {
+                ((JSONObject) parent).put(keys.peek(), value);
+            }
+            else if (parent == data) {
+                visitor.visit(value);
+            }
+            else {
+                ((JSONArray) parent).add(value);
+            }
+        }
+    }
+}
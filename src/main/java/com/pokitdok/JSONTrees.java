@@ -0,0 +1,80 @@
+package com.pokitdok;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+    Helpers for decoded JSON trees, as produced by json-simple.
+*/
+final class JSONTrees {
+    private JSONTrees() {
+    }
+
+    /**
+        Returns a deep copy of a decoded JSON object, so that a response held by a cache can be
+        handed to several callers without any of them seeing another's modifications.
+
+        @param object the object to copy, or null
+        @return the copy, or null
+    */
+    static Map<String, Object> copy(Map<String, Object> object) {
+        return (Map<String, Object>) copyValue(object);
+    }
+
+    /**
+        Returns an unmodifiable deep copy of a decoded JSON object, so that a response held by a
+        cache can be shared by several callers as it is. Its maps and lists reject modification.
+
+        @param object the object to copy, or null
+        @return the copy, or null
+    */
+    static Map<String, Object> unmodifiable(Map<String, Object> object) {
+        return (Map<String, Object>) unmodifiableValue(object);
+    }
+
+    private static Object unmodifiableValue(Object value) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>(Math.max(16, map.size() * 4 / 3 + 1));
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), unmodifiableValue(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> copy = new ArrayList<Object>(list.size());
+            for (Object element : list) {
+                copy.add(unmodifiableValue(element));
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            JSONObject copy = new JSONObject();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), copyValue(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            JSONArray copy = new JSONArray();
+            for (Object element : list) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        }
+        /* Strings, numbers, booleans and null are immutable. */
+        return value;
+    }
+}
@@ -0,0 +1,189 @@
+package com.pokitdok;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+    A histogram of durations with a fixed relative precision, in the manner of HdrHistogram.
+
+    <p>
+
+    Durations are recorded in nanoseconds into log-linear buckets: values below 128 are counted
+    exactly, and every power-of-two range above that is split into 64 equal buckets, so any
+    recorded value is known to within 1/64th (about 1.6%) whatever its magnitude, from
+    nanoseconds to days. The whole range fits in a fixed array of a few thousand counters, and
+    recording a value is a handful of arithmetic operations and one atomic increment, without
+    locking or allocation.
+
+    <p>
+
+    Recording is thread-safe. Reading while other threads record gives a view that may be
+    slightly behind; use {@link #snapshot()} to get a consistent copy to compute several
+    statistics from.
+*/
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS) + SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong      count = new AtomicLong();
+    private final AtomicLong      sum = new AtomicLong();
+    private final AtomicLong      max = new AtomicLong();
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+    }
+
+    private LatencyHistogram(LatencyHistogram source) {
+        counts = new AtomicLongArray(BUCKETS);
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = source.counts.get(i);
+            counts.set(i, bucketCount);
+            total += bucketCount;
+        }
+        count.set(total);
+        sum.set(source.sum.get());
+        max.set(source.max.get());
+    }
+
+    /**
+        Records a duration.
+
+        @param nanos the duration in nanoseconds; negative values are recorded as zero
+    */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        while (true) {
+            long currentMax = max.get();
+            if (value <= currentMax || max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+        Returns a copy of the histogram as it is now, unaffected by later recordings.
+
+        @return the copy
+    */
+    public LatencyHistogram snapshot() {
+        return new LatencyHistogram(this);
+    }
+
+    /**
+        Returns the number of recorded durations.
+
+        @return the count
+    */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+        Returns the longest recorded duration.
+
+        @return the maximum in nanoseconds, or zero if nothing was recorded
+    */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+        Returns the mean of the recorded durations.
+
+        @return the mean in nanoseconds, or zero if nothing was recorded
+    */
+    public double getMean() {
+        long total = count.get();
+        return (total == 0) ? 0 : sum.get() / (double) total;
+    }
+
+    /**
+        Returns the duration below or at which the given fraction of the recorded durations
+        fall, to within the precision of the histogram.
+
+        @param percentile the fraction, such as 0.99 for the 99th percentile
+        @return the duration in nanoseconds, or zero if nothing was recorded
+    */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, percentile)) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /** @return the median duration in nanoseconds */
+    public long getP50() {
+        return getValueAtPercentile(0.5);
+    }
+
+    /** @return the 99th percentile duration in nanoseconds */
+    public long getP99() {
+        return getValueAtPercentile(0.99);
+    }
+
+    /** @return the 99.9th percentile duration in nanoseconds */
+    public long getP999() {
+        return getValueAtPercentile(0.999);
+    }
+
+    /**
+        Returns a one-line summary, in milliseconds, such as
+        {@code "count=1200 p50=12.1ms p99=80.4ms p999=152.0ms max=153.2ms"}.
+    */
+    public String toString() {
+        LatencyHistogram copy = snapshot();
+        return "count=" + copy.getCount()
+            + " p50=" + millis(copy.getP50())
+            + " p99=" + millis(copy.getP99())
+            + " p999=" + millis(copy.getP999())
+            + " max=" + millis(copy.getMax());
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+        Values below {@link #LINEAR_LIMIT} have a bucket each. Above, a value whose highest bit
+        is bit {@code n} is shifted right by {@code n - 6}, leaving 64 to 127, and the shift
+        selects the group of 64 buckets.
+    */
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS * shift + (int) (value >>> shift);
+    }
+
+    /** Returns the largest value that falls in a bucket. */
+    static long highestValueOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket - SUB_BUCKETS * shift;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,40 @@
+package com.pokitdok;
+
+import java.util.concurrent.Future;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+    A {@link BasicFuture} that is completed by a callback from a lower layer, and cancels the
+    lower layer's operation when it is cancelled itself.
+*/
+class LinkedFuture<T> extends BasicFuture<T> {
+    private volatile Future<?> upstream;
+
+    LinkedFuture(FutureCallback<T> callback) {
+        super(callback);
+    }
+
+    /**
+        Links the operation whose outcome completes this future, so that cancelling this future
+        cancels it too.
+
+        @param upstream the operation this future depends on
+    */
+    void link(Future<?> upstream) {
+        this.upstream = upstream;
+        if (isCancelled()) {
+            upstream.cancel(true);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        Future<?> current = upstream;
+        if (cancelled && current != null) {
+            current.cancel(mayInterruptIfRunning);
+        }
+        return cancelled;
+    }
+}
@@ -0,0 +1,61 @@
+package com.pokitdok;
+
+import java.io.IOException;
+
+/**
+    Receives measurements of the traffic between a client and the platform, for monitoring.
+
+    <p>
+
+    Register a listener with {@link ConnectorSettings#setMetricsListener(MetricsListener)} to
+    hear about every request an {@link ApacheHTTPConnector} sends and every access token it
+    obtains, and with {@link RetryingConnector#setMetricsListener(MetricsListener)} to hear about
+    retries. {@link InMemoryMetrics} is a ready-made implementation that keeps latency
+    histograms and counters per endpoint and scope.
+
+    <p>
+
+    Listeners are called synchronously on the thread making the request, possibly from many
+    threads at once, so implementations must be thread-safe and quick. Exceptions thrown by a
+    listener propagate to the caller.
+*/
+public interface MetricsListener {
+    /**
+        Called when the platform has answered a request and the response body has been read.
+
+        @param request the request
+        @param status the HTTP status of the response
+        @param duration the time from sending the request to having read the response, in
+            nanoseconds
+        @param bytesSent the size of the request body, or zero if it had none
+        @param bytesReceived the size of the response body as read, after any decompression
+    */
+    void onResponse(PokitDokRequest request, int status, long duration, long bytesSent, long bytesReceived);
+
+    /**
+        Called when a request could not be completed because of an I/O error, or because its
+        response could not be parsed. A parse failure is reported as an {@link IOException}
+        whose cause is the parser's {@code ParseException}.
+
+        @param request the request
+        @param error the error
+        @param duration the time until the error occurred, in nanoseconds
+    */
+    void onFailure(PokitDokRequest request, IOException error, long duration);
+
+    /**
+        Called when a new access token has been requested from the platform.
+
+        @param scope the scope of the token
+        @param duration the time the token request took, in nanoseconds
+    */
+    void onTokenRefresh(String scope, long duration);
+
+    /**
+        Called before a request is sent again by a {@link RetryingConnector}.
+
+        @param request the request
+        @param attempt the number of the attempt about to be made, 2 for the first retry
+    */
+    void onRetry(PokitDokRequest request, int attempt);
+}
@@ -0,0 +1,15 @@
+package com.pokitdok;
+
+/**
+    Thrown by the iterators of {@link PagedResults} when a page of results could not be
+    fetched. Since {@link java.util.Iterator} cannot throw checked exceptions, the underlying
+    {@link java.io.IOException}, {@link org.json.simple.parser.ParseException} or
+    {@link UnauthorizedException} is wrapped and available as the cause.
+*/
+public class PageFetchException extends RuntimeException {
+
+    public PageFetchException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
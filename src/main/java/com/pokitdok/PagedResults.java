@@ -0,0 +1,259 @@
+package com.pokitdok;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.apache.http.Consts;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.json.simple.parser.ParseException;
+
+/**
+    The results of a search endpoint, across all of its pages.
+
+    <p>
+
+    The platform returns long result lists one page at a time, with a {@code next} link in the
+    response's {@code meta} section. Iterating over a {@code PagedResults} walks the elements
+    of every page's {@code data} array in order, fetching pages on demand: the first page is
+    requested on the first call to {@link Iterator#hasNext()}, and as soon as a page arrives the
+    following one is prefetched in the background while the current one is consumed. At most
+    two pages are held in memory at any time, whatever the total number of results.
+
+    <p>
+
+    Every call to {@link #iterator()} starts again from the first page. A consumer that stops
+    before the last page must {@link PageIterator#close() close} its iterator, which cancels the
+    prefetch of the next page: a connector that supports {@link RequestCancellation}, such as
+    the {@link ApacheHTTPConnector}, aborts the request and releases its connection at once.
+    Breaking out of a for-each loop cannot do so: the prefetch then
+    keeps a thread of the shared prefetch pool and, with a pooled connector, a connection busy
+    until the page has arrived, only for it to be discarded. Failures to fetch a page surface
+    from {@code hasNext()} as a {@link PageFetchException}.
+
+    <p>
+
+    <b>Usage example:</b>
+    <pre>
+    {@code
+        for (Map<String, Object> provider : pd.iterateProviders(query)) {
+            System.out.println(provider.get("provider"));
+        }
+
+        // Stopping early
+        PagedResults.PageIterator providers = pd.iterateProviders(query).iterator();
+        try {
+            while (providers.hasNext() && !found(providers.next())) {
+            }
+        }
+        finally {
+            providers.close();
+        }
+    }
+    </pre>
+*/
+public class PagedResults implements Iterable<Map<String, Object>> {
+    /** Fetches a single page of results, abortable through the given handle if it is not null. */
+    interface PageSource {
+        Map<String, Object> fetch(String endpoint, Map<String, Object> params, String scope,
+                                  RequestCancellation cancellation)
+            throws IOException, ParseException, UnauthorizedException;
+    }
+
+    private static final ExecutorService PREFETCHER = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "pokitdok-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final PageSource          source;
+    private final String              endpoint;
+    private final Map<String, Object> params;
+    private final String              scope;
+
+    PagedResults(PageSource source, String endpoint, Map<String, Object> params, String scope) {
+        this.source = source;
+        this.endpoint = endpoint;
+        this.params = params;
+        this.scope = scope;
+    }
+
+    /**
+        Returns an iterator over the results, starting from the first page.
+
+        @return a new iterator
+    */
+    public PageIterator iterator() {
+        return new PageIterator();
+    }
+
+    /**
+        Returns the request for the page following the given one, or null if it is the last.
+        Parameters repeated in the {@code next} link are collected into a list, which is sent
+        as repeated parameters again.
+    */
+    private static PageRequest nextPage(Map<String, Object> page) {
+        Object meta = page.get("meta");
+        Object next = (meta instanceof Map) ? ((Map<?, ?>) meta).get("next") : null;
+        if (!(next instanceof String)) {
+            return null;
+        }
+
+        URI uri;
+        try {
+            uri = new URI((String) next);
+        }
+        catch (URISyntaxException e) {
+            return null;
+        }
+        String root = "/api/" + PokitDok.API_VERSION + "/";
+        int start = uri.getPath().indexOf(root);
+        if (start < 0) {
+            return null;
+        }
+
+        Map<String, Object> nextParams = new HashMap<String, Object>();
+        for (NameValuePair param : URLEncodedUtils.parse(uri, Consts.UTF_8)) {
+            Object previous = nextParams.get(param.getName());
+            if (!nextParams.containsKey(param.getName())) {
+                nextParams.put(param.getName(), param.getValue());
+            }
+            else if (previous instanceof List) {
+                ((List<Object>) previous).add(param.getValue());
+            }
+            else {
+                List<Object> values = new ArrayList<Object>();
+                values.add(previous);
+                values.add(param.getValue());
+                nextParams.put(param.getName(), values);
+            }
+        }
+        return new PageRequest(uri.getPath().substring(start + root.length()), nextParams);
+    }
+
+    private static class PageRequest {
+        final String              endpoint;
+        final Map<String, Object> params;
+
+        PageRequest(String endpoint, Map<String, Object> params) {
+            this.endpoint = endpoint;
+            this.params = params;
+        }
+    }
+
+    /**
+        An iterator over the results of every page. Not thread-safe.
+    */
+    public class PageIterator implements Iterator<Map<String, Object>>, Closeable {
+        private boolean                       started;
+        private Iterator<?>                   current = Collections.emptyList().iterator();
+        private Future<Map<String, Object>>   prefetch;
+        private RequestCancellation           prefetchCancellation;
+
+        PageIterator() {
+        }
+
+        public boolean hasNext() {
+            if (!started) {
+                started = true;
+                accept(fetch(new PageRequest(endpoint, params)));
+            }
+            while (!current.hasNext()) {
+                if (prefetch == null) {
+                    return false;
+                }
+                accept(await(prefetch));
+            }
+            return true;
+        }
+
+        public Map<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (Map<String, Object>) current.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+            Stops the iteration, cancelling the prefetch of the next page if one is in flight.
+            Must be called by consumers that stop before the last page; it does nothing once
+            the iteration has run to the end.
+        */
+        public void close() {
+            started = true;
+            current = Collections.emptyList().iterator();
+            if (prefetch != null) {
+                prefetchCancellation.cancel();
+                prefetch.cancel(true);
+                prefetch = null;
+                prefetchCancellation = null;
+            }
+        }
+
+        /** Makes a page the current one, and starts fetching the page after it. */
+        private void accept(Map<String, Object> page) {
+            Object data = (page == null) ? null : page.get("data");
+            if (data instanceof List) {
+                current = ((List<?>) data).iterator();
+            }
+            else {
+                current = (data == null) ? Collections.emptyList().iterator() : Collections.singleton(data).iterator();
+            }
+
+            final PageRequest next = (page == null) ? null : nextPage(page);
+            final RequestCancellation cancellation = (next == null) ? null : new RequestCancellation();
+            prefetchCancellation = cancellation;
+            prefetch = (next == null) ? null : PREFETCHER.submit(new Callable<Map<String, Object>>() {
+                public Map<String, Object> call() throws Exception {
+                    return source.fetch(next.endpoint, next.params, scope, cancellation);
+                }
+            });
+        }
+
+        private Map<String, Object> fetch(PageRequest request) {
+            try {
+                return source.fetch(request.endpoint, request.params, scope, null);
+            }
+            catch (Exception e) {
+                throw new PageFetchException("Could not fetch " + request.endpoint, e);
+            }
+        }
+
+        private Map<String, Object> await(Future<Map<String, Object>> page) {
+            try {
+                return page.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PageFetchException("Interrupted while waiting for a page of " + endpoint, e);
+            }
+            catch (CancellationException e) {
+                throw new PageFetchException("Fetching the next page of " + endpoint + " was cancelled", e);
+            }
+            catch (ExecutionException e) {
+                throw new PageFetchException("Could not fetch the next page of " + endpoint, e.getCause());
+            }
+        }
+    }
+}
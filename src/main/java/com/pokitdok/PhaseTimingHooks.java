@@ -0,0 +1,160 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+    The HttpClient components an {@link ApacheHTTPConnector} is built with when it has a
+    {@link RequestPhaseListener}, each timing its part of a request into the
+    {@link RequestPhases} of the request running on the current thread.
+
+    <p>
+
+    The blocking client leases, connects and exchanges on the calling thread, so a thread-local
+    is enough to tie the hooks to the request; it is only set while the connector is inside
+    {@code HttpClient.execute}, so token requests and other traffic go unrecorded.
+*/
+final class PhaseTimingHooks {
+    private static final ThreadLocal<RequestPhases> CURRENT = new ThreadLocal<RequestPhases>();
+
+    private PhaseTimingHooks() {
+    }
+
+    static void begin(RequestPhases phases) {
+        CURRENT.set(phases);
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+        Creates an HTTPS socket factory configured from the system properties, like
+        {@link SSLConnectionSocketFactory#getSystemSocketFactory()}, that times TLS handshakes.
+    */
+    static SSLConnectionSocketFactory systemSocketFactory() {
+        return new TimingSSLSocketFactory((SSLSocketFactory) SSLSocketFactory.getDefault(),
+            split(System.getProperty("https.protocols")), split(System.getProperty("https.cipherSuites")),
+            SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+    }
+
+    private static String[] split(String property) {
+        return (property == null || property.trim().length() == 0) ? null : property.trim().split(" *, *");
+    }
+
+    /** Times waiting for a pooled connection, and opening new ones. */
+    static class TimingConnectionManager extends PoolingHttpClientConnectionManager {
+        TimingConnectionManager(Registry<ConnectionSocketFactory> socketFactories, long timeToLive, TimeUnit unit) {
+            super(socketFactories, null, null, null, timeToLive, unit);
+        }
+
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                public HttpClientConnection get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    RequestPhases phases = CURRENT.get();
+                    long start = System.nanoTime();
+                    try {
+                        return request.get(timeout, unit);
+                    }
+                    finally {
+                        if (phases != null) {
+                            phases.addPoolLease(System.nanoTime() - start);
+                        }
+                    }
+                }
+
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+
+        public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout, HttpContext context)
+        throws IOException {
+            RequestPhases phases = CURRENT.get();
+            long start = System.nanoTime();
+            long tlsBefore = (phases == null) ? 0 : phases.getTls();
+            try {
+                super.connect(connection, route, connectTimeout, context);
+            }
+            finally {
+                if (phases != null) {
+                    phases.addConnect(System.nanoTime() - start - (phases.getTls() - tlsBefore));
+                }
+            }
+        }
+    }
+
+    /** Times TLS handshakes, which happen when a connected socket is layered. */
+    static class TimingSSLSocketFactory extends SSLConnectionSocketFactory {
+        TimingSSLSocketFactory(SSLSocketFactory socketFactory, String[] protocols, String[] cipherSuites,
+                               HostnameVerifier hostnameVerifier) {
+            super(socketFactory, protocols, cipherSuites, hostnameVerifier);
+        }
+
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context)
+        throws IOException {
+            RequestPhases phases = CURRENT.get();
+            long start = System.nanoTime();
+            try {
+                return super.createLayeredSocket(socket, target, port, context);
+            }
+            finally {
+                if (phases != null) {
+                    phases.addTls(System.nanoTime() - start);
+                }
+            }
+        }
+    }
+
+    /** Times sending the request and waiting for the response headers. */
+    static class TimingRequestExecutor extends HttpRequestExecutor {
+        protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection connection, HttpContext context)
+        throws IOException, HttpException {
+            RequestPhases phases = CURRENT.get();
+            long start = System.nanoTime();
+            try {
+                return super.doSendRequest(request, connection, context);
+            }
+            finally {
+                if (phases != null) {
+                    phases.addTimeToFirstByte(System.nanoTime() - start);
+                }
+            }
+        }
+
+        protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection connection,
+                                                 HttpContext context)
+        throws IOException, HttpException {
+            RequestPhases phases = CURRENT.get();
+            long start = System.nanoTime();
+            try {
+                return super.doReceiveResponse(request, connection, context);
+            }
+            finally {
+                if (phases != null) {
+                    phases.addTimeToFirstByte(System.nanoTime() - start);
+                }
+            }
+        }
+    }
+}
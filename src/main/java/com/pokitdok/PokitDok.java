@@ -1,7 +1,7 @@
 package com.pokitdok;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 import org.apache.http.client.utils.URIBuilder;
@@ -45,10 +45,19 @@ import org.json.simple.parser.ParseException;
 
     For simplicity, pokitdok-java uses the json-simple library for parsing results.
 
+    <p>
+
+    <b>Thread safety:</b> a client instance, together with the default {@link ApacheHTTPConnector},
+    is safe for concurrent use. A single {@code PokitDok} can (and should) be shared by all
+    worker threads of an application, so that they share one access token and one pool of HTTP
+    connections; size the pool with {@link ConnectorSettings} to match the number of threads.
+    Parameter maps passed to the endpoint methods are never modified, and each call returns a
+    freshly parsed result owned by the caller.
+
     @version 0.9
     @author PokitDok, Inc.
 */
-public class PokitDok {
+public class PokitDok implements Closeable {
     /** The current version of the library. */
     public static final String VERSION = "0.9";
     /** The API version the client uses. Currently this is v4, the only deployed version of
@@ -61,6 +70,8 @@ public class PokitDok {
     /** The default scope for scheduling requests. */
     public static final String USER_SCHEDULE_SCOPE = "user_schedule";
 
+    private static final String API_ROOT = "/api/" + API_VERSION + "/";
+
     /**
         A reference to a {@link PokitDokHTTPConnector} used by this instance. This Connector is used
         to isolate the client implementation from the HTTP library used (in the current implementation,
@@ -87,8 +98,6 @@ public class PokitDok {
         client and JVM versions for logging purposes.
     */
     public static Map<String, String> defaultHeaders;
-    /** An instance of JSONParser re-used for construction efficiency. */
-    private JSONParser parser;
 
     /**
         Gets this client instance's API base, or the default if it is not set.
@@ -155,7 +164,6 @@ public class PokitDok {
         this.clientSecret = clientSecret;
 	    this.apiBase      = apiBase != null ? apiBase : DEFAULT_API_BASE;
         this.connector    = connector != null ? connector : new ApacheHTTPConnector(clientId, clientSecret, getDefaultHeaders(), this.apiBase);
-        this.parser       = new JSONParser();
     }
 
     /**
@@ -163,7 +171,7 @@ public class PokitDok {
 
         @return a {@link Map} of header names and values
     */
-    public static final Map<String, String> getDefaultHeaders() {
+    public static final synchronized Map<String, String> getDefaultHeaders() {
         if (defaultHeaders == null) {
             defaultHeaders = new HashMap<String, String>();
             defaultHeaders.put("User-Agent", "pokitdok-java " + PokitDok.VERSION +
@@ -173,38 +181,164 @@ public class PokitDok {
         return defaultHeaders;
     }
 
+    /**
+        Releases the resources held by this client's {@link PokitDokHTTPConnector}, such as its
+        pooled HTTP connections, if the connector supports it. The client should not be used
+        afterwards.
+
+        @throws IOException if the connector could not be closed cleanly
+    */
+    public void close() throws IOException {
+        if (connector instanceof Closeable) {
+            ((Closeable) connector).close();
+        }
+    }
+
     /**
         Constructs and returns a URL for the specified endpoint. If parameters are passed in,
-        these are attached to the URL with a {@link URIBuilder}.
+        they are attached to the URL as a query string, encoded as {@link URIBuilder} would
+        encode them. Values need not be strings: each is added as its
+        {@link String#valueOf(Object)}, and a {@link java.util.Collection} or array value adds
+        the parameter once for each of its elements.
 
         @param apiBase the base Platform url to use to construct the url
         @param endpoint the PokitDok endpoint to invoke
         @param params the params to attach to the url (usually for GET requests)
         @return the URL for the given endpoint and the list of parameters
+        @see Endpoint
     */
     public static String apiUrl(String apiBase, String endpoint, Map<String, Object> params) {
-      String uri = apiBase + "/api/" + API_VERSION + "/" + endpoint;
+        StringBuilder url = apiRoot(apiBase, endpoint.length(), params);
+        url.append(endpoint);
+        if (params != null) {
+            URLEncoding.appendQuery(url, params);
+        }
+        return url.toString();
+    }
+
+    /**
+        Starts a URL with the API root, in a builder with room for the endpoint and a typical
+        query string, so that building the rest of the URL does not grow it.
+    */
+    static StringBuilder apiRoot(String apiBase, int endpointLength, Map<String, Object> params) {
+        int capacity = apiBase.length() + API_ROOT.length() + endpointLength + (params != null ? 24 * params.size() : 0);
+        return new StringBuilder(capacity).append(apiBase).append(API_ROOT);
+    }
 
-      if (null == params) {
-          return uri;
-      }
+    /**
+        Parses a JSON response body. A new parser is used for every call, since json-simple's
+        parser keeps per-parse state and is not safe for use by several threads.
 
-      if ((params != null) && (!params.isEmpty())) {
-        try {
-          URIBuilder uriWithParams = new URIBuilder(uri);
+        @param results the response body returned by the connector
+        @return the parsed response
+        @throws ParseException if the response couldn't be parsed
+    */
+    private Map<String, Object> parse(String results) throws ParseException {
+        return (JSONObject) new JSONParser().parse(results);
+    }
 
-          for(String key: params.keySet()) {
-            uriWithParams.addParameter(key, (String) params.get(key));
-          }
+    private Map<String, Object> get(String endpoint, Map<String, Object> params)
+    throws IOException, ParseException, UnauthorizedException {
+        return send(PokitDokRequest.GET, endpoint, params, null);
+    }
 
-          uri = uriWithParams.build().toString();
-        }
-        catch (URISyntaxException use) {
-          uri = null;
+    private Map<String, Object> get(String endpoint, Map<String, Object> params, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return send(PokitDokRequest.GET, endpoint, params, scope);
+    }
+
+    private Map<String, Object> get(String endpoint, Map<String, Object> params, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        return send(PokitDokRequest.GET, endpoint, params, null, visitor);
+    }
+
+    private Map<String, Object> post(String endpoint, Map<String, Object> params)
+    throws IOException, ParseException, UnauthorizedException {
+        return send(PokitDokRequest.POST, endpoint, params, null);
+    }
+
+    private Map<String, Object> put(String endpoint, Map<String, Object> params)
+    throws IOException, ParseException, UnauthorizedException {
+        return send(PokitDokRequest.PUT, endpoint, params, null);
+    }
+
+    private Map<String, Object> put(String endpoint, Map<String, Object> params, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return send(PokitDokRequest.PUT, endpoint, params, scope);
+    }
+
+    private Map<String, Object> delete(String endpoint, Map<String, Object> params, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return send(PokitDokRequest.DELETE, endpoint, params, scope);
+    }
+
+    private PagedResults paged(String endpoint, Map<String, Object> params, String scope) {
+        return new PagedResults(new PagedResults.PageSource() {
+            public Map<String, Object> fetch(String endpoint, Map<String, Object> params, String scope,
+                                             RequestCancellation cancellation)
+            throws IOException, ParseException, UnauthorizedException {
+                if (cancellation != null && connector instanceof PokitDokExchangeConnector) {
+                    PokitDokRequest request = new PokitDokRequest(PokitDokRequest.GET, endpoint, params,
+                        defaultHeaders, scope).withCancellation(cancellation);
+                    return ((PokitDokExchangeConnector) connector).execute(request).getBody();
+                }
+                return send(PokitDokRequest.GET, endpoint, params, scope);
+            }
+        }, endpoint, params, scope);
+    }
+
+    /**
+        Sends a request through the connector and returns its decoded response. A
+        {@link PokitDokExchangeConnector} decodes the response itself; for any other connector
+        the response string is parsed here. Either way, the body is parsed once.
+
+        @param method the HTTP method
+        @param endpoint the PokitDok endpoint to invoke
+        @param params the params to send with the request
+        @param scope the scope to authenticate the request with, or null for the default scope
+        @return the decoded response
+        @throws IOException usually implying a connectivity error reaching the platform server
+        @throws ParseException if the platform server's response couldn't be parsed
+        @throws UnauthorizedException if, after 2 tries, the client could not authenticate with the
+            given client ID and client secret
+    */
+    private Map<String, Object> send(String method, String endpoint, Map<String, Object> params, String scope)
+    throws IOException, ParseException, UnauthorizedException {
+        return send(method, endpoint, params, scope, null);
+    }
+
+    /**
+        Sends a request through the connector, handing the elements of the response's
+        {@code data} array to a visitor. A {@link PokitDokExchangeConnector} streams them to the
+        visitor while the response is being decoded; with any other connector, they are visited
+        after the whole response has been parsed.
+    */
+    private Map<String, Object> send(String method, String endpoint, Map<String, Object> params, String scope,
+                                     DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        if (connector instanceof PokitDokExchangeConnector) {
+            PokitDokRequest request = new PokitDokRequest(method, endpoint, params, defaultHeaders, scope);
+            return ((PokitDokExchangeConnector) connector).execute(request, visitor).getBody();
         }
-      }
 
-      return uri;
+        String results;
+        if (PokitDokRequest.GET.equals(method)) {
+            results = (scope == null) ? connector.get(endpoint, params, defaultHeaders)
+                : connector.get(endpoint, params, defaultHeaders, scope);
+        }
+        else if (PokitDokRequest.POST.equals(method)) {
+            results = (scope == null) ? connector.post(endpoint, params, defaultHeaders)
+                : connector.post(endpoint, params, defaultHeaders, scope);
+        }
+        else if (PokitDokRequest.PUT.equals(method)) {
+            results = (scope == null) ? connector.put(endpoint, params, defaultHeaders)
+                : connector.put(endpoint, params, defaultHeaders, scope);
+        }
+        else {
+            results = (scope == null) ? connector.delete(endpoint, params, defaultHeaders)
+                : connector.delete(endpoint, params, defaultHeaders, scope);
+        }
+        return (visitor == null) ? parse(results) : JSONStreamDecoder.visitData(parse(results), visitor);
     }
 
     /**
@@ -219,8 +353,24 @@ public class PokitDok {
     */
     public Map<String, Object> activities(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("activities", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get("activities", params);
+    }
+
+    /**
+        Invokes the activities endpoint, with a HashMap of parameters, handing each activity to a
+        visitor as soon as it has been decoded instead of collecting them all in the result.
+
+        @param params a Map of parameters to include with the request
+        @param visitor receives each element of the response's {@code data} array
+        @throws IOException usually implying a connectivity error reaching the platform server
+        @throws ParseException if the platform server's response couldn't be parsed
+        @throws UnauthorizedException if, after 2 tries, the client could not authenticate with the
+            given client ID and client secret
+        @return a {@link Map} of results, with an empty {@code data} array
+    */
+    public Map<String, Object> activities(Map<String, Object> params, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        return get("activities", params, visitor);
     }
 
     /**
@@ -236,6 +386,17 @@ public class PokitDok {
         return activities(null);
     }
 
+    /**
+        Searches activities, returning every result across all pages. Pages are fetched lazily as the
+        results are iterated, with the next page prefetched in the background.
+
+        @param params a Map of parameters to include with the request
+        @return the results, fetched on demand
+    */
+    public PagedResults iterateActivities(Map<String, Object> params) {
+        return paged("activities", params, null);
+    }
+
     /**
         Invokes the authorizations endpoint.
 
@@ -248,8 +409,7 @@ public class PokitDok {
     */
     public Map<String, Object> authorizations(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.post("authorizations/", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return post("authorizations/", params);
     }
 
     /**
@@ -264,8 +424,7 @@ public class PokitDok {
     */
     public Map<String, Object> cashPrices(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("prices/cash", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get("prices/cash", params);
     }
 
     /**
@@ -280,8 +439,7 @@ public class PokitDok {
     */
     public Map<String, Object> claims(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.post("claims/", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return post("claims/", params);
     }
 
     /**
@@ -296,8 +454,7 @@ public class PokitDok {
     */
     public Map<String, Object> claimsStatus(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.post("claims/status", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return post("claims/status", params);
     }
 
     /**
@@ -312,8 +469,7 @@ public class PokitDok {
     */
     public Map<String, Object> eligibility(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.post("eligibility/", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return post("eligibility/", params);
     }
 
     /**
@@ -328,8 +484,7 @@ public class PokitDok {
     */
     public Map<String, Object> enrollment(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.post("enrollment", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return post("enrollment", params);
     }
 
     /**
@@ -344,8 +499,7 @@ public class PokitDok {
     */
     public Map<String, Object> insurancePrices(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("prices/insurance", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get("prices/insurance", params);
     }
 
     /**
@@ -360,8 +514,7 @@ public class PokitDok {
     */
     public Map<String, Object> payers(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("payers", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get("payers", params);
     }
 
     /**
@@ -387,8 +540,7 @@ public class PokitDok {
         @return a {@link Map} of results
     */
     public Map<String, Object> plans() throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("plans", null, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get("plans", null);
     }
 
     /**
@@ -402,8 +554,7 @@ public class PokitDok {
         @return a {@link Map} of results
     */
     public Map<String, Object> plans(Map<String, Object> params) throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("plans", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get("plans", params);
     }
 
     /**
@@ -418,8 +569,24 @@ public class PokitDok {
     */
     public Map<String, Object> providers(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("providers", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get("providers", params);
+    }
+
+    /**
+        Invokes the providers endpoint, handing each provider to a visitor as soon as it has been
+        decoded instead of collecting them all in the result.
+
+        @param params a Map of parameters to include with the request
+        @param visitor receives each element of the response's {@code data} array
+        @throws IOException usually implying a connectivity error reaching the platform server
+        @throws ParseException if the platform server's response couldn't be parsed
+        @throws UnauthorizedException if, after 2 tries, the client could not authenticate with the
+            given client ID and client secret
+        @return a {@link Map} of results, with an empty {@code data} array
+    */
+    public Map<String, Object> providers(Map<String, Object> params, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        return get("providers", params, visitor);
     }
 
     /**
@@ -435,6 +602,17 @@ public class PokitDok {
         return providers(null);
     }
 
+    /**
+        Searches providers, returning every result across all pages. Pages are fetched lazily as the
+        results are iterated, with the next page prefetched in the background.
+
+        @param params a Map of parameters to include with the request
+        @return the results, fetched on demand
+    */
+    public PagedResults iterateProviders(Map<String, Object> params) {
+        return paged("providers", params, null);
+    }
+
     /**
         Invokes the referrals endpoint.
 
@@ -446,8 +624,7 @@ public class PokitDok {
         @return a {@link Map} of results
     */
     public Map<String, Object> referrals(Map<String, Object> params) throws IOException, ParseException, UnauthorizedException {
-        String results = connector.post("referrals/", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return post("referrals/", params);
     }
 
     /**
@@ -462,19 +639,36 @@ public class PokitDok {
     */
     public Map<String, Object> tradingPartners(Map<String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = "";
+        return tradingPartners(params, null);
+    }
+
+    /**
+        Invokes the trading partners endpoint, handing each trading partner to a visitor as soon
+        as it has been decoded instead of collecting them all in the result.
+
+        @param params a Map of parameters to include with the request
+        @param visitor receives each element of the response's {@code data} array
+        @throws IOException usually implying a connectivity error reaching the platform server
+        @throws ParseException if the platform server's response couldn't be parsed
+        @throws UnauthorizedException if, after 2 tries, the client could not authenticate with the
+            given client ID and client secret
+        @return a {@link Map} of results, with an empty {@code data} array
+    */
+    public Map<String, Object> tradingPartners(Map<String, Object> params, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
         if (params == null) {
-            results = connector.get("tradingpartners/", params, defaultHeaders);
+            return get("tradingpartners/", params, visitor);
         }
         else if (params.containsKey("trading_partner_id")) {
-            String tradingPartnerId = (String) params.remove("trading_partner_id");
+            params = new HashMap<String, Object>(params);
+            Object tradingPartnerId = params.remove("trading_partner_id");
             if (params.isEmpty()) {
                 params = null;
             }
-            results = connector.get("tradingpartners/" + tradingPartnerId, params, defaultHeaders);
+            return get(Endpoint.TRADING_PARTNER.expand(tradingPartnerId), params, visitor);
         }
 
-        return (JSONObject) parser.parse(results);
+        return parse("");
     }
 
     /**
@@ -505,8 +699,7 @@ public class PokitDok {
     */
     public Map<String, Object> appointment(String uuid, Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("appointments/" + uuid, params, defaultHeaders, USER_SCHEDULE_SCOPE);
-        return (JSONObject) parser.parse(results);
+        return get(Endpoint.APPOINTMENT.expand(uuid), params, USER_SCHEDULE_SCOPE);
     }
 
     /**
@@ -521,8 +714,18 @@ public class PokitDok {
     */
     public Map<String, Object> appointments(Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("appointments/", params, defaultHeaders, USER_SCHEDULE_SCOPE);
-        return (JSONObject) parser.parse(results);
+        return get("appointments/", params, USER_SCHEDULE_SCOPE);
+    }
+
+    /**
+        Searches appointments, returning every result across all pages. Pages are fetched lazily as the
+        results are iterated, with the next page prefetched in the background.
+
+        @param params a Map of parameters to include with the request
+        @return the results, fetched on demand
+    */
+    public PagedResults iterateAppointments(Map<String, Object> params) {
+        return paged("appointments/", params, USER_SCHEDULE_SCOPE);
     }
 
     /**
@@ -538,8 +741,7 @@ public class PokitDok {
     */
     public Map<String, Object> appointmentType(String type, Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("appointment_types/" + type, params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get(Endpoint.APPOINTMENT_TYPE.expand(type), params);
     }
 
     /**
@@ -554,8 +756,7 @@ public class PokitDok {
     */
     public Map<String, Object> appointmentTypes(Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("appointment_types/", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get("appointment_types/", params);
     }
 
     /**
@@ -571,8 +772,7 @@ public class PokitDok {
     */
     public Map<String, Object> bookAppointment(String uuid, Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.put("appointments/" + uuid, params, defaultHeaders, USER_SCHEDULE_SCOPE);
-        return (JSONObject) parser.parse(results);
+        return put(Endpoint.APPOINTMENT.expand(uuid), params, USER_SCHEDULE_SCOPE);
     }
 
     /**
@@ -588,8 +788,7 @@ public class PokitDok {
     */
     public Map<String, Object> cancelAppointment(String uuid, Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.delete("appointments/" + uuid, params, defaultHeaders, USER_SCHEDULE_SCOPE);
-        return (JSONObject) parser.parse(results);
+        return delete(Endpoint.APPOINTMENT.expand(uuid), params, USER_SCHEDULE_SCOPE);
     }
 
     /**
@@ -605,8 +804,7 @@ public class PokitDok {
     */
     public Map<String, Object> scheduler(String schedulerId, Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("schedulers/" + schedulerId, params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get(Endpoint.SCHEDULER.expand(schedulerId), params);
     }
 
     /**
@@ -621,8 +819,7 @@ public class PokitDok {
     */
     public Map<String, Object> schedulers(Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("schedulers/", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get("schedulers/", params);
     }
 
     /**
@@ -639,8 +836,7 @@ public class PokitDok {
     */
     public Map<String, Object> updateAppointment(String uuid, Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.put("appointments/" + uuid, params, defaultHeaders, USER_SCHEDULE_SCOPE);
-        return (JSONObject) parser.parse(results);
+        return put(Endpoint.APPOINTMENT.expand(uuid), params, USER_SCHEDULE_SCOPE);
     }
 
     /* Medical procedure code endpoints */
@@ -657,8 +853,7 @@ public class PokitDok {
     */
     public Map<String, Object> mpc(Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = connector.get("mpc/", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get("mpc/", params);
     }
 
     /**
@@ -674,8 +869,7 @@ public class PokitDok {
     */
     public Map<String, Object> mpc(String code, Map <String, Object> params)
     throws IOException, ParseException, UnauthorizedException {
-        String results = results = connector.get("mpc/" + code, params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get(Endpoint.MPC.expand(code), params);
     }
 
     /* Identity Endpoints */
@@ -692,8 +886,7 @@ public class PokitDok {
     */
     public Map<String, Object> createIdentity(Map <String, Object> params)
             throws IOException, ParseException, UnauthorizedException {
-        String results = connector.post("identity/", params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return post("identity/", params);
     }
 
     /**
@@ -709,8 +902,7 @@ public class PokitDok {
     */
     public Map<String, Object> updateIdentity(String uuid, Map <String, Object> params)
             throws IOException, ParseException, UnauthorizedException {
-        String results = connector.put("identity/" + uuid, params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return put(Endpoint.IDENTITY.expand(uuid), params);
     }
 
     /**
@@ -745,6 +937,17 @@ public class PokitDok {
         return identity(null, params);
     }
 
+    /**
+        Searches identity resources, returning every result across all pages. Pages are fetched lazily as the
+        results are iterated, with the next page prefetched in the background.
+
+        @param params a Map of parameters to include with the request
+        @return the results, fetched on demand
+    */
+    public PagedResults iterateIdentities(Map<String, Object> params) {
+        return paged("identity", params, null);
+    }
+
     /**
         Invokes the identity endpoint to search for an identity resource.
 
@@ -758,12 +961,9 @@ public class PokitDok {
     */
     public Map<String, Object> identity(String uuid, Map<String, Object> params)
             throws IOException, ParseException, UnauthorizedException {
-        String urlString = "identity";
-        if (null != uuid && !uuid.isEmpty()) {
-            urlString += "/" + uuid;
-        }
-        String results = connector.get(urlString, params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        String urlString = (null != uuid && !uuid.isEmpty())
+            ? Endpoint.IDENTITY.expand(uuid) : "identity";
+        return get(urlString, params);
     }
 
     /**
@@ -779,8 +979,7 @@ public class PokitDok {
     public Map<String, Object> pharmacyPlans(Map<String, Object> params)
             throws IOException, ParseException, UnauthorizedException {
         String urlString = "pharmacy/plans";
-        String results = connector.get(urlString, params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get(urlString, params);
     }
 
     /**
@@ -796,8 +995,7 @@ public class PokitDok {
     public Map<String, Object> pharmacyFormulary(Map<String, Object> params)
             throws IOException, ParseException, UnauthorizedException {
         String urlString = "pharmacy/formulary";
-        String results = connector.get(urlString, params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        return get(urlString, params);
     }
 
     /**
@@ -813,12 +1011,9 @@ public class PokitDok {
     */
     public Map<String, Object> pharmacyNetwork(String npi, Map<String, Object> params)
             throws IOException, ParseException, UnauthorizedException {
-        String urlString = "pharmacy/network";
-        if (null != npi && !npi.isEmpty()) {
-            urlString += "/" + npi;
-        }
-        String results = connector.get(urlString, params, defaultHeaders);
-        return (JSONObject) parser.parse(results);
+        String urlString = (null != npi && !npi.isEmpty())
+            ? Endpoint.PHARMACY_NETWORK.expand(npi) : "pharmacy/network";
+        return get(urlString, params);
     }
 
     /**
@@ -836,4 +1031,15 @@ public class PokitDok {
             throws IOException, ParseException, UnauthorizedException {
 	    return pharmacyNetwork(null, params);
     }
+
+    /**
+        Searches the pharmacy network, returning every result across all pages. Pages are fetched lazily as the
+        results are iterated, with the next page prefetched in the background.
+
+        @param params a Map of parameters to include with the request
+        @return the results, fetched on demand
+    */
+    public PagedResults iteratePharmacyNetwork(Map<String, Object> params) {
+        return paged("pharmacy/network", params, null);
+    }
 }
@@ -0,0 +1,520 @@
+package com.pokitdok;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import org.apache.http.concurrent.FutureCallback;
+import org.json.simple.parser.ParseException;
+
+/**
+    Asynchronous counterpart of {@link PokitDok}.
+
+    <p>
+
+    Every endpoint method returns immediately with a {@link Future} of the parsed results, and
+    notifies an optional {@link FutureCallback} once they are available. Requests are carried by
+    a non-blocking {@link PokitDokAsyncHTTPConnector}, so no thread is tied up while a request
+    is in flight: a handful of I/O threads can keep thousands of payer requests outstanding,
+    limited only by the connection pool configured through {@link ConnectorSettings}.
+
+    <p>
+
+    Callbacks are invoked on the connector's I/O threads and must not block; hand long-running
+    work off to an executor of your own. Cancelling a returned future aborts its request.
+
+    <p>
+
+    <b>Usage example:</b>
+    <pre>
+    {@code
+        PokitDokAsync pd = new PokitDokAsync("client_id", "client_secret");
+
+        pd.eligibility(query, new FutureCallback<Map<String, Object>>() {
+            public void completed(Map<String, Object> results) {
+                System.out.println(results.get("data"));
+            }
+            public void failed(Exception e) {
+                e.printStackTrace();
+            }
+            public void cancelled() {
+            }
+        });
+    }
+    </pre>
+
+    Instances are thread-safe, and should be shared and closed when no longer needed.
+*/
+public class PokitDokAsync implements Closeable {
+    /** The non-blocking connector used by this instance. */
+    private final PokitDokAsyncHTTPConnector connector;
+    /** Decodes response bodies: the connector's codec, or json-simple for other connectors. */
+    private final JSONCodec                  codec;
+
+    /**
+        The ordinary constructor for asynchronous client instances.
+
+        @param clientId a PokitDok client ID
+        @param clientSecret a PokitDok client secret
+        @throws IOException if the I/O reactor could not be started
+    */
+    public PokitDokAsync(String clientId, String clientSecret) throws IOException {
+        this(clientId, clientSecret, PokitDok.DEFAULT_API_BASE);
+    }
+
+    /**
+        Constructor which accepts an API base URL to override the default provided in
+        {@link PokitDok#DEFAULT_API_BASE}.
+
+        @param clientId a PokitDok client ID
+        @param clientSecret a PokitDok client secret
+        @param apiBase a new base URL to connect to for API calls
+        @throws IOException if the I/O reactor could not be started
+    */
+    public PokitDokAsync(String clientId, String clientSecret, String apiBase) throws IOException {
+        this(new AsyncApacheHTTPConnector(clientId, clientSecret, PokitDok.getDefaultHeaders(), apiBase));
+    }
+
+    /**
+        Constructor which accepts a replacement {@link PokitDokAsyncHTTPConnector}. Responses are
+        decoded with the {@link JSONCodec} of an {@link AsyncApacheHTTPConnector}'s settings, and
+        with a {@link SimpleJSONCodec} for any other connector.
+
+        @param connector the non-blocking connector to send requests through
+    */
+    public PokitDokAsync(PokitDokAsyncHTTPConnector connector) {
+        this.connector = connector;
+        this.codec = (connector instanceof AsyncApacheHTTPConnector)
+            ? ((AsyncApacheHTTPConnector) connector).getJSONCodec() : new SimpleJSONCodec();
+    }
+
+    /**
+        Releases the resources held by this client's connector, if it supports it. Requests
+        still in flight are aborted.
+
+        @throws IOException if the connector could not be closed cleanly
+    */
+    public void close() throws IOException {
+        if (connector instanceof Closeable) {
+            ((Closeable) connector).close();
+        }
+    }
+
+    /**
+        Invokes the activities endpoint.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> activities(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("activities", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the authorizations endpoint.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> authorizations(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return post("authorizations/", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Queries the cash prices index.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> cashPrices(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("prices/cash", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Submits a claim.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> claims(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return post("claims/", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the claims status endpoint.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> claimsStatus(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return post("claims/status", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Performs an eligibility check.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> eligibility(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return post("eligibility/", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the enrollment endpoint.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> enrollment(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return post("enrollment", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Searches the insurance prices index.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> insurancePrices(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("prices/insurance", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the payers endpoint.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> payers(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("payers", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the plans endpoint.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> plans(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("plans", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the providers endpoint.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> providers(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("providers", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the referrals endpoint.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> referrals(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return post("referrals/", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the trading partners endpoint. If the parameters contain a {@code trading_partner_id},
+        that trading partner is looked up directly.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> tradingPartners(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        String url = "tradingpartners/";
+        if (params != null && params.containsKey("trading_partner_id")) {
+            params = new HashMap<String, Object>(params);
+            url = Endpoint.TRADING_PARTNER.expand(params.remove("trading_partner_id"));
+            if (params.isEmpty()) {
+                params = null;
+            }
+        }
+        return get(url, params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /* Scheduling endpoints */
+
+    /**
+        Queries for information about a single appointment.
+
+        @param uuid the uuid of the appointment to search for
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> appointment(String uuid, Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get(Endpoint.APPOINTMENT.expand(uuid), params, PokitDok.USER_SCHEDULE_SCOPE, callback);
+    }
+
+    /**
+        Queries for appointments.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> appointments(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("appointments/", params, PokitDok.USER_SCHEDULE_SCOPE, callback);
+    }
+
+    /**
+        Queries for information about a single appointment type.
+
+        @param type the specified appointment type
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> appointmentType(String type, Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get(Endpoint.APPOINTMENT_TYPE.expand(type), params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Lists the available appointment types.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> appointmentTypes(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("appointment_types/", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Books a new appointment.
+
+        @param uuid the uuid of the open appointment slot to book
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> bookAppointment(String uuid, Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return put(Endpoint.APPOINTMENT.expand(uuid), params, PokitDok.USER_SCHEDULE_SCOPE, callback);
+    }
+
+    /**
+        Cancels an appointment.
+
+        @param uuid the uuid of the appointment to cancel
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> cancelAppointment(String uuid, Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return delete(Endpoint.APPOINTMENT.expand(uuid), params, PokitDok.USER_SCHEDULE_SCOPE, callback);
+    }
+
+    /**
+        Invokes the schedulers endpoint to return information about a specified scheduler.
+
+        @param schedulerId the scheduler to search for
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> scheduler(String schedulerId, Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get(Endpoint.SCHEDULER.expand(schedulerId), params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the schedulers endpoint to list the available schedulers.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> schedulers(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("schedulers/", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the appointments endpoint to update an existing appointment.
+
+        @param uuid the uuid of the appointment to update
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> updateAppointment(String uuid, Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return put(Endpoint.APPOINTMENT.expand(uuid), params, PokitDok.USER_SCHEDULE_SCOPE, callback);
+    }
+
+    /* Medical procedure code endpoints */
+
+    /**
+        Invokes the medical procedure code endpoint to search for MPCs.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> mpc(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("mpc/", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the medical procedure code endpoint to search for a given MPC by code.
+
+        @param code the MPC to search for
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> mpc(String code, Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get(Endpoint.MPC.expand(code), params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /* Identity Endpoints */
+
+    /**
+        Invokes the identity endpoint to create an identity resource.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> createIdentity(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return post("identity/", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the identity endpoint to update an identity resource.
+
+        @param uuid the uuid of the identity to update
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> updateIdentity(String uuid, Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return put(Endpoint.IDENTITY.expand(uuid), params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the identity endpoint to search for an identity resource.
+
+        @param uuid the UUID of the identity resource to search for, or null to search by parameters
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> identity(String uuid, Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        String urlString = (null != uuid && !uuid.isEmpty())
+            ? Endpoint.IDENTITY.expand(uuid) : "identity";
+        return get(urlString, params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /* Pharmacy endpoints */
+
+    /**
+        Invokes the pharmacy plans endpoint.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> pharmacyPlans(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("pharmacy/plans", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the pharmacy formulary endpoint.
+
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> pharmacyFormulary(Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        return get("pharmacy/formulary", params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    /**
+        Invokes the pharmacy network endpoint.
+
+        @param npi the NPI of a pharmacy to check in-network status, or null
+        @param params a Map of parameters to include with the request
+        @param callback notified once the results have been parsed; may be null
+        @return a {@link Future} of the results
+    */
+    public Future<Map<String, Object>> pharmacyNetwork(String npi, Map<String, Object> params, FutureCallback<Map<String, Object>> callback) {
+        String urlString = (null != npi && !npi.isEmpty())
+            ? Endpoint.PHARMACY_NETWORK.expand(npi) : "pharmacy/network";
+        return get(urlString, params, PokitDok.DEFAULT_SCOPE, callback);
+    }
+
+    private Future<Map<String, Object>> get(String url, Map<String, Object> params, String scope, FutureCallback<Map<String, Object>> callback) {
+        LinkedFuture<Map<String, Object>> result = new LinkedFuture<Map<String, Object>>(callback);
+        result.link(connector.get(url, params, PokitDok.defaultHeaders, scope, new ParsingCallback(result, codec)));
+        return result;
+    }
+
+    private Future<Map<String, Object>> post(String url, Map<String, Object> params, String scope, FutureCallback<Map<String, Object>> callback) {
+        LinkedFuture<Map<String, Object>> result = new LinkedFuture<Map<String, Object>>(callback);
+        result.link(connector.post(url, params, PokitDok.defaultHeaders, scope, new ParsingCallback(result, codec)));
+        return result;
+    }
+
+    private Future<Map<String, Object>> put(String url, Map<String, Object> params, String scope, FutureCallback<Map<String, Object>> callback) {
+        LinkedFuture<Map<String, Object>> result = new LinkedFuture<Map<String, Object>>(callback);
+        result.link(connector.put(url, params, PokitDok.defaultHeaders, scope, new ParsingCallback(result, codec)));
+        return result;
+    }
+
+    private Future<Map<String, Object>> delete(String url, Map<String, Object> params, String scope, FutureCallback<Map<String, Object>> callback) {
+        LinkedFuture<Map<String, Object>> result = new LinkedFuture<Map<String, Object>>(callback);
+        result.link(connector.delete(url, params, PokitDok.defaultHeaders, scope, new ParsingCallback(result, codec)));
+        return result;
+    }
+
+    /** Decodes a raw response body and completes the caller's future with it. */
+    private static class ParsingCallback implements FutureCallback<String> {
+        private final LinkedFuture<Map<String, Object>> result;
+        private final JSONCodec                         codec;
+
+        ParsingCallback(LinkedFuture<Map<String, Object>> result, JSONCodec codec) {
+            this.result = result;
+            this.codec = codec;
+        }
+
+        public void completed(String body) {
+            try {
+                result.completed(codec.decode(new StringReader(body), null));
+            }
+            catch (IOException e) {
+                result.failed(e);
+            }
+            catch (ParseException e) {
+                result.failed(e);
+            }
+        }
+
+        public void failed(Exception e) {
+            result.failed(e);
+        }
+
+        public void cancelled() {
+            result.cancel();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.pokitdok;
+
+import java.util.Map;
+import java.util.concurrent.Future;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+    The non-blocking counterpart of {@link PokitDokHTTPConnector}. Every call returns immediately
+    with a {@link Future} of the raw response body, and notifies the optional callback once the
+    response has arrived. Cancelling the future aborts the underlying request.
+*/
+public interface PokitDokAsyncHTTPConnector {
+    public Future<String> get(String url, Map<String, Object> params, Map<String, String> headers, String scope,
+                              FutureCallback<String> callback);
+
+    public Future<String> post(String url, Map<String, Object> params, Map<String, String> headers, String scope,
+                               FutureCallback<String> callback);
+
+    public Future<String> put(String url, Map<String, Object> params, Map<String, String> headers, String scope,
+                              FutureCallback<String> callback);
+
+    public Future<String> delete(String url, Map<String, Object> params, Map<String, String> headers, String scope,
+                                 FutureCallback<String> callback);
+}
@@ -0,0 +1,50 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import org.json.simple.parser.ParseException;
+
+/**
+    A {@link PokitDokHTTPConnector} that decodes responses itself.
+
+    <p>
+
+    The string-returning methods of {@link PokitDokHTTPConnector} leave decoding to the caller.
+    A connector implementing this interface instead returns the HTTP status, the headers and
+    the decoded body of a response in a {@link PokitDokResponse}, so a response body is read
+    and parsed exactly once. {@link PokitDok} uses {@link #execute(PokitDokRequest)} whenever
+    its connector implements this interface.
+*/
+public interface PokitDokExchangeConnector extends PokitDokHTTPConnector {
+    /**
+        Sends a request to the platform and decodes the response.
+
+        <p>
+
+        A 401 response is retried once with a freshly requested access token; only responses
+        with other status codes are returned.
+
+        @param request the request to send
+        @return the response, with its body decoded
+        @throws IOException usually implying a connectivity error reaching the platform server
+        @throws ParseException if the platform server's response couldn't be parsed
+        @throws UnauthorizedException if, after 2 tries, the client could not authenticate with the
+            given client ID and client secret
+    */
+    public PokitDokResponse execute(PokitDokRequest request) throws IOException, ParseException, UnauthorizedException;
+
+    /**
+        Sends a request to the platform and decodes the response, handing each element of its
+        {@code data} array to a visitor as soon as it has been decoded. The returned body holds
+        every other field of the response, with {@code data} left empty.
+
+        @param request the request to send
+        @param visitor receives the elements of the {@code data} array
+        @return the response, with its body decoded
+        @throws IOException usually implying a connectivity error reaching the platform server
+        @throws ParseException if the platform server's response couldn't be parsed
+        @throws UnauthorizedException if, after 2 tries, the client could not authenticate with the
+            given client ID and client secret
+    */
+    public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor)
+        throws IOException, ParseException, UnauthorizedException;
+}
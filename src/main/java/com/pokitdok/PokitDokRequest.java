@@ -0,0 +1,132 @@
+package com.pokitdok;
+
+import java.util.Map;
+
+/**
+    A single call to a PokitDok API endpoint, as handed to a {@link PokitDokExchangeConnector}.
+
+    <p>
+
+    Instances are immutable, apart from the parameter and header maps, which are held by
+    reference and must not be modified while the request is in use.
+*/
+public class PokitDokRequest {
+    public static final String GET    = "GET";
+    public static final String POST   = "POST";
+    public static final String PUT    = "PUT";
+    public static final String DELETE = "DELETE";
+
+    private final String              method;
+    private final String              endpoint;
+    private final Map<String, Object> params;
+    private final Map<String, String> headers;
+    private final String              scope;
+    private final RequestCancellation cancellation;
+
+    /**
+        Creates a request.
+
+        @param method the HTTP method, one of {@link #GET}, {@link #POST}, {@link #PUT} or {@link #DELETE}
+        @param endpoint the endpoint path, relative to the API version root (e.g. "providers")
+        @param params the request parameters, sent in the query string for GET and DELETE requests
+            and as a JSON body otherwise; may be null
+        @param headers additional HTTP headers to send; may be null
+        @param scope the OAuth scope to authenticate the request with
+    */
+    public PokitDokRequest(String method, String endpoint, Map<String, Object> params, Map<String, String> headers,
+                           String scope) {
+        this(method, endpoint, params, headers, scope, null);
+    }
+
+    private PokitDokRequest(String method, String endpoint, Map<String, Object> params, Map<String, String> headers,
+                            String scope, RequestCancellation cancellation) {
+        this.method = method;
+        this.endpoint = endpoint;
+        this.params = params;
+        this.headers = headers;
+        this.scope = (scope == null) ? PokitDok.DEFAULT_SCOPE : scope;
+        this.cancellation = cancellation;
+    }
+
+    /**
+        Returns a copy of this request that can be aborted through the given handle while a
+        connector is sending it.
+
+        @param cancellation the handle to abort the request with
+        @return the copy
+    */
+    public PokitDokRequest withCancellation(RequestCancellation cancellation) {
+        return new PokitDokRequest(method, endpoint, params, headers, scope, cancellation);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public Map<String, Object> getParams() {
+        return params;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+        Returns the handle through which the request may be aborted.
+
+        @return the handle, or null if the request cannot be aborted
+    */
+    public RequestCancellation getCancellation() {
+        return cancellation;
+    }
+
+    /**
+        Returns whether the request carries a JSON body rather than query string parameters.
+
+        @return true for POST and PUT requests
+    */
+    public boolean hasBody() {
+        return POST.equals(method) || PUT.equals(method);
+    }
+
+    /**
+        Returns the endpoint an endpoint path belongs to for monitoring and circuit breaking: the
+        path without slashes at either end or segments containing digits, such as activity IDs
+        or procedure codes, so that {@code mpc/99213} and {@code mpc/99214} both give
+        {@code mpc}.
+    */
+    static String endpointGroup(String endpoint) {
+        StringBuilder group = new StringBuilder(endpoint.length());
+        for (String segment : endpoint.split("/")) {
+            if (segment.length() == 0 || containsDigit(segment)) {
+                continue;
+            }
+            if (group.length() > 0) {
+                group.append('/');
+            }
+            group.append(segment);
+        }
+        return group.toString();
+    }
+
+    private static boolean containsDigit(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            if (Character.isDigit(segment.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String toString() {
+        return method + " " + endpoint;
+    }
+}
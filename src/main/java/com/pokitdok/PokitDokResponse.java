@@ -0,0 +1,98 @@
+package com.pokitdok;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+    The outcome of a {@link PokitDokRequest}: the HTTP status, the response headers and the
+    response body, decoded once by the connector.
+*/
+public class PokitDokResponse {
+    private final int                 status;
+    private final Map<String, String> headers;
+    private final Map<String, Object> body;
+
+    /**
+        Creates a response.
+
+        @param status the HTTP status code
+        @param headers the response headers; names are matched case-insensitively
+        @param body the decoded JSON body, or null if the response had none
+    */
+    public PokitDokResponse(int status, Map<String, String> headers, Map<String, Object> body) {
+        TreeMap<String, String> copy = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) {
+            copy.putAll(headers);
+        }
+        this.status = status;
+        this.headers = Collections.unmodifiableMap(copy);
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+        Returns the response headers. Lookups are case-insensitive.
+
+        @return an unmodifiable map of header names to values
+    */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+        Returns the value of a response header.
+
+        @param name the header name, in any case
+        @return the header value, or null if the response did not carry the header
+    */
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    /**
+        Returns the decoded JSON body of the response.
+
+        @return the body, or null if the response had none
+    */
+    public Map<String, Object> getBody() {
+        return body;
+    }
+
+    /**
+        Returns the delay requested by the {@code Retry-After} header, given either in seconds or
+        as an HTTP date.
+
+        @return the delay in nanoseconds, or zero if there is none
+    */
+    long getRetryAfter() {
+        String header = headers.get("Retry-After");
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(header.trim())));
+        }
+        catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(header.trim());
+            return (date == null) ? 0
+                : TimeUnit.MILLISECONDS.toNanos(Math.max(0, date.getTime() - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+        Returns a copy of this response with a deep copy of its body, for handing one response
+        to several callers.
+
+        @return the copy
+    */
+    PokitDokResponse copy() {
+        return new PokitDokResponse(status, headers, JSONTrees.copy(body));
+    }
+}
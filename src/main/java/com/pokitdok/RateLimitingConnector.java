@@ -0,0 +1,270 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.json.simple.parser.ParseException;
+
+/**
+    A connector that paces outgoing requests with token buckets, and slows down when the
+    platform starts throttling.
+
+    <p>
+
+    Limits are configured per endpoint, matched as a path prefix, and optionally per scope.
+    Each endpoint and scope gets its own bucket, refilled at the configured rate and holding at
+    most {@code burst} permits; a request that finds its bucket empty waits until a permit
+    becomes available. Endpoints without a configured limit are not paced.
+
+    <p>
+
+    When the platform answers 429 Too Many Requests, the bucket's rate is halved (down to a
+    floor of {@link #MIN_RATE_FRACTION} of the configured rate), and if the response carries a
+    {@code Retry-After} header, no further request is let through before it has passed. The rate
+    then climbs back towards the configured limit by {@link #RAMP_UP_PER_SECOND} of it per
+    second. Throttled responses are still returned to the caller; put a {@link RetryingConnector}
+    in front of this one to retry them at the reduced pace.
+
+    <p>
+
+    No lock is held while a request waits for a permit or is in flight. Instances are
+    thread-safe.
+*/
+public class RateLimitingConnector extends ForwardingConnector {
+    /** Fraction of the configured rate below which the adaptive rate never falls. */
+    public static final double MIN_RATE_FRACTION = 0.05;
+    /** Fraction of the configured rate regained per second after throttling. */
+    public static final double RAMP_UP_PER_SECOND = 0.1;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final EndpointMap<Limit>                        limits = new EndpointMap<Limit>();
+    private final ConcurrentMap<String, EndpointMap<Limit>> scopedLimits =
+        new ConcurrentHashMap<String, EndpointMap<Limit>>();
+    private final ConcurrentMap<String, Bucket>             buckets = new ConcurrentHashMap<String, Bucket>();
+    private final AtomicLong                                delayed = new AtomicLong();
+    private final AtomicLong                                throttled = new AtomicLong();
+
+    /**
+        Creates a rate limiter in front of the given connector, with no limits configured.
+
+        @param delegate the connector to send requests through
+    */
+    public RateLimitingConnector(PokitDokHTTPConnector delegate) {
+        super(delegate);
+    }
+
+    /**
+        Limits the rate of requests to an endpoint, separately for each scope.
+
+        @param endpoint the endpoint path prefix, such as {@code "eligibility/"}
+        @param permitsPerSecond the sustained number of requests per second
+        @param burst the number of requests that may be sent at once after a quiet period
+    */
+    public void setRateLimit(String endpoint, double permitsPerSecond, int burst) {
+        limits.put(endpoint, new Limit(permitsPerSecond, burst));
+        buckets.clear();
+    }
+
+    /**
+        Limits the rate of requests to an endpoint made with the given scope, overriding any
+        limit set for all scopes.
+
+        @param endpoint the endpoint path prefix, such as {@code "appointments/"}
+        @param scope the scope the limit applies to
+        @param permitsPerSecond the sustained number of requests per second
+        @param burst the number of requests that may be sent at once after a quiet period
+    */
+    public void setRateLimit(String endpoint, String scope, double permitsPerSecond, int burst) {
+        EndpointMap<Limit> scoped = new EndpointMap<Limit>();
+        EndpointMap<Limit> existing = scopedLimits.putIfAbsent(scope, scoped);
+        (existing != null ? existing : scoped).put(endpoint, new Limit(permitsPerSecond, burst));
+        buckets.clear();
+    }
+
+    public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        Bucket bucket = bucketFor(request);
+        if (bucket == null) {
+            return super.execute(request, visitor);
+        }
+
+        long wait = bucket.reserve(System.nanoTime());
+        if (wait > 0) {
+            delayed.incrementAndGet();
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a rate limit permit");
+            }
+        }
+
+        PokitDokResponse response = super.execute(request, visitor);
+        if (response.getStatus() == TOO_MANY_REQUESTS) {
+            throttled.incrementAndGet();
+            bucket.throttle(System.nanoTime(), response.getRetryAfter());
+        }
+        return response;
+    }
+
+    /**
+        Returns the current, possibly reduced, rate of the bucket for an endpoint and scope.
+
+        @param endpoint the endpoint path of a request
+        @param scope the scope of the request
+        @return the current number of permits per second, or zero if the endpoint is not limited
+    */
+    public double getCurrentRate(String endpoint, String scope) {
+        Bucket bucket = bucketFor(new PokitDokRequest(PokitDokRequest.GET, endpoint, null, null, scope));
+        return (bucket == null) ? 0 : bucket.currentRate(System.nanoTime());
+    }
+
+    /**
+        Returns the number of requests that had to wait for a permit.
+
+        @return the delayed request count
+    */
+    public long getDelayedCount() {
+        return delayed.get();
+    }
+
+    /**
+        Returns the number of 429 Too Many Requests responses received.
+
+        @return the throttled response count
+    */
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    private Bucket bucketFor(PokitDokRequest request) {
+        String endpoint = request.getEndpoint();
+        String scope = request.getScope();
+
+        String key = null;
+        Limit limit = null;
+        EndpointMap<Limit> scoped = scopedLimits.get(scope);
+        String prefix = (scoped == null) ? null : scoped.match(endpoint);
+        if (prefix != null) {
+            key = "scoped " + scope + " " + prefix;
+            limit = scoped.get(endpoint);
+        }
+        else {
+            prefix = limits.match(endpoint);
+            if (prefix == null) {
+                return null;
+            }
+            key = scope + " " + prefix;
+            limit = limits.get(endpoint);
+        }
+        if (limit == null) {
+            return null;
+        }
+
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            Bucket created = new Bucket(limit, System.nanoTime());
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    private static class Limit {
+        final double permitsPerSecond;
+        final int    burst;
+
+        Limit(double permitsPerSecond, int burst) {
+            if (permitsPerSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+            }
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+    }
+
+    /**
+        A token bucket whose rate adapts to throttling. Permits may go negative: each request
+        reserves one, and waits until the debt it leaves behind has been refilled, which queues
+        concurrent requests fairly without holding the lock while they wait. A Retry-After
+        stops the refill until it has passed, so that the requests queued behind it leave at the
+        reduced rate from then on rather than all at once.
+    */
+    private static class Bucket {
+        private final Lock   lock = new ReentrantLock();
+        private final Limit  limit;
+        private double       rate;
+        private double       permits;
+        private long         refilledAt;
+        private long         blockedUntil;
+
+        Bucket(Limit limit, long now) {
+            this.limit = limit;
+            this.rate = limit.permitsPerSecond;
+            this.permits = limit.burst;
+            this.refilledAt = now;
+            this.blockedUntil = now;
+        }
+
+        /** Reserves a permit, returning how many nanoseconds to wait before using it. */
+        long reserve(long now) {
+            lock.lock();
+            try {
+                refill(now);
+                permits -= 1;
+                long wait = (permits >= 0) ? 0 : (long) (-permits / rate * TimeUnit.SECONDS.toNanos(1));
+                return Math.max(0, blockedUntil - now) + wait;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        void throttle(long now, long retryAfter) {
+            lock.lock();
+            try {
+                refill(now);
+                rate = Math.max(limit.permitsPerSecond * MIN_RATE_FRACTION, rate / 2);
+                permits = Math.min(permits, 0);
+                if (now + retryAfter - blockedUntil > 0) {
+                    blockedUntil = now + retryAfter;
+                }
+                if (blockedUntil - refilledAt > 0) {
+                    refilledAt = blockedUntil;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        double currentRate(long now) {
+            lock.lock();
+            try {
+                refill(now);
+                return rate;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private void refill(long now) {
+            double elapsed = (now - refilledAt) / (double) TimeUnit.SECONDS.toNanos(1);
+            if (elapsed <= 0) {
+                return;
+            }
+            permits = Math.min(limit.burst, permits + elapsed * rate);
+            rate = Math.min(limit.permitsPerSecond, rate + elapsed * limit.permitsPerSecond * RAMP_UP_PER_SECOND);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.pokitdok;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.http.concurrent.Cancellable;
+
+/**
+    A handle through which whoever issued a {@link PokitDokRequest} can abort it while a
+    connector is sending it, such as a {@link HedgingConnector} giving up on the slower of two
+    requests. Attach it with {@link PokitDokRequest#withCancellation(RequestCancellation)}.
+
+    <p>
+
+    A connector that can abort what it is waiting on registers it with
+    {@link #setCancellable(Cancellable)}. The {@link ApacheHTTPConnector} registers its HTTP
+    request, so that aborting closes the connection the request holds, instead of leaving it
+    leased from the pool until the response arrives or the socket times out; interrupting the
+    sending thread alone does not, since a blocking socket read ignores interrupts. Connectors
+    that register nothing simply run the request to completion.
+
+    <p>
+
+    Cancelling before anything is registered aborts whatever is registered later. Instances are
+    thread-safe.
+*/
+public final class RequestCancellation {
+    private final Lock  lock = new ReentrantLock();
+    private Cancellable cancellable;
+    private boolean     cancelled;
+
+    /**
+        Registers what to abort when the request is cancelled, replacing anything registered
+        before. If the request has been cancelled already, it is aborted at once.
+
+        @param cancellable what the connector is waiting on
+    */
+    public void setCancellable(Cancellable cancellable) {
+        boolean cancelNow;
+        lock.lock();
+        try {
+            this.cancellable = cancellable;
+            cancelNow = cancelled;
+        }
+        finally {
+            lock.unlock();
+        }
+        if (cancelNow && cancellable != null) {
+            cancellable.cancel();
+        }
+    }
+
+    /** Cancels the request, aborting whatever the connector has registered. */
+    public void cancel() {
+        Cancellable toCancel;
+        lock.lock();
+        try {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toCancel = cancellable;
+        }
+        finally {
+            lock.unlock();
+        }
+        if (toCancel != null) {
+            toCancel.cancel();
+        }
+    }
+
+    /**
+        Returns whether the request has been cancelled.
+
+        @return true once {@link #cancel()} has been called
+    */
+    public boolean isCancelled() {
+        lock.lock();
+        try {
+            return cancelled;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.pokitdok;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+    Identifies a request by its method, endpoint, parameters and scope, for connectors that
+    recognise repeated requests.
+*/
+final class RequestKey {
+    private final String              method;
+    private final String              endpoint;
+    private final Map<String, Object> params;
+    private final String              scope;
+    private final int                 hash;
+
+    RequestKey(PokitDokRequest request) {
+        this.method = request.getMethod();
+        this.endpoint = request.getEndpoint();
+        this.params = (request.getParams() == null) ? Collections.<String, Object>emptyMap()
+            : new HashMap<String, Object>(request.getParams());
+        this.scope = request.getScope();
+        this.hash = 31 * (31 * (31 * method.hashCode() + endpoint.hashCode()) + params.hashCode()) + scope.hashCode();
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public boolean equals(Object other) {
+        if (!(other instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey key = (RequestKey) other;
+        return hash == key.hash && method.equals(key.method) && endpoint.equals(key.endpoint)
+            && scope.equals(key.scope) && params.equals(key.params);
+    }
+
+    public String toString() {
+        return method + " " + endpoint + " " + params + " (" + scope + ")";
+    }
+}
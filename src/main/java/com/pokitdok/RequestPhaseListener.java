@@ -0,0 +1,27 @@
+package com.pokitdok;
+
+/**
+    Receives a breakdown of where the time of each request went, for diagnosing latency.
+
+    <p>
+
+    Register a listener with {@link ConnectorSettings#setRequestPhaseListener(RequestPhaseListener)}.
+    The {@link ApacheHTTPConnector} then times every request phase by phase, from waiting for a
+    pooled connection to parsing the response, and hands the result to the listener once the
+    response has been decoded. Without a listener, the connector is built without any of the
+    timing hooks, so there is no overhead at all.
+
+    <p>
+
+    Listeners are called synchronously on the thread making the request, possibly from many
+    threads at once, so implementations must be thread-safe and quick.
+*/
+public interface RequestPhaseListener {
+    /**
+        Called once a request has completed and its response has been decoded.
+
+        @param request the request
+        @param phases the time spent in each phase of the request
+    */
+    void onPhases(PokitDokRequest request, RequestPhases phases);
+}
@@ -0,0 +1,137 @@
+package com.pokitdok;
+
+/**
+    The time spent in each phase of one request, in nanoseconds, as reported to a
+    {@link RequestPhaseListener}.
+
+    <p>
+
+    A phase that did not happen takes zero: a request sent on a pooled connection has no
+    connect or TLS time. If the platform rejected the access token and the request had to be
+    sent again, the phases of both attempts are added up. The phases do not account for all
+    of the {@link #getTotal() total}; the remainder is mostly spent obtaining access tokens and
+    in the client itself.
+*/
+public class RequestPhases {
+    private long    poolLease;
+    private long    connect;
+    private long    tls;
+    private long    timeToFirstByte;
+    private long    bodyRead;
+    private long    parse;
+    private long    total;
+    private boolean newConnection;
+
+    RequestPhases() {
+    }
+
+    /**
+        Returns the time spent waiting for a connection from the pool.
+
+        @return the pool lease time in nanoseconds
+    */
+    public long getPoolLease() {
+        return poolLease;
+    }
+
+    /**
+        Returns the time spent opening a TCP connection, excluding the TLS handshake.
+
+        @return the connect time in nanoseconds, zero if a pooled connection was re-used
+    */
+    public long getConnect() {
+        return connect;
+    }
+
+    /**
+        Returns the time spent on the TLS handshake.
+
+        @return the handshake time in nanoseconds, zero if a pooled connection was re-used
+    */
+    public long getTls() {
+        return tls;
+    }
+
+    /**
+        Returns the time from starting to send the request until the response headers had been
+        received, which covers the upload and the platform's processing time.
+
+        @return the time to first byte in nanoseconds
+    */
+    public long getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+        Returns the time spent waiting for the response body to arrive, while it was being
+        decoded.
+
+        @return the body read time in nanoseconds
+    */
+    public long getBodyRead() {
+        return bodyRead;
+    }
+
+    /**
+        Returns the time spent decoding the response body, not counting waiting for it.
+
+        @return the parse time in nanoseconds
+    */
+    public long getParse() {
+        return parse;
+    }
+
+    /**
+        Returns the time from the start of the request until its response had been decoded.
+
+        @return the total time in nanoseconds
+    */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+        Returns whether a new connection had to be opened for the request.
+
+        @return true if the request did not re-use a pooled connection
+    */
+    public boolean isNewConnection() {
+        return newConnection;
+    }
+
+    void addPoolLease(long nanos) {
+        poolLease += nanos;
+    }
+
+    void addConnect(long nanos) {
+        connect += nanos;
+        newConnection = true;
+    }
+
+    void addTls(long nanos) {
+        tls += nanos;
+    }
+
+    void addTimeToFirstByte(long nanos) {
+        timeToFirstByte += nanos;
+    }
+
+    void setBody(long bodyRead, long parse) {
+        this.bodyRead = bodyRead;
+        this.parse = parse;
+    }
+
+    void setTotal(long total) {
+        this.total = total;
+    }
+
+    public String toString() {
+        return "lease=" + micros(poolLease) + " connect=" + micros(connect) + " tls=" + micros(tls)
+            + " ttfb=" + micros(timeToFirstByte) + " read=" + micros(bodyRead) + " parse=" + micros(parse)
+            + " total=" + micros(total);
+    }
+
+    private static String micros(long nanos) {
+        return (nanos / 1000) + "us";
+    }
+}
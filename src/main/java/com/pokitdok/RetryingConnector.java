@@ -0,0 +1,272 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLException;
+import org.apache.http.HttpStatus;
+import org.json.simple.parser.ParseException;
+
+/**
+    A connector that retries requests failing with transient errors, with jittered exponential
+    backoff.
+
+    <p>
+
+    A request is retried when it fails with an I/O error, such as a timeout or a reset
+    connection, or when the platform answers 429, 502, 503 or 504. Before each retry the
+    connector waits a random delay between zero and {@code baseDelay * 2^retry}, capped at
+    {@code maxDelay}; a {@code Retry-After} header, if present, sets the minimum wait. Once the
+    attempts are used up, the last response is returned or the last error thrown.
+
+    <p>
+
+    Only idempotent requests are retried: GET, PUT and DELETE requests always, POST requests only
+    when they carry an {@value #IDEMPOTENCY_KEY_HEADER} header, so that a claim is never
+    submitted twice. Requests streaming to a {@link DataVisitor} are not retried once the
+    visitor has received an element.
+
+    <p>
+
+    Retries are limited by a budget shared by all requests going through the connector: every
+    request adds {@code budgetRatio} of a retry to it, up to {@link #BUDGET_RESERVE} retries,
+    and every retry uses one. Retries therefore add at most {@code budgetRatio} extra load in
+    the long run, which keeps a struggling platform from being swamped by retries. A request
+    that finds the budget empty fails with its current outcome.
+
+    <p>
+
+    Instances are thread-safe.
+*/
+public class RetryingConnector extends ForwardingConnector {
+    /** Header marking a POST request as safe to retry. */
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    /** Default maximum number of attempts per request, including the first one. */
+    public static final int    DEFAULT_MAX_ATTEMPTS = 3;
+    /** Default base delay before the first retry, in milliseconds. */
+    public static final long   DEFAULT_BASE_DELAY = 100;
+    /** Default maximum delay before a retry, in milliseconds. */
+    public static final long   DEFAULT_MAX_DELAY = 10 * 1000;
+    /** Default fraction of extra load retries may add. */
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+    /** Number of retries the budget starts with and can hold at most. */
+    public static final int    BUDGET_RESERVE = 10;
+
+    private static final int   TOO_MANY_REQUESTS = 429;
+
+    private final int         maxAttempts;
+    private final long        baseDelay;
+    private final long        maxDelay;
+    private final TokenBudget budget;
+    private final Random      random = new Random();
+    private final AtomicLong  requests = new AtomicLong();
+    private final AtomicLong  retries = new AtomicLong();
+    private final AtomicLong  budgetExhausted = new AtomicLong();
+    private final AtomicLong  attemptsExhausted = new AtomicLong();
+    private volatile MetricsListener metrics;
+
+    /**
+        Creates a retrying connector in front of the given connector, with the default policy.
+
+        @param delegate the connector to send requests through
+    */
+    public RetryingConnector(PokitDokHTTPConnector delegate) {
+        this(delegate, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_BUDGET_RATIO);
+    }
+
+    /**
+        Creates a retrying connector in front of the given connector.
+
+        @param delegate the connector to send requests through
+        @param maxAttempts the maximum number of attempts per request, including the first one
+        @param baseDelay the base delay before the first retry, in milliseconds
+        @param maxDelay the maximum delay before a retry, in milliseconds
+        @param budgetRatio the fraction of extra load retries may add, such as 0.1 for 10%
+    */
+    public RetryingConnector(PokitDokHTTPConnector delegate, int maxAttempts, long baseDelay, long maxDelay,
+                             double budgetRatio) {
+        super(delegate);
+        if (maxAttempts < 1 || baseDelay < 0 || maxDelay < baseDelay || budgetRatio < 0) {
+            throw new IllegalArgumentException("Invalid retry policy");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.budget = new TokenBudget(budgetRatio, BUDGET_RESERVE);
+    }
+
+    /**
+        Sets a listener to be told about every retry.
+
+        @param metrics the listener, or null for none
+    */
+    public void setMetricsListener(MetricsListener metrics) {
+        this.metrics = metrics;
+    }
+
+    public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor)
+    throws IOException, ParseException, UnauthorizedException {
+        requests.incrementAndGet();
+        budget.deposit();
+
+        boolean idempotent = isIdempotent(request);
+        TrackingVisitor tracking = (visitor == null) ? null : new TrackingVisitor(visitor);
+        for (int attempt = 1;; attempt++) {
+            PokitDokResponse response = null;
+            IOException failure = null;
+            try {
+                response = super.execute(request, tracking);
+            }
+            catch (IOException e) {
+                if (!isTransient(e)) {
+                    throw e;
+                }
+                failure = e;
+            }
+
+            if (failure == null && !isRetryable(response.getStatus())) {
+                return response;
+            }
+
+            long wait = (response == null) ? 0 : TimeUnit.NANOSECONDS.toMillis(response.getRetryAfter());
+            if (!idempotent || (tracking != null && tracking.visited) || wait > maxDelay) {
+                return outcome(response, failure);
+            }
+            if (attempt >= maxAttempts) {
+                attemptsExhausted.incrementAndGet();
+                return outcome(response, failure);
+            }
+            if (!budget.withdraw()) {
+                budgetExhausted.incrementAndGet();
+                return outcome(response, failure);
+            }
+
+            retries.incrementAndGet();
+            sleep(Math.max(wait, backoff(attempt)));
+            MetricsListener listener = metrics;
+            if (listener != null) {
+                listener.onRetry(request, attempt + 1);
+            }
+        }
+    }
+
+    /**
+        Returns the number of requests sent through this connector, not counting retries.
+
+        @return the request count
+    */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+        Returns the number of retries made.
+
+        @return the retry count
+    */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+        Returns the number of requests that could have been retried, but were not because the
+        retry budget was empty.
+
+        @return the number of requests denied a retry by the budget
+    */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.get();
+    }
+
+    /**
+        Returns the number of requests that still failed after the maximum number of attempts.
+
+        @return the number of requests that ran out of attempts
+    */
+    public long getAttemptsExhaustedCount() {
+        return attemptsExhausted.get();
+    }
+
+    /**
+        Returns whether a request may be sent more than once without changing its effect.
+
+        @param request the request
+        @return true for GET, PUT and DELETE requests, and for POST requests with an
+            {@value #IDEMPOTENCY_KEY_HEADER} header
+    */
+    protected boolean isIdempotent(PokitDokRequest request) {
+        if (!PokitDokRequest.POST.equals(request.getMethod())) {
+            return true;
+        }
+        Map<String, String> headers = request.getHeaders();
+        if (headers != null) {
+            for (String name : headers.keySet()) {
+                if (IDEMPOTENCY_KEY_HEADER.equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == TOO_MANY_REQUESTS
+            || status == HttpStatus.SC_BAD_GATEWAY
+            || status == HttpStatus.SC_SERVICE_UNAVAILABLE
+            || status == HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+
+    /**
+        Unknown hosts, TLS failures and open circuits will not go away by trying again right
+        away, nor will an interrupt.
+    */
+    private static boolean isTransient(IOException e) {
+        return !(e instanceof UnknownHostException || e instanceof SSLException || e instanceof CircuitOpenException)
+            && !Thread.currentThread().isInterrupted();
+    }
+
+    private static PokitDokResponse outcome(PokitDokResponse response, IOException failure) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        return response;
+    }
+
+    /** Returns a random delay up to the exponential backoff ceiling for the given attempt. */
+    private long backoff(int attempt) {
+        long ceiling = maxDelay;
+        if (attempt <= 30) {
+            ceiling = Math.min(maxDelay, baseDelay << (attempt - 1));
+        }
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /** Remembers whether any element reached the caller's visitor. */
+    private static class TrackingVisitor implements DataVisitor {
+        private final DataVisitor visitor;
+        volatile boolean          visited;
+
+        TrackingVisitor(DataVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        public void visit(Object element) {
+            visited = true;
+            visitor.visit(element);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.pokitdok;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Map;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+/**
+    The default {@link JSONCodec}, built on json-simple's parser and writer.
+*/
+public class SimpleJSONCodec implements JSONCodec {
+    public Map<String, Object> decode(Reader reader, DataVisitor visitor) throws IOException, ParseException {
+        return JSONStreamDecoder.decode(reader, visitor);
+    }
+
+    public void encode(Object value, Writer writer) throws IOException {
+        JSONValue.writeJSONString(value, writer);
+    }
+}
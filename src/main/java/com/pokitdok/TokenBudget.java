@@ -0,0 +1,51 @@
+package com.pokitdok;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+    A budget for extra requests, such as retries or hedges, proportional to the number of
+    ordinary requests. Every ordinary request deposits a fraction of a token, up to a reserve,
+    and every extra request withdraws a whole one, so that in the long run extra requests add at
+    most that fraction of load. The balance is kept in fixed point so it can be updated
+    atomically. Thread-safe.
+*/
+final class TokenBudget {
+    private static final long UNIT = 1000;
+
+    private final long       deposit;
+    private final long       reserve;
+    private final AtomicLong balance;
+
+    /**
+        @param ratio the fraction of a token deposited per ordinary request
+        @param reserve the number of tokens the budget starts with and can hold at most
+    */
+    TokenBudget(double ratio, int reserve) {
+        this.deposit = Math.round(ratio * UNIT);
+        this.reserve = reserve * UNIT;
+        this.balance = new AtomicLong(this.reserve);
+    }
+
+    void deposit() {
+        while (true) {
+            long current = balance.get();
+            long next = Math.min(reserve, current + deposit);
+            if (next == current || balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /** Takes a token, returning false if the budget is empty. */
+    boolean withdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < UNIT) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - UNIT)) {
+                return true;
+            }
+        }
+    }
+}
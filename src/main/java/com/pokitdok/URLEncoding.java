@@ -0,0 +1,135 @@
+package com.pokitdok;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+    Percent-encodes path segments and query strings straight into a {@link StringBuilder},
+    without the intermediate strings, byte arrays and name-value pairs of {@code URIBuilder}.
+
+    <p>
+
+    Query strings are encoded exactly as {@code URIBuilder.addParameter} encodes them, in the
+    {@code application/x-www-form-urlencoded} style: letters, digits and {@code -_.*} are kept,
+    spaces become {@code +}, and everything else is UTF-8 encoded with upper case hex digits.
+*/
+final class URLEncoding {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /** Characters kept as they are in a query name or value. */
+    private static final boolean[] QUERY_SAFE = safe("-_.*");
+
+    /** Characters kept as they are in a path segment: unreserved, sub-delims, ':' and '@'. */
+    private static final boolean[] PATH_SAFE = safe("-_.~!$&'()*+,;=:@");
+
+    private URLEncoding() {
+    }
+
+    private static boolean[] safe(String punctuation) {
+        boolean[] safe = new boolean[128];
+        for (char c = 'a'; c <= 'z'; c++) {
+            safe[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            safe[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            safe[c] = true;
+        }
+        for (int i = 0; i < punctuation.length(); i++) {
+            safe[punctuation.charAt(i)] = true;
+        }
+        return safe;
+    }
+
+    /**
+        Appends parameters as a query string. A {@link Collection} or array value adds the
+        parameter once for each of its elements; a null value adds the name alone; any other
+        value is added as its {@link String#valueOf(Object)}.
+
+        @param url the URL so far, to which {@code ?} or {@code &} and the parameters are appended
+        @param params the parameters
+    */
+    static void appendQuery(StringBuilder url, Map<String, Object> params) {
+        char separator = url.indexOf("?") < 0 ? '?' : '&';
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            Object value = param.getValue();
+            if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    appendParameter(url, separator, param.getKey(), element);
+                    separator = '&';
+                }
+            }
+            else if (value != null && value.getClass().isArray()) {
+                for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                    appendParameter(url, separator, param.getKey(), Array.get(value, i));
+                    separator = '&';
+                }
+            }
+            else {
+                appendParameter(url, separator, param.getKey(), value);
+                separator = '&';
+            }
+        }
+    }
+
+    private static void appendParameter(StringBuilder url, char separator, String name, Object value) {
+        url.append(separator);
+        append(url, name, QUERY_SAFE, true);
+        if (value != null) {
+            url.append('=');
+            append(url, String.valueOf(value), QUERY_SAFE, true);
+        }
+    }
+
+    /**
+        Appends a value as a single path segment, so that any {@code /} in it is encoded.
+
+        @param url the URL so far
+        @param segment the segment to encode
+    */
+    static void appendPathSegment(StringBuilder url, String segment) {
+        append(url, segment, PATH_SAFE, false);
+    }
+
+    private static void append(StringBuilder url, String text, boolean[] safe, boolean spaceAsPlus) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 128 && safe[c]) {
+                url.append(c);
+            }
+            else if (c == ' ' && spaceAsPlus) {
+                url.append('+');
+            }
+            else if (c < 0x80) {
+                appendByte(url, c);
+            }
+            else if (c < 0x800) {
+                appendByte(url, 0xc0 | (c >> 6));
+                appendByte(url, 0x80 | (c & 0x3f));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                appendByte(url, 0xf0 | (codePoint >> 18));
+                appendByte(url, 0x80 | ((codePoint >> 12) & 0x3f));
+                appendByte(url, 0x80 | ((codePoint >> 6) & 0x3f));
+                appendByte(url, 0x80 | (codePoint & 0x3f));
+            }
+            else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                /* An unpaired surrogate, which the UTF-8 encoder replaces with '?'. */
+                appendByte(url, '?');
+            }
+            else {
+                appendByte(url, 0xe0 | (c >> 12));
+                appendByte(url, 0x80 | ((c >> 6) & 0x3f));
+                appendByte(url, 0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private static void appendByte(StringBuilder url, int b) {
+        url.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+    }
+}
@@ -0,0 +1,128 @@
+package com.pokitdok.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class AccessTokenManagerTests {
+	private CountingTokenSource source;
+	private AccessTokenManager manager;
+
+	@After
+	public void teardown() {
+		if (manager != null) manager.close();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void tokenResponseExpiryTest() {
+		Map<String, Object> response = new HashMap<String, Object>();
+		response.put("access_token", "abc");
+		response.put("expires", 1429041839L);
+		assertEquals(1429041839000L, AccessToken.fromTokenResponse(response, 0).getExpiresAt());
+
+		response.put("expires_in", 3600L);
+		assertEquals(1000 + 3600000L, AccessToken.fromTokenResponse(response, 1000).getExpiresAt());
+
+		response.remove("access_token");
+		assertNull(AccessToken.fromTokenResponse(response, 0));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void concurrentCallersShareOneRefreshTest() throws Exception {
+		source = new CountingTokenSource(3600000, 200);
+		manager = new AccessTokenManager(source);
+
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService workers = Executors.newFixedThreadPool(50);
+		List<Future<String>> tokens = new ArrayList<Future<String>>();
+		for (int i = 0; i < 50; i++) {
+			tokens.add(workers.submit(new Callable<String>() {
+				public String call() throws Exception {
+					start.await();
+					return manager.getToken(PokitDok.DEFAULT_SCOPE);
+				}
+			}));
+		}
+		start.countDown();
+
+		for (Future<String> token : tokens) {
+			assertEquals("default-1", token.get(10, TimeUnit.SECONDS));
+		}
+		assertEquals(1, source.requests.get());
+		workers.shutdown();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void refreshesAheadOfExpiryTest() throws Exception {
+		source = new CountingTokenSource(600, 0);
+		manager = new AccessTokenManager(source, 400);
+
+		assertEquals("default-1", manager.getToken(PokitDok.DEFAULT_SCOPE));
+		Thread.sleep(400);
+
+		/* Renewed in the background before the first token ran out. */
+		assertEquals(2, source.requests.get());
+		assertEquals("default-2", manager.getToken(PokitDok.DEFAULT_SCOPE));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void scopesAreIndependentTest() throws Exception {
+		source = new CountingTokenSource(3600000, 0);
+		manager = new AccessTokenManager(source);
+
+		assertEquals("default-1", manager.getToken(PokitDok.DEFAULT_SCOPE));
+		assertEquals("user_schedule-2", manager.getToken(PokitDok.USER_SCHEDULE_SCOPE));
+		assertEquals("user_schedule-3", manager.refresh(PokitDok.USER_SCHEDULE_SCOPE));
+
+		assertEquals("default-1", manager.getToken(PokitDok.DEFAULT_SCOPE));
+		assertEquals(3, source.requests.get());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void invalidateOnlyDropsCurrentTokenTest() throws Exception {
+		source = new CountingTokenSource(3600000, 0);
+		manager = new AccessTokenManager(source);
+
+		String stale = manager.getToken(PokitDok.DEFAULT_SCOPE);
+		manager.invalidate(PokitDok.DEFAULT_SCOPE, stale);
+		String fresh = manager.getToken(PokitDok.DEFAULT_SCOPE);
+		assertEquals("default-2", fresh);
+
+		/* A late failure with the old token must not throw away the new one. */
+		manager.invalidate(PokitDok.DEFAULT_SCOPE, stale);
+		assertEquals(fresh, manager.getToken(PokitDok.DEFAULT_SCOPE));
+		assertEquals(2, source.requests.get());
+	}
+
+	private static class CountingTokenSource implements AccessTokenManager.TokenSource {
+		final AtomicInteger requests = new AtomicInteger();
+		final long lifetime;
+		final long latency;
+
+		CountingTokenSource(long lifetime, long latency) {
+			this.lifetime = lifetime;
+			this.latency = latency;
+		}
+
+		public AccessToken requestToken(String scope) {
+			int request = requests.incrementAndGet();
+			try {
+				Thread.sleep(latency);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new AccessToken(scope + "-" + request, System.currentTimeMillis() + lifetime);
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.pokitdok.tests;
+
+import java.util.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.*;
+import org.json.simple.parser.ParseException;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class ApacheHTTPConnectorTests {
+	private PokitDokStubServer server;
+	private ApacheHTTPConnector connector;
+
+	@Before
+	public void setup() throws Exception {
+		server = new PokitDokStubServer();
+		server.start();
+		connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase());
+	}
+
+	@After
+	public void teardown() throws Exception {
+		connector.close();
+		server.stop();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void executeDecodesResponseTest() throws Exception {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("npi", "1467560003");
+		PokitDokResponse response = connector.execute(
+			new PokitDokRequest(PokitDokRequest.GET, "providers", params, null, null));
+
+		assertEquals(200, response.getStatus());
+		assertTrue(response.getHeader("content-type").startsWith("application/json"));
+		Map<String, Object> data = (Map<String, Object>) response.getBody().get("data");
+		assertEquals("providers", data.get("endpoint"));
+		assertEquals("GET", data.get("method"));
+		assertEquals(params, data.get("params"));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void executeRecoversFromUnauthorizedStatusTest() throws Exception {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("member_id", "W000000000");
+		connector.execute(new PokitDokRequest(PokitDokRequest.POST, "eligibility/", params, null, null));
+		server.expireTokens();
+
+		PokitDokResponse response = connector.execute(
+			new PokitDokRequest(PokitDokRequest.POST, "eligibility/", params, null, null));
+		assertEquals(200, response.getStatus());
+		assertEquals(2, server.getTokenRequests());
+		assertEquals(3, server.getApiRequests());
+		assertEquals(0, connector.getPoolStats().getLeased());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void clientUsesDecodedResponsesTest() throws Exception {
+		PokitDok client = new PokitDok("client_id", "client_secret", connector);
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("trading_partner_id", "MOCKPAYER");
+
+		Map<String, Object> data = (Map<String, Object>) client.tradingPartners(params).get("data");
+		assertEquals("tradingpartners/MOCKPAYER", data.get("endpoint"));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void dataVisitorReceivesEachElementTest() throws Exception {
+		PokitDok client = new PokitDok("client_id", "client_secret", connector);
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("results", "500");
+		final List<Object> visited = new ArrayList<Object>();
+
+		Map<String, Object> response = client.providers(params, new DataVisitor() {
+			public void visit(Object element) {
+				visited.add(element);
+			}
+		});
+
+		assertEquals(500, visited.size());
+		for (int i = 0; i < visited.size(); i++) {
+			Map<String, Object> element = (Map<String, Object>) visited.get(i);
+			assertEquals((long) i, element.get("index"));
+			assertEquals(params, element.get("params"));
+		}
+		assertTrue(((List<Object>) response.get("data")).isEmpty());
+		assertEquals("test", ((Map<String, Object>) response.get("meta")).get("application_mode"));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void streamedAndBufferedDecodingAgreeTest() throws Exception {
+		PokitDok client = new PokitDok("client_id", "client_secret", connector);
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("results", "20");
+		params.put("last_name", "Ay\u00e9");
+		final List<Object> visited = new ArrayList<Object>();
+
+		Map<String, Object> buffered = client.activities(params);
+		Map<String, Object> streamed = client.activities(params, new DataVisitor() {
+			public void visit(Object element) {
+				visited.add(element);
+			}
+		});
+
+		assertEquals(buffered.get("data"), visited);
+		assertEquals(buffered.get("meta"), streamed.get("meta"));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void parseFailuresAreReportedTest() throws Exception {
+		TapeReplayServer replay = new TapeReplayServer("payers");
+		replay.addRecording(PokitDokRequest.GET, "plans/", 200, "{\"data\": [");
+		replay.start();
+		InMemoryMetrics metrics = new InMemoryMetrics();
+		ConnectorSettings settings = new ConnectorSettings();
+		settings.setMetricsListener(metrics);
+		ApacheHTTPConnector client = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), replay.getApiBase(), settings);
+		try {
+			client.execute(new PokitDokRequest(PokitDokRequest.GET, "plans/", null, null, null));
+			fail("Expected the truncated response not to parse");
+		}
+		catch (ParseException e) {
+			assertEquals(1, metrics.getEndpointMetrics("plans/", PokitDok.DEFAULT_SCOPE).getFailureCount());
+		}
+		finally {
+			client.close();
+			replay.stop();
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void largeRequestBodiesAreCompressedTest() throws Exception {
+		connector.close();
+		InMemoryMetrics metrics = new InMemoryMetrics();
+		ConnectorSettings settings = new ConnectorSettings();
+		settings.setRequestCompressionThreshold(1024);
+		settings.setMetricsListener(metrics);
+		connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings);
+
+		Map<String, Object> small = new HashMap<String, Object>();
+		small.put("member_id", "W000000000");
+		Map<String, Object> large = new HashMap<String, Object>();
+		List<Object> lines = new ArrayList<Object>();
+		for (int i = 0; i < 200; i++) {
+			Map<String, Object> line = new HashMap<String, Object>();
+			line.put("procedure_code", "99213");
+			line.put("charge_amount", "60.0");
+			line.put("service_date", "2016-01-01");
+			lines.add(line);
+		}
+		large.put("service_lines", lines);
+
+		PokitDokResponse response = connector.execute(
+			new PokitDokRequest(PokitDokRequest.POST, "claims/", large, null, null));
+		assertEquals(large, ((Map<String, Object>) response.getBody().get("data")).get("params"));
+		assertEquals(1, server.getCompressedRequests());
+		long sent = metrics.getEndpointMetrics("claims/", PokitDok.DEFAULT_SCOPE).getBytesSent();
+		assertTrue(sent > 0 && sent < JSONValue.toJSONString(large).length() / 4);
+
+		connector.execute(new PokitDokRequest(PokitDokRequest.POST, "eligibility/", small, null, null));
+		assertEquals(1, server.getCompressedRequests());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void compressedResponsesAreDecompressedTest() throws Exception {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("results", "100");
+		PokitDok client = new PokitDok("client_id", "client_secret", connector);
+
+		for (String encoding : new String[] {"gzip", "deflate"}) {
+			server.setResponseEncoding(encoding);
+			List<Object> data = (List<Object>) client.providers(params).get("data");
+			assertEquals(100, data.size());
+			assertEquals(99L, ((Map<String, Object>) data.get(99)).get("index"));
+		}
+		assertEquals(2, server.getCompressedResponses());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void responseCompressionCanBeTurnedOffTest() throws Exception {
+		connector.close();
+		ConnectorSettings settings = new ConnectorSettings();
+		settings.setResponseCompression(false);
+		connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings);
+		server.setResponseEncoding("gzip");
+
+		PokitDokResponse response = connector.execute(
+			new PokitDokRequest(PokitDokRequest.GET, "providers", new HashMap<String, Object>(), null, null));
+		assertEquals(200, response.getStatus());
+		assertEquals(0, server.getCompressedResponses());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void requestBodiesAreSentAsUtf8Test() throws Exception {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("last_name", "Ay\u00e9-\u00c5berg \u6771\u4eac \ud83d\ude00");
+		params.put("service_types", Arrays.asList("health_benefit_plan_coverage"));
+
+		/* Chunked, then measured up front for a possible compression, then compressed. */
+		for (int threshold : new int[] {-1, 1 << 20, 0}) {
+			connector.close();
+			ConnectorSettings settings = new ConnectorSettings();
+			settings.setRequestCompressionThreshold(threshold);
+			connector = new ApacheHTTPConnector("client_id", "client_secret",
+				new HashMap<String, String>(), server.getApiBase(), settings);
+
+			PokitDokResponse response = connector.execute(
+				new PokitDokRequest(PokitDokRequest.POST, "eligibility/", params, null, null));
+			assertEquals(params, ((Map<String, Object>) response.getBody().get("data")).get("params"));
+		}
+		assertEquals(1, server.getCompressedRequests());
+	}
+}
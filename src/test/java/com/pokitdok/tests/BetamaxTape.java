@@ -0,0 +1,246 @@
+package com.pokitdok.tests;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+	Reads the recorded interactions of a Betamax tape from src/test/resources/betamax/tapes.
+
+	Only the subset of YAML the tapes use is understood: nested mappings of plain scalars, and
+	plain, single-quoted or double-quoted bodies folded over several lines.
+*/
+public class BetamaxTape {
+	/** One recorded request and the response it received. */
+	public static class Interaction {
+		public String method;
+		public String uri;
+		public Map<String, String> requestHeaders = new LinkedHashMap<String, String>();
+		public String requestBody;
+		public int status;
+		public Map<String, String> responseHeaders = new LinkedHashMap<String, String>();
+		public String responseBody;
+
+		/** Returns the request path relative to the API version root, without query string. */
+		public String getEndpoint() {
+			String path = URI.create(uri).getPath();
+			int root = path.indexOf("/api/v4/");
+			return (root < 0) ? path : path.substring(root + "/api/v4/".length());
+		}
+
+		public boolean isTokenRequest() {
+			return uri.endsWith("/oauth2/token");
+		}
+	}
+
+	private final String name;
+	private final List<Interaction> interactions;
+
+	private BetamaxTape(String name, List<Interaction> interactions) {
+		this.name = name;
+		this.interactions = interactions;
+	}
+
+	/**
+		Loads a tape from the class path.
+
+		@param name the tape name, such as "eligibility"
+	*/
+	public static BetamaxTape load(String name) throws IOException {
+		InputStream in = BetamaxTape.class.getResourceAsStream("/betamax/tapes/" + name + ".yaml");
+		if (in == null) {
+			throw new FileNotFoundException("No tape named " + name);
+		}
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+			List<String> lines = new ArrayList<String>();
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				lines.add(line);
+			}
+			return new BetamaxTape(name, parse(lines));
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/** Lists the names of every tape on the class path. */
+	public static List<String> names() throws IOException {
+		URL tapes = BetamaxTape.class.getResource("/betamax/tapes/");
+		List<String> names = new ArrayList<String>();
+		if (tapes != null && "file".equals(tapes.getProtocol())) {
+			try {
+				for (String file : new File(tapes.toURI()).list()) {
+					if (file.endsWith(".yaml")) {
+						names.add(file.substring(0, file.length() - ".yaml".length()));
+					}
+				}
+			}
+			catch (URISyntaxException e) {
+				throw new IOException(e.toString());
+			}
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<Interaction> getInteractions() {
+		return interactions;
+	}
+
+	/** Returns the API interactions, leaving out token requests. */
+	public List<Interaction> getApiInteractions() {
+		List<Interaction> api = new ArrayList<Interaction>();
+		for (Interaction interaction : interactions) {
+			if (!interaction.isTokenRequest()) {
+				api.add(interaction);
+			}
+		}
+		return api;
+	}
+
+	private static List<Interaction> parse(List<String> lines) {
+		List<Interaction> interactions = new ArrayList<Interaction>();
+		Interaction current = null;
+		String section = null;
+		String headers = null;
+
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			String trimmed = line.trim();
+			int indent = line.length() - line.replaceAll("^ +", "").length();
+
+			if (trimmed.startsWith("- recorded:")) {
+				current = new Interaction();
+				interactions.add(current);
+				section = null;
+				headers = null;
+				continue;
+			}
+			if (current == null || trimmed.length() == 0) {
+				continue;
+			}
+			if (indent == 2 && (trimmed.equals("request:") || trimmed.equals("response:"))) {
+				section = trimmed.substring(0, trimmed.length() - 1);
+				headers = null;
+				continue;
+			}
+
+			int colon = trimmed.indexOf(':');
+			if (colon < 0) {
+				continue;
+			}
+			String key = trimmed.substring(0, colon);
+			String rest = trimmed.substring(colon + 1).trim();
+
+			if (indent == 6 && headers != null) {
+				Map<String, String> target = section.equals("request") ? current.requestHeaders : current.responseHeaders;
+				target.put(key, scalar(rest));
+				continue;
+			}
+			headers = null;
+			if (indent != 4) {
+				continue;
+			}
+			if (key.equals("headers")) {
+				headers = section;
+			}
+			else if (key.equals("body")) {
+				StringBuilder scalar = new StringBuilder(rest);
+				while (i + 1 < lines.size() && indentOf(lines.get(i + 1)) > 4) {
+					scalar.append('\n').append(lines.get(++i));
+				}
+				String body = scalar(scalar.toString());
+				if (section.equals("request")) {
+					current.requestBody = body;
+				}
+				else {
+					current.responseBody = body;
+				}
+			}
+			else if (key.equals("method")) {
+				current.method = rest;
+			}
+			else if (key.equals("uri")) {
+				current.uri = rest;
+			}
+			else if (key.equals("status")) {
+				current.status = Integer.parseInt(rest);
+			}
+		}
+		return interactions;
+	}
+
+	private static int indentOf(String line) {
+		int indent = 0;
+		while (indent < line.length() && line.charAt(indent) == ' ') {
+			indent++;
+		}
+		return (indent == line.length()) ? Integer.MAX_VALUE : indent;
+	}
+
+	/** Decodes a possibly quoted scalar spanning several lines, folding line breaks as YAML does. */
+	private static String scalar(String text) {
+		if (text.startsWith("'")) {
+			String folded = fold(text.substring(1, text.lastIndexOf('\'')), false);
+			return folded.replace("''", "'");
+		}
+		if (text.startsWith("\"")) {
+			return unescape(fold(text.substring(1, text.lastIndexOf('"')), true));
+		}
+		return fold(text, false);
+	}
+
+	/**
+		Joins the lines of a scalar with single spaces, dropping their indentation. In
+		double-quoted scalars, a line ending in a backslash continues without a space.
+	*/
+	private static String fold(String text, boolean escapes) {
+		String[] lines = text.split("\n");
+		StringBuilder folded = new StringBuilder(text.length());
+		for (int i = 0; i < lines.length; i++) {
+			String line = (i == 0) ? lines[i] : lines[i].replaceAll("^ +", "");
+			if (i < lines.length - 1) {
+				line = line.replaceAll(" +$", "");
+			}
+			folded.append(line);
+			if (i < lines.length - 1) {
+				if (escapes && line.endsWith("\\") && !line.endsWith("\\\\")) {
+					folded.setLength(folded.length() - 1);
+				}
+				else {
+					folded.append(' ');
+				}
+			}
+		}
+		return folded.toString();
+	}
+
+	private static String unescape(String text) {
+		StringBuilder out = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c != '\\' || i + 1 == text.length()) {
+				out.append(c);
+				continue;
+			}
+			char escaped = text.charAt(++i);
+			switch (escaped) {
+				case 'n': out.append('\n'); break;
+				case 't': out.append('\t'); break;
+				case 'r': out.append('\r'); break;
+				case '0': out.append('\0'); break;
+				case 'u':
+					out.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+					i += 4;
+					break;
+				default: out.append(escaped);
+			}
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,192 @@
+package com.pokitdok.tests;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class CachingConnectorTests {
+	private CountingConnector backend;
+	private CachingConnector cache;
+	private PokitDok client;
+
+	@Before
+	public void setup() throws Exception {
+		backend = new CountingConnector();
+		cache = new CachingConnector(backend, 3);
+		client = new PokitDok("client_id", "client_secret", cache);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void referenceEndpointsAreCachedTest() throws Exception {
+		Map<String, Object> first = client.payers();
+		Map<String, Object> second = client.payers();
+
+		assertEquals(1, backend.requests.get());
+		assertEquals(first, second);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		/* Callers share one unmodifiable response. */
+		assertSame(first, second);
+		try {
+			((Map<String, Object>) second.get("data")).put("endpoint", "changed");
+			fail("Expected the cached response to be unmodifiable");
+		}
+		catch (UnsupportedOperationException e) {
+			assertEquals("payers", ((Map<String, Object>) client.payers().get("data")).get("endpoint"));
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void keyIncludesParamsTest() throws Exception {
+		client.mpc("99213", null);
+		client.mpc("99214", null);
+		client.mpc("99213", null);
+
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("trading_partner_id", "MOCKPAYER");
+		client.tradingPartners(params);
+		client.tradingPartners(new HashMap<String, Object>(params));
+
+		assertEquals(3, backend.requests.get());
+		assertEquals(2, cache.getHitCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void otherEndpointsAreNotCachedTest() throws Exception {
+		Map<String, Object> query = new HashMap<String, Object>();
+		query.put("npi", "1467560003");
+		client.providers(query);
+		client.providers(query);
+		client.eligibility(query);
+		client.eligibility(query);
+
+		assertEquals(4, backend.requests.get());
+		assertEquals(0, cache.getHitCount() + cache.getMissCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void prefixesMatchWholePathSegmentsTest() throws Exception {
+		cache.execute(get("plans"));
+		cache.execute(get("plans"));
+		cache.execute(get("mpc/99213"));
+		cache.execute(get("mpc/99213"));
+		assertEquals(2, backend.requests.get());
+
+		cache.execute(get("plans_history"));
+		cache.execute(get("plans_history"));
+		assertEquals(4, backend.requests.get());
+
+		cache.invalidate("mp");
+		cache.execute(get("mpc/99213"));
+		assertEquals(4, backend.requests.get());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void timeToLiveTest() throws Exception {
+		cache.setTimeToLive("payers", 50);
+		client.payers();
+		client.payers();
+		Thread.sleep(80);
+		client.payers();
+		assertEquals(2, backend.requests.get());
+
+		cache.setTimeToLive("payers", 0);
+		client.payers();
+		assertEquals(3, backend.requests.get());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void cacheControlTest() throws Exception {
+		backend.cacheControl = "private, no-cache";
+		client.plans();
+		client.plans();
+		assertEquals(2, backend.requests.get());
+
+		backend.cacheControl = "max-age=0";
+		client.plans();
+		client.plans();
+		assertEquals(4, backend.requests.get());
+
+		backend.cacheControl = "public, max-age=600";
+		client.plans();
+		client.plans();
+		assertEquals(5, backend.requests.get());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void leastRecentlyUsedEvictionTest() throws Exception {
+		client.mpc("1", null);
+		client.mpc("2", null);
+		client.mpc("3", null);
+		client.mpc("1", null);
+		client.mpc("4", null);
+
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		client.mpc("1", null);
+		assertEquals(4, backend.requests.get());
+		client.mpc("2", null);
+		assertEquals(5, backend.requests.get());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void failuresAreNotCachedTest() throws Exception {
+		backend.status = 500;
+		client.payers();
+		client.payers();
+		assertEquals(2, backend.requests.get());
+		assertEquals(0, cache.size());
+	}
+
+	private static PokitDokRequest get(String endpoint) {
+		return new PokitDokRequest(PokitDokRequest.GET, endpoint, null, null, PokitDok.DEFAULT_SCOPE);
+	}
+
+	/** Echoes the endpoint back, with the configured status and Cache-Control header. */
+	private static class CountingConnector implements PokitDokExchangeConnector {
+		final AtomicInteger requests = new AtomicInteger();
+		volatile String cacheControl;
+		volatile int status = 200;
+
+		public PokitDokResponse execute(PokitDokRequest request) {
+			return execute(request, null);
+		}
+
+		public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor) {
+			requests.incrementAndGet();
+			Map<String, Object> data = new JSONObject();
+			data.put("endpoint", request.getEndpoint());
+			Map<String, Object> body = new JSONObject();
+			body.put("data", data);
+
+			Map<String, String> headers = new HashMap<String, String>();
+			if (cacheControl != null) headers.put("Cache-Control", cacheControl);
+			return new PokitDokResponse(status, headers, body);
+		}
+
+		public void connect() {}
+		public void connect(String scopeName) {}
+		public String get(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String get(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+	}
+}
@@ -0,0 +1,217 @@
+package com.pokitdok.tests;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.pokitdok.*;
+import com.pokitdok.CircuitBreakingConnector.State;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class CircuitBreakingConnectorTests {
+	private ScriptedConnector backend;
+	private CircuitBreakingConnector breaker;
+
+	@Before
+	public void setup() throws Exception {
+		backend = new ScriptedConnector();
+		breaker = new CircuitBreakingConnector(backend, 0.5, 1.0, 1000, 50);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void opensOnFailureRateTest() throws Exception {
+		backend.status = 503;
+		for (int i = 0; i < CircuitBreakingConnector.MINIMUM_CALLS; i++) {
+			assertEquals(503, breaker.execute(get("claims/status", null)).getStatus());
+		}
+		assertEquals(State.OPEN, breaker.getState("claims/status", null));
+
+		int sent = backend.requests.get();
+		try {
+			breaker.execute(get("claims/status", null));
+			fail("Expected the open circuit to refuse the request");
+		}
+		catch (CircuitOpenException e) {
+			assertEquals(sent, backend.requests.get());
+			assertEquals(1, breaker.getRejectedCount());
+		}
+
+		/* Other endpoints are unaffected. */
+		backend.status = 200;
+		assertEquals(200, breaker.execute(get("eligibility/", null)).getStatus());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void staysClosedBelowThresholdTest() throws Exception {
+		for (int i = 0; i < 40; i++) {
+			backend.status = (i % 3 == 0) ? 503 : 200;
+			breaker.execute(get("claims/status", null));
+		}
+		assertEquals(State.CLOSED, breaker.getState("claims/status", null));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void halfOpenTrialsCloseOrReopenTest() throws Exception {
+		tripCircuit("pharmacy/formulary");
+		Thread.sleep(60);
+		assertEquals(State.HALF_OPEN, breaker.getState("pharmacy/formulary", null));
+
+		backend.status = 503;
+		breaker.execute(get("pharmacy/formulary", null));
+		assertEquals(State.OPEN, breaker.getState("pharmacy/formulary", null));
+
+		Thread.sleep(60);
+		backend.status = 200;
+		for (int i = 0; i < CircuitBreakingConnector.HALF_OPEN_CALLS; i++) {
+			breaker.execute(get("pharmacy/formulary", null));
+		}
+		assertEquals(State.CLOSED, breaker.getState("pharmacy/formulary", null));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void callsFromBeforeOpeningAreNotTrialsTest() throws Exception {
+		CountDownLatch gate = new CountDownLatch(1);
+		backend.gate = gate;
+		List<Thread> stragglers = new ArrayList<Thread>();
+		for (int i = 0; i < CircuitBreakingConnector.HALF_OPEN_CALLS; i++) {
+			Thread straggler = new Thread() {
+				public void run() {
+					try {
+						breaker.execute(get("claims/status", null));
+					}
+					catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			straggler.start();
+			stragglers.add(straggler);
+		}
+		while (backend.requests.get() < CircuitBreakingConnector.HALF_OPEN_CALLS) {
+			Thread.sleep(1);
+		}
+		backend.gate = null;
+
+		backend.status = 503;
+		for (int i = 0; i < CircuitBreakingConnector.MINIMUM_CALLS; i++) {
+			breaker.execute(get("claims/status", null));
+		}
+		Thread.sleep(60);
+		assertEquals(State.HALF_OPEN, breaker.getState("claims/status", null));
+
+		/* The stragglers succeed while the circuit is half-open, but were let through while it was closed. */
+		backend.status = 200;
+		gate.countDown();
+		for (Thread straggler : stragglers) {
+			straggler.join();
+		}
+		assertEquals(State.HALF_OPEN, breaker.getState("claims/status", null));
+
+		for (int i = 0; i < CircuitBreakingConnector.HALF_OPEN_CALLS; i++) {
+			breaker.execute(get("claims/status", null));
+		}
+		assertEquals(State.CLOSED, breaker.getState("claims/status", null));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void opensOnSlowCallsTest() throws Exception {
+		breaker = new CircuitBreakingConnector(backend, 0.5, 0.5, 5, 1000);
+		backend.delay = 10;
+		for (int i = 0; i < CircuitBreakingConnector.MINIMUM_CALLS; i++) {
+			assertEquals(200, breaker.execute(get("providers", null)).getStatus());
+		}
+		assertEquals(State.OPEN, breaker.getState("providers", null));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void identifiersShareACircuitTest() throws Exception {
+		tripCircuit("mpc/99213");
+		assertEquals(State.OPEN, breaker.getState("mpc/99214", null));
+		assertEquals(State.OPEN, breaker.getState("mpc/", null));
+		assertEquals(State.CLOSED, breaker.getState("providers", null));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void perTradingPartnerCircuitsTest() throws Exception {
+		breaker.setPerTradingPartner(true);
+		Map<String, Object> failing = new HashMap<String, Object>();
+		failing.put("trading_partner_id", "MOCKPAYER");
+		Map<String, Object> healthy = new HashMap<String, Object>();
+		healthy.put("trading_partner_id", "aetna");
+
+		backend.status = 503;
+		for (int i = 0; i < CircuitBreakingConnector.MINIMUM_CALLS; i++) {
+			breaker.execute(new PokitDokRequest(PokitDokRequest.POST, "eligibility/", failing, null, null));
+		}
+		assertEquals(State.OPEN, breaker.getState("eligibility/", failing));
+		assertEquals(State.CLOSED, breaker.getState("eligibility/", healthy));
+	}
+
+	private void tripCircuit(String endpoint) throws Exception {
+		backend.status = 503;
+		for (int i = 0; i < CircuitBreakingConnector.MINIMUM_CALLS; i++) {
+			breaker.execute(get(endpoint, null));
+		}
+		assertEquals(State.OPEN, breaker.getState(endpoint, null));
+	}
+
+	private static PokitDokRequest get(String endpoint, Map<String, Object> params) {
+		return new PokitDokRequest(PokitDokRequest.GET, endpoint, params, null, PokitDok.DEFAULT_SCOPE);
+	}
+
+	/** Answers every request with the configured status, after the configured delay. */
+	private static class ScriptedConnector implements PokitDokExchangeConnector {
+		final AtomicInteger requests = new AtomicInteger();
+		volatile int status = 200;
+		volatile long delay;
+		volatile CountDownLatch gate;
+
+		public PokitDokResponse execute(PokitDokRequest request) throws IOException {
+			return execute(request, null);
+		}
+
+		public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor) throws IOException {
+			CountDownLatch held = gate;
+			requests.incrementAndGet();
+			if (held != null) {
+				try {
+					held.await();
+				}
+				catch (InterruptedException e) {
+					throw new IOException(e.toString());
+				}
+			}
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				}
+				catch (InterruptedException e) {
+					throw new IOException(e.toString());
+				}
+			}
+			return new PokitDokResponse(status, null, new JSONObject());
+		}
+
+		public void connect() {}
+		public void connect(String scopeName) {}
+		public String get(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String get(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+	}
+}
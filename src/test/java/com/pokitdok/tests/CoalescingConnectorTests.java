@@ -0,0 +1,154 @@
+package com.pokitdok.tests;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class CoalescingConnectorTests {
+	private static final int THREADS = 20;
+
+	private GatedConnector backend;
+	private CoalescingConnector connector;
+	private PokitDok client;
+	private ExecutorService workers;
+
+	@Before
+	public void setup() throws Exception {
+		backend = new GatedConnector();
+		connector = new CoalescingConnector(backend);
+		client = new PokitDok("client_id", "client_secret", connector);
+		workers = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void teardown() {
+		backend.gate.countDown();
+		workers.shutdownNow();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void identicalRequestsShareOneCallTest() throws Exception {
+		List<Future<Map<String, Object>>> results = new ArrayList<Future<Map<String, Object>>>();
+		for (int i = 0; i < THREADS; i++) {
+			results.add(workers.submit(new Callable<Map<String, Object>>() {
+				public Map<String, Object> call() throws Exception {
+					return client.providers(query("1467560003"));
+				}
+			}));
+		}
+		awaitCoalesced(THREADS - 1);
+		backend.gate.countDown();
+
+		Set<Map<String, Object>> distinct = Collections.newSetFromMap(new IdentityHashMap<Map<String, Object>, Boolean>());
+		for (Future<Map<String, Object>> result : results) {
+			Map<String, Object> response = result.get(10, TimeUnit.SECONDS);
+			assertEquals("1467560003", ((Map<String, Object>) response.get("data")).get("npi"));
+			distinct.add(response);
+		}
+		assertEquals(1, backend.requests.get());
+		assertEquals(1, connector.getRequestCount());
+		assertEquals(THREADS, distinct.size());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void differentRequestsAreNotCoalescedTest() throws Exception {
+		backend.gate.countDown();
+		client.providers(query("1"));
+		client.providers(query("2"));
+		client.providers(query("1"));
+		client.eligibility(query("1"));
+		client.eligibility(query("1"));
+
+		assertEquals(5, backend.requests.get());
+		assertEquals(0, connector.getCoalescedCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void failuresReachEveryCallerTest() throws Exception {
+		backend.failure = new IOException("Connection reset");
+		List<Future<Map<String, Object>>> results = new ArrayList<Future<Map<String, Object>>>();
+		for (int i = 0; i < 5; i++) {
+			results.add(workers.submit(new Callable<Map<String, Object>>() {
+				public Map<String, Object> call() throws Exception {
+					return client.providers(query("1467560003"));
+				}
+			}));
+		}
+		awaitCoalesced(4);
+		backend.gate.countDown();
+
+		for (Future<Map<String, Object>> result : results) {
+			try {
+				result.get(10, TimeUnit.SECONDS);
+				fail("Expected the shared failure");
+			}
+			catch (ExecutionException e) {
+				assertSame(backend.failure, e.getCause());
+			}
+		}
+		assertEquals(1, backend.requests.get());
+	}
+
+	private void awaitCoalesced(long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (connector.getCoalescedCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(count, connector.getCoalescedCount());
+	}
+
+	private static Map<String, Object> query(String npi) {
+		Map<String, Object> query = new HashMap<String, Object>();
+		query.put("npi", npi);
+		return query;
+	}
+
+	/** Echoes the request parameters back, but only once the gate has been opened. */
+	private static class GatedConnector implements PokitDokExchangeConnector {
+		final AtomicInteger requests = new AtomicInteger();
+		final CountDownLatch gate = new CountDownLatch(1);
+		volatile IOException failure;
+
+		public PokitDokResponse execute(PokitDokRequest request) throws IOException {
+			return execute(request, null);
+		}
+
+		public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor) throws IOException {
+			requests.incrementAndGet();
+			try {
+				gate.await();
+			}
+			catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			if (failure != null) {
+				throw failure;
+			}
+
+			Map<String, Object> body = new JSONObject();
+			body.put("data", new JSONObject(request.getParams()));
+			return new PokitDokResponse(200, null, body);
+		}
+
+		public void connect() {}
+		public void connect(String scopeName) {}
+		public String get(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String get(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+	}
+}
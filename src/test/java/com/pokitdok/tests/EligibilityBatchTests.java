@@ -0,0 +1,186 @@
+package com.pokitdok.tests;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.JSONValue;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class EligibilityBatchTests {
+	private static final String[] TRADING_PARTNERS = { "MOCKPAYER", "aetna", "cigna", "humana" };
+
+	private SlowEligibilityConnector connector;
+	private PokitDok client;
+
+	@Before
+	public void setup() throws Exception {
+		connector = new SlowEligibilityConnector();
+		client = new PokitDok("client_id", "client_secret", connector);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void concurrencyLimitsTest() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		EligibilityBatch batch = new EligibilityBatch(client, 6, 2);
+		batch.run(requests(200).iterator(), listener);
+
+		assertEquals(200, listener.results.size());
+		assertTrue(listener.failures.isEmpty());
+		assertEquals(200, batch.getSubmitted());
+		assertEquals(200, batch.getSucceeded());
+		assertEquals(0, batch.getPending());
+		assertEquals(0, batch.getRunning());
+		assertTrue(connector.maxInFlight.get() <= 6);
+		for (String tradingPartner : TRADING_PARTNERS) {
+			assertTrue(connector.maxInFlightPerPartner.get(tradingPartner).get() <= 2);
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void resultsAreCorrelatedTest() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		new EligibilityBatch(client, 8, 3).run(requests(100).iterator(), listener);
+
+		for (Map.Entry<Map<String, Object>, Map<String, Object>> result : listener.results.entrySet()) {
+			Map<String, Object> data = (Map<String, Object>) result.getValue().get("data");
+			assertEquals(result.getKey().get("member_id"), data.get("member_id"));
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void failuresDoNotStopTheBatchTest() throws Exception {
+		connector.failEvery = 10;
+		RecordingListener listener = new RecordingListener();
+		EligibilityBatch batch = new EligibilityBatch(client, 4, 2);
+		batch.run(requests(100).iterator(), listener);
+
+		assertEquals(90, listener.results.size());
+		assertEquals(10, listener.failures.size());
+		assertEquals(90, batch.getSucceeded());
+		assertEquals(10, batch.getFailed());
+		for (Exception failure : listener.failures.values()) {
+			assertTrue(failure instanceof IOException);
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void requestsAreReadLazilyTest() throws Exception {
+		final int maxPending = 10;
+		final EligibilityBatch[] batch = new EligibilityBatch[1];
+		final AtomicLong maxOutstanding = new AtomicLong();
+		final Iterator<Map<String, Object>> source = requests(100).iterator();
+		Iterator<Map<String, Object>> watched = new Iterator<Map<String, Object>>() {
+			public boolean hasNext() {
+				return source.hasNext();
+			}
+
+			public Map<String, Object> next() {
+				long outstanding = batch[0].getPending() + 1;
+				if (outstanding > maxOutstanding.get()) maxOutstanding.set(outstanding);
+				return source.next();
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		batch[0] = new EligibilityBatch(client, 4, 1, maxPending, null);
+		batch[0].run(watched, new RecordingListener());
+		assertTrue(maxOutstanding.get() <= maxPending);
+	}
+
+	private static List<Map<String, Object>> requests(int count) {
+		List<Map<String, Object>> requests = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < count; i++) {
+			Map<String, Object> request = new HashMap<String, Object>();
+			request.put("member_id", "W" + i);
+			request.put("trading_partner_id", TRADING_PARTNERS[i % TRADING_PARTNERS.length]);
+			requests.add(request);
+		}
+		return requests;
+	}
+
+	private static class RecordingListener implements EligibilityBatch.ResultListener {
+		final Map<Map<String, Object>, Map<String, Object>> results =
+			new ConcurrentHashMap<Map<String, Object>, Map<String, Object>>();
+		final Map<Map<String, Object>, Exception> failures = new ConcurrentHashMap<Map<String, Object>, Exception>();
+
+		public void onResult(Map<String, Object> request, Map<String, Object> response) {
+			results.put(request, response);
+		}
+
+		public void onFailure(Map<String, Object> request, Exception error) {
+			failures.put(request, error);
+		}
+	}
+
+	/** Answers eligibility requests after a short delay, recording how many were in flight at once. */
+	private static class SlowEligibilityConnector implements PokitDokHTTPConnector {
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final ConcurrentMap<String, AtomicInteger> inFlightPerPartner = new ConcurrentHashMap<String, AtomicInteger>();
+		final ConcurrentMap<String, AtomicInteger> maxInFlightPerPartner = new ConcurrentHashMap<String, AtomicInteger>();
+		volatile int failEvery;
+
+		public String post(String url, Map<String, Object> params, Map<String, String> headers, String scope)
+		throws IOException {
+			String tradingPartner = (String) params.get("trading_partner_id");
+			AtomicInteger partnerInFlight = counter(inFlightPerPartner, tradingPartner);
+			raise(maxInFlight, inFlight.incrementAndGet());
+			raise(counter(maxInFlightPerPartner, tradingPartner), partnerInFlight.incrementAndGet());
+			try {
+				Thread.sleep(2);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				partnerInFlight.decrementAndGet();
+				inFlight.decrementAndGet();
+			}
+
+			String memberId = (String) params.get("member_id");
+			if (failEvery > 0 && Integer.parseInt(memberId.substring(1)) % failEvery == 0) {
+				throw new IOException("Connection reset");
+			}
+			Map<String, Object> data = new HashMap<String, Object>();
+			data.put("member_id", memberId);
+			Map<String, Object> response = new HashMap<String, Object>();
+			response.put("data", data);
+			return JSONValue.toJSONString(response);
+		}
+
+		public String post(String url, Map<String, Object> params, Map<String, String> headers) throws IOException {
+			return post(url, params, headers, PokitDok.DEFAULT_SCOPE);
+		}
+
+		public void connect() {}
+		public void connect(String scopeName) {}
+		public String get(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String get(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+
+		private static AtomicInteger counter(ConcurrentMap<String, AtomicInteger> counters, String key) {
+			counters.putIfAbsent(key, new AtomicInteger());
+			return counters.get(key);
+		}
+
+		private static void raise(AtomicInteger max, int value) {
+			int current;
+			while ((current = max.get()) < value && !max.compareAndSet(current, value));
+		}
+	}
+}
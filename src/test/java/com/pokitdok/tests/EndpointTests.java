@@ -0,0 +1,104 @@
+package com.pokitdok.tests;
+
+import java.util.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.apache.http.client.utils.URIBuilder;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class EndpointTests {
+	private static final String API_BASE = "https://platform.pokitdok.com";
+
+	@Test
+	@Category(UnitTests.class)
+	public void expandsTemplatesTest() throws Exception {
+		assertEquals("appointments/ef987691-0a19-447f-814d-f8f3abbf4859",
+			Endpoint.APPOINTMENT.expand("ef987691-0a19-447f-814d-f8f3abbf4859"));
+		assertEquals("pharmacy/network/1912301953", Endpoint.PHARMACY_NETWORK.expand(1912301953L));
+		assertEquals(Arrays.asList("npi"), Endpoint.PHARMACY_NETWORK.getVariables());
+
+		Endpoint nested = Endpoint.compile("schedulers/{scheduler}/slots/{slot}.json");
+		Map<String, Object> values = new HashMap<String, Object>();
+		values.put("slot", 7);
+		values.put("scheduler", "a b");
+		assertEquals("schedulers/a%20b/slots/7.json", nested.expand(values));
+		assertEquals("schedulers/x/slots/y.json", nested.expand("x", "y"));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void encodesValuesAsSinglePathSegmentsTest() throws Exception {
+		assertEquals("identity/..%2Fadmin%3Fx=1%23y", Endpoint.IDENTITY.expand("../admin?x=1#y"));
+		assertEquals("mpc/Zo%C3%AB%F0%9F%98%80", Endpoint.MPC.expand("Zo\u00eb\ud83d\ude00"));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void rejectsMalformedTemplatesAndMissingValuesTest() throws Exception {
+		for (String template : new String[] { "a/{", "a/{}", "a/}", "a/{b{c}}" }) {
+			try {
+				Endpoint.compile(template);
+				fail("Expected " + template + " to be rejected");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		try {
+			Endpoint.APPOINTMENT.expand((Object) null);
+			fail("Expected a null value to be rejected");
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("{uuid}"));
+		}
+		try {
+			Endpoint.APPOINTMENT.expand("a", "b");
+			fail("Expected too many values to be rejected");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void apiUrlEncodesLikeUriBuilderTest() throws Exception {
+		Map<String, Object> params = new LinkedHashMap<String, Object>();
+		params.put("zipcode", "29307");
+		params.put("specialty", "Family Practice");
+		params.put("name", "O'Brien & Sons, \"A+B\" 50%/~*-_.!");
+		params.put("unicode", "Zo\u00eb \u6771\u4eac \ud83d\ude00 \ud800");
+		params.put("first name", "=?&#");
+		params.put("empty", "");
+		params.put("flag", null);
+
+		URIBuilder expected = new URIBuilder(API_BASE + "/api/v4/providers");
+		for (Map.Entry<String, Object> param : params.entrySet()) {
+			expected.addParameter(param.getKey(), (String) param.getValue());
+		}
+		assertEquals(expected.build().toString(), PokitDok.apiUrl(API_BASE, "providers", params));
+		assertEquals(API_BASE + "/api/v4/providers", PokitDok.apiUrl(API_BASE, "providers", null));
+		assertEquals(API_BASE + "/api/v4/providers",
+			PokitDok.apiUrl(API_BASE, "providers", new HashMap<String, Object>()));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void apiUrlAcceptsTypedAndMultiValuedParamsTest() throws Exception {
+		Map<String, Object> params = new LinkedHashMap<String, Object>();
+		params.put("limit", 20);
+		params.put("radius", 2.5);
+		params.put("active", true);
+		params.put("npi", Arrays.asList("1467560003", 1912301953L));
+		params.put("state", new String[] { "SC", "NC" });
+
+		assertEquals(API_BASE + "/api/v4/providers?limit=20&radius=2.5&active=true"
+			+ "&npi=1467560003&npi=1912301953&state=SC&state=NC", PokitDok.apiUrl(API_BASE, "providers", params));
+		assertEquals(API_BASE + "/api/v4/providers?page=2&limit=20",
+			PokitDok.apiUrl(API_BASE, "providers?page=2", Collections.<String, Object>singletonMap("limit", 20)));
+		assertEquals(API_BASE + "/api/v4/appointments/a%2Fb?limit=20",
+			Endpoint.APPOINTMENT.url(API_BASE, Collections.<String, Object>singletonMap("limit", 20), "a/b"));
+	}
+}
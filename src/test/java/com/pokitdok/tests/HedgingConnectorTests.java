@@ -0,0 +1,215 @@
+package com.pokitdok.tests;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class HedgingConnectorTests {
+	private ScriptedConnector backend;
+	private HedgingConnector hedging;
+
+	@Before
+	public void setup() throws Exception {
+		backend = new ScriptedConnector();
+		hedging = new HedgingConnector(backend, 0.9, 0.05);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		hedging.close();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void hedgesSlowRequestsTest() throws Exception {
+		warmUp("providers");
+		backend.script(500, 1);
+
+		long start = System.currentTimeMillis();
+		assertEquals(200, hedging.execute(get("providers")).getStatus());
+		assertTrue(System.currentTimeMillis() - start < 400);
+		assertEquals(1, hedging.getHedgeCount());
+		assertEquals(1, hedging.getHedgeWinCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void usesOtherResponseWhenFirstFailsTest() throws Exception {
+		warmUp("mpc/");
+		backend.script(-50, 150);
+		assertEquals(200, hedging.execute(get("mpc/")).getStatus());
+		assertEquals(1, hedging.getHedgeWinCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void onlyHedgesConfiguredGetsTest() throws Exception {
+		warmUp("eligibility/");
+		backend.script(100);
+		hedging.execute(get("eligibility/"));
+
+		hedging.setHedged("providers", false);
+		warmUp("providers");
+		backend.script(100);
+		hedging.execute(get("providers"));
+
+		assertEquals(0, hedging.getHedgeCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void hedgeBudgetLimitsExtraLoadTest() throws Exception {
+		hedging.close();
+		hedging = new HedgingConnector(backend, 0.9, 0);
+		warmUp("providers");
+		for (int i = 0; i < HedgingConnector.BUDGET_RESERVE + 2; i++) {
+			backend.script(20, 20);
+			hedging.execute(get("providers"));
+		}
+		assertEquals(HedgingConnector.BUDGET_RESERVE, hedging.getHedgeCount());
+		assertEquals(2, hedging.getBudgetExhaustedCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void abortsLosingRequestTest() throws Exception {
+		final Queue<Long> delays = new ConcurrentLinkedQueue<Long>();
+		TapeReplayServer server = new TapeReplayServer("trading_partners_index");
+		server.setLatency(new TapeReplayServer.Latency() {
+			public long nextDelay(Random random) {
+				Long delay = delays.poll();
+				return (delay == null ? 1 : delay) * 1000;
+			}
+		});
+		server.start();
+		ApacheHTTPConnector connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase());
+		HedgingConnector hedged = new HedgingConnector(connector, 0.9, 0.05);
+		try {
+			for (int i = 0; i < HedgingConnector.MINIMUM_SAMPLES; i++) {
+				hedged.execute(get("tradingpartners/"));
+			}
+			delays.add(5000L);
+			long start = System.currentTimeMillis();
+			assertEquals(200, hedged.execute(get("tradingpartners/")).getStatus());
+			assertTrue(System.currentTimeMillis() - start < 2000);
+			assertEquals(1, hedged.getHedgeWinCount());
+
+			/* The losing request's connection is closed, not held until its response in 5s. */
+			long deadline = System.currentTimeMillis() + 1000;
+			while (connector.getPoolStats().getLeased() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, connector.getPoolStats().getLeased());
+		}
+		finally {
+			hedged.close();
+			server.stop();
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void capsHedgingThreadsTest() throws Exception {
+		hedging.close();
+		hedging = new HedgingConnector(backend, 0.9, 0.05, 2);
+		warmUp("providers");
+		backend.callerThreads.set(0);
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<PokitDokResponse>> responses = new ArrayList<Future<PokitDokResponse>>();
+			for (int i = 0; i < 80; i++) {
+				responses.add(callers.submit(new Callable<PokitDokResponse>() {
+					public PokitDokResponse call() throws Exception {
+						return hedging.execute(get("providers"));
+					}
+				}));
+			}
+			for (Future<PokitDokResponse> response : responses) {
+				assertEquals(200, response.get().getStatus());
+			}
+		}
+		finally {
+			callers.shutdown();
+		}
+		assertTrue(backend.maxHedgingThreads.get() <= 2);
+		assertTrue(backend.callerThreads.get() > 0);
+	}
+
+	private void warmUp(String endpoint) throws Exception {
+		for (int i = 0; i < HedgingConnector.MINIMUM_SAMPLES; i++) {
+			hedging.execute(get(endpoint));
+		}
+	}
+
+	private static PokitDokRequest get(String endpoint) {
+		return new PokitDokRequest(PokitDokRequest.GET, endpoint, null, null, PokitDok.DEFAULT_SCOPE);
+	}
+
+	/**
+		Answers each request after the next scripted delay in milliseconds, failing after it
+		if the delay is negative. Unscripted requests answer after 1ms.
+	*/
+	private static class ScriptedConnector implements PokitDokExchangeConnector {
+		private final Queue<Integer> script = new ConcurrentLinkedQueue<Integer>();
+		private final AtomicInteger hedgingThreads = new AtomicInteger();
+		final AtomicInteger maxHedgingThreads = new AtomicInteger();
+		final AtomicInteger callerThreads = new AtomicInteger();
+
+		void script(Integer... delays) {
+			script.clear();
+			script.addAll(Arrays.asList(delays));
+		}
+
+		public PokitDokResponse execute(PokitDokRequest request) throws IOException {
+			return execute(request, null);
+		}
+
+		public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor) throws IOException {
+			Integer delay = script.poll();
+			boolean pooled = Thread.currentThread().getName().startsWith("pokitdok-hedge");
+			if (pooled) {
+				int active = hedgingThreads.incrementAndGet();
+				while (active > maxHedgingThreads.get()) {
+					maxHedgingThreads.compareAndSet(maxHedgingThreads.get(), active);
+				}
+			}
+			else {
+				callerThreads.incrementAndGet();
+			}
+			try {
+				Thread.sleep(Math.abs(delay == null ? 1 : delay));
+			}
+			catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			finally {
+				if (pooled) {
+					hedgingThreads.decrementAndGet();
+				}
+			}
+			if (delay != null && delay < 0) {
+				throw new IOException("Connection reset");
+			}
+			return new PokitDokResponse(200, null, new JSONObject());
+		}
+
+		public void connect() {}
+		public void connect(String scopeName) {}
+		public String get(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String get(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+	}
+}
@@ -0,0 +1,104 @@
+package com.pokitdok.tests;
+
+import java.io.*;
+import java.util.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class InMemoryMetricsTests {
+	private PokitDokStubServer server;
+	private InMemoryMetrics metrics;
+	private ApacheHTTPConnector connector;
+
+	@Before
+	public void setup() throws Exception {
+		server = new PokitDokStubServer();
+		server.start();
+		metrics = new InMemoryMetrics();
+		ConnectorSettings settings = new ConnectorSettings();
+		settings.setMetricsListener(metrics);
+		connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		connector.close();
+		server.stop();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void histogramPercentilesTest() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long millis = 1; millis <= 1000; millis++) {
+			histogram.record(millis * 1000000);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000000L, histogram.getMax());
+		assertWithinPrecision(500000000L, histogram.getP50());
+		assertWithinPrecision(990000000L, histogram.getP99());
+		assertWithinPrecision(999000000L, histogram.getP999());
+		assertEquals(500500000.0, histogram.getMean(), 1);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void histogramSnapshotIsFrozenTest() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(5);
+		LatencyHistogram snapshot = histogram.snapshot();
+		histogram.record(10);
+
+		assertEquals(1, snapshot.getCount());
+		assertEquals(5, snapshot.getP999());
+		assertEquals(2, histogram.getCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void recordsConnectorTrafficTest() throws Exception {
+		PokitDok client = new PokitDok("client_id", "client_secret", connector);
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("member_id", "W000000000");
+		for (int i = 0; i < 5; i++) {
+			client.eligibility(params);
+		}
+		client.activities(new HashMap<String, Object>());
+
+		InMemoryMetrics.EndpointMetrics eligibility = metrics.getEndpointMetrics("eligibility/", PokitDok.DEFAULT_SCOPE);
+		assertEquals(5, eligibility.getResponseCount());
+		assertEquals(Long.valueOf(5), eligibility.getStatusCounts().get(200));
+		assertTrue(eligibility.getBytesSent() >= 5 * "{\"member_id\":\"W000000000\"}".length());
+		assertTrue(eligibility.getBytesReceived() > 0);
+		assertTrue(eligibility.getLatency().getP50() > 0);
+
+		assertEquals(1, metrics.getEndpointMetrics("activities/", PokitDok.DEFAULT_SCOPE).getResponseCount());
+		assertEquals(1, metrics.getTokenRefreshCount(PokitDok.DEFAULT_SCOPE));
+		assertTrue(metrics.report().contains("eligibility default: count=5"));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void groupsIdentifiersAndRecordsFailuresTest() throws Exception {
+		PokitDokRequest first = new PokitDokRequest(PokitDokRequest.GET, "activities/5362b5a064da150ef6f2526c", null, null, null);
+		PokitDokRequest second = new PokitDokRequest(PokitDokRequest.GET, "activities/5362b5a064da150ef6f2526d", null, null, null);
+		metrics.onResponse(first, 200, 1000, 0, 10);
+		metrics.onFailure(second, new IOException("Connection reset"), 1000);
+		metrics.onRetry(second, 2);
+
+		InMemoryMetrics.EndpointMetrics activities = metrics.getEndpointMetrics("activities", PokitDok.DEFAULT_SCOPE);
+		assertEquals(1, activities.getResponseCount());
+		assertEquals(1, activities.getFailureCount());
+		assertEquals(1, activities.getRetryCount());
+		assertEquals(1, metrics.getAllEndpointMetrics().size());
+	}
+
+	private static void assertWithinPrecision(long expected, long actual) {
+		assertEquals(expected, actual, expected / 64.0);
+	}
+}
@@ -0,0 +1,148 @@
+package com.pokitdok.tests;
+
+import java.io.*;
+import java.util.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.*;
+import org.json.simple.parser.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class JSONCodecTests {
+	private final JSONCodec simple = new SimpleJSONCodec();
+	private final JSONCodec fast = new FastJSONCodec();
+
+	private static Map<String, Object> decode(JSONCodec codec, String json, DataVisitor visitor) throws Exception {
+		return codec.decode(new StringReader(json), visitor);
+	}
+
+	private static String encode(JSONCodec codec, Object value) throws Exception {
+		StringWriter writer = new StringWriter();
+		codec.encode(value, writer);
+		return writer.toString();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void decodesRecordedResponsesLikeJsonSimpleTest() throws Exception {
+		int decoded = 0;
+		for (String name : BetamaxTape.names()) {
+			for (BetamaxTape.Interaction interaction : BetamaxTape.load(name).getInteractions()) {
+				String body = interaction.responseBody;
+				if (body == null || !body.trim().startsWith("{")) {
+					continue;
+				}
+				Map<String, Object> expected = decode(simple, body, null);
+				Map<String, Object> actual = decode(fast, body, null);
+				assertEquals(name + " " + interaction.uri, expected, actual);
+				assertTrue(actual instanceof JSONObject);
+				decoded++;
+			}
+		}
+		assertTrue(decoded > 0);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void decodesValuesToTheSameTypesTest() throws Exception {
+		String json = "{\"a\": [1, -2, 9223372036854775807, 1.5, -2e3, 0.25E-1],"
+			+ " \"b\": {\"t\": true, \"f\": false, \"n\": null}, \"s\": \"tab\\there \\u00e9\\ud83d\\ude00 \\/ \\\"q\\\"\"}";
+		Map<String, Object> expected = decode(simple, json, null);
+		Map<String, Object> actual = decode(fast, json, null);
+
+		assertEquals(expected, actual);
+		assertTrue(actual.get("a") instanceof JSONArray);
+		assertTrue(actual.get("b") instanceof JSONObject);
+		List<Object> numbers = (List<Object>) actual.get("a");
+		List<Object> expectedNumbers = (List<Object>) expected.get("a");
+		for (int i = 0; i < numbers.size(); i++) {
+			assertEquals(expectedNumbers.get(i).getClass(), numbers.get(i).getClass());
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void visitsDataElementsLikeJsonSimpleTest() throws Exception {
+		String body = BetamaxTape.load("providers").getApiInteractions().get(0).responseBody;
+		final List<Object> expectedElements = new ArrayList<Object>();
+		final List<Object> actualElements = new ArrayList<Object>();
+
+		Map<String, Object> expected = decode(simple, body, new DataVisitor() {
+			public void visit(Object element) {
+				expectedElements.add(element);
+			}
+		});
+		Map<String, Object> actual = decode(fast, body, new DataVisitor() {
+			public void visit(Object element) {
+				actualElements.add(element);
+			}
+		});
+
+		assertFalse(actualElements.isEmpty());
+		assertEquals(expectedElements, actualElements);
+		assertEquals(expected, actual);
+		assertTrue(((List<Object>) actual.get("data")).isEmpty());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void encodesWhatJsonSimpleDecodesBackTest() throws Exception {
+		Map<String, Object> params = (JSONObject) new JSONParser().parse(
+			new InputStreamReader(getClass().getClassLoader().getResourceAsStream("claim.json"), "UTF-8"));
+		Map<String, Object> nested = new LinkedHashMap<String, Object>();
+		nested.put("escapes", "\"quoted\" back\\slash /slash\n\r\t\b\f \u0001 \u2028\u2029");
+		nested.put("unicode", "Zo\u00eb \u00c5ngstr\u00f6m \u6771\u4eac \ud83d\ude00");
+		nested.put("numbers", Arrays.asList(1L, -2L, 1.5, Double.NaN, null, true));
+		params.put("nested", nested);
+
+		Object decoded = JSONValue.parseWithException(encode(fast, params));
+		Object expected = JSONValue.parseWithException(encode(simple, params));
+		assertEquals(expected, decoded);
+		assertTrue(encode(fast, nested).contains("\\u2028\\u2029"));
+		assertEquals("[\"a\",1]", encode(fast, new Object[] { "a", 1 }));
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void rejectsMalformedDocumentsTest() throws Exception {
+		String[] malformed = { "", "[1, 2]", "{", "{\"a\" 1}", "{\"a\": 1,}", "{\"a\": [1 2]}", "{\"a\": tru}",
+			"{\"a\": \"unterminated}", "{\"a\": \"\\x\"}", "{\"a\": 01x}", "{\"a\": 1} {}", "{\"a\": -}" };
+		for (String json : malformed) {
+			try {
+				decode(fast, json, null);
+				fail("Expected a ParseException for " + json);
+			}
+			catch (ParseException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void connectorUsesTheConfiguredCodecTest() throws Exception {
+		PokitDokStubServer server = new PokitDokStubServer();
+		server.start();
+		ConnectorSettings settings = new ConnectorSettings();
+		settings.setJSONCodec(fast);
+		ApacheHTTPConnector connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings);
+		try {
+			Map<String, Object> params = new HashMap<String, Object>();
+			params.put("member", "Zo\u00eb \ud83d\ude00");
+			PokitDokResponse response = connector.execute(
+				new PokitDokRequest(PokitDokRequest.POST, "eligibility/", params, null, null));
+
+			assertEquals(200, response.getStatus());
+			assertTrue(response.getBody() instanceof JSONObject);
+			Map<String, Object> data = (Map<String, Object>) response.getBody().get("data");
+			assertEquals(params, data.get("params"));
+		}
+		finally {
+			connector.close();
+			server.stop();
+		}
+	}
+}
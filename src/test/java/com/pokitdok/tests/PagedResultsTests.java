@@ -0,0 +1,142 @@
+package com.pokitdok.tests;
+
+import java.util.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class PagedResultsTests {
+	private PokitDokStubServer server;
+	private PokitDok client;
+
+	@Before
+	public void setup() throws Exception {
+		server = new PokitDokStubServer();
+		server.start();
+		client = new PokitDok("client_id", "client_secret", new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase()));
+	}
+
+	@After
+	public void teardown() throws Exception {
+		client.close();
+		server.stop();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void iteratesAcrossPagesTest() throws Exception {
+		int index = 0;
+		for (Map<String, Object> provider : client.iterateProviders(query(95, 20))) {
+			assertEquals((long) index++, provider.get("index"));
+			assertEquals("providers", provider.get("endpoint"));
+		}
+		assertEquals(95, index);
+		assertEquals(5, server.getPageRequests());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void fetchesLazilyAndStopsEarlyTest() throws Exception {
+		PagedResults results = client.iterateActivities(query(100, 10));
+		assertEquals(0, server.getPageRequests());
+
+		PagedResults.PageIterator activities = results.iterator();
+		for (int i = 0; i < 15; i++) {
+			activities.next();
+		}
+		activities.close();
+		assertFalse(activities.hasNext());
+
+		/* The first two pages, plus at most the prefetch of the third. */
+		Thread.sleep(100);
+		assertTrue(server.getPageRequests() <= 3);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void singlePageTest() throws Exception {
+		Map<String, Object> query = new HashMap<String, Object>();
+		query.put("results", "3");
+		int count = 0;
+		for (Map<String, Object> identity : client.iterateIdentities(query)) {
+			count++;
+		}
+		assertEquals(3, count);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void scopeIsKeptAcrossPagesTest() throws Exception {
+		int count = 0;
+		for (Map<String, Object> appointment : client.iterateAppointments(query(7, 3))) {
+			assertEquals("appointments/", appointment.get("endpoint"));
+			count++;
+		}
+		assertEquals(7, count);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void repeatedParamsAreKeptAcrossPagesTest() throws Exception {
+		Map<String, Object> query = query(10, 4);
+		query.put("specialty", Arrays.asList("Cardiology", "Oncology"));
+		int count = 0;
+		for (Map<String, Object> provider : client.iterateProviders(query)) {
+			Map<String, Object> params = (Map<String, Object>) provider.get("params");
+			assertEquals(Arrays.asList("Cardiology", "Oncology"), params.get("specialty"));
+			count++;
+		}
+		assertEquals(10, count);
+		assertEquals(3, server.getPageRequests());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void closeAbortsThePrefetchTest() throws Exception {
+		ApacheHTTPConnector connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase());
+		try {
+			server.setPageDelay(5000);
+			PagedResults.PageIterator providers = new PokitDok("client_id", "client_secret", connector)
+				.iterateProviders(query(20, 5)).iterator();
+			providers.next();
+			long deadline = System.currentTimeMillis() + 1000;
+			while (server.getPageRequests() < 2 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, connector.getPoolStats().getLeased());
+			providers.close();
+
+			/* The prefetch's connection is closed, not held until its page arrives in 5s. */
+			deadline = System.currentTimeMillis() + 1000;
+			while (connector.getPoolStats().getLeased() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, connector.getPoolStats().getLeased());
+		}
+		finally {
+			connector.close();
+		}
+	}
+
+	@Test(expected = PageFetchException.class)
+	@Category(UnitTests.class)
+	public void failuresSurfaceFromTheIteratorTest() throws Exception {
+		Iterator<Map<String, Object>> results = client.iteratePharmacyNetwork(query(50, 5)).iterator();
+		results.next();
+		server.stop();
+		while (results.hasNext()) {
+			results.next();
+		}
+	}
+
+	private static Map<String, Object> query(int results, int limit) {
+		Map<String, Object> query = new HashMap<String, Object>();
+		query.put("results", String.valueOf(results));
+		query.put("limit", String.valueOf(limit));
+		return query;
+	}
+}
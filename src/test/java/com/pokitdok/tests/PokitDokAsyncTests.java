@@ -0,0 +1,145 @@
+package com.pokitdok.tests;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.apache.http.concurrent.FutureCallback;
+import org.json.simple.parser.ParseException;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class PokitDokAsyncTests {
+	private PokitDokStubServer server;
+	private PokitDokAsync client;
+
+	@Before
+	public void setup() throws Exception {
+		server = new PokitDokStubServer();
+		server.start();
+
+		ConnectorSettings settings = new ConnectorSettings();
+		settings.setMaxConnectionsPerRoute(8);
+		client = new PokitDokAsync(new AsyncApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings));
+	}
+
+	@After
+	public void teardown() throws Exception {
+		client.close();
+		server.stop();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void manyRequestsInFlightTest() throws Exception {
+		final int requests = 500;
+		final CountDownLatch done = new CountDownLatch(requests);
+		final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+		List<Future<Map<String, Object>>> results = new ArrayList<Future<Map<String, Object>>>();
+
+		/* Issued from a single thread; nothing blocks until every request is on its way. */
+		for (int i = 0; i < requests; i++) {
+			Map<String, Object> params = new HashMap<String, Object>();
+			params.put("npi", String.valueOf(i));
+			results.add(client.providers(params, new FutureCallback<Map<String, Object>>() {
+				public void completed(Map<String, Object> result) {
+					done.countDown();
+				}
+				public void failed(Exception e) {
+					failures.add(e);
+					done.countDown();
+				}
+				public void cancelled() {
+					done.countDown();
+				}
+			}));
+		}
+
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertTrue(failures.toString(), failures.isEmpty());
+		for (int i = 0; i < requests; i++) {
+			Map<String, Object> data = (Map<String, Object>) results.get(i).get().get("data");
+			assertEquals(String.valueOf(i), ((Map) data.get("params")).get("npi"));
+		}
+		assertEquals(1, server.getTokenRequests());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void recoversFromTokenExpiryTest() throws Exception {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("trading_partner_id", "MOCKPAYER");
+		assertNotNull(client.eligibility(params, null).get(10, TimeUnit.SECONDS));
+
+		server.expireTokens();
+		Map<String, Object> data = (Map<String, Object>) client.eligibility(params, null)
+			.get(10, TimeUnit.SECONDS).get("data");
+
+		assertEquals("eligibility/", data.get("endpoint"));
+		assertEquals(2, server.getTokenRequests());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void largeRequestBodiesAreCompressedTest() throws Exception {
+		ConnectorSettings settings = new ConnectorSettings();
+		settings.setRequestCompressionThreshold(1024);
+		PokitDokAsync compressing = new PokitDokAsync(new AsyncApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings));
+		try {
+			Map<String, Object> small = new HashMap<String, Object>();
+			small.put("member", "Zo\u00eb");
+			Map<String, Object> large = new HashMap<String, Object>();
+			List<Object> lines = new ArrayList<Object>();
+			for (int i = 0; i < 200; i++) {
+				Map<String, Object> line = new HashMap<String, Object>();
+				line.put("procedure_code", "99213");
+				line.put("charge_amount", "60.0");
+				lines.add(line);
+			}
+			large.put("service_lines", lines);
+
+			Map<String, Object> data = (Map<String, Object>) compressing.claims(large, null)
+				.get(10, TimeUnit.SECONDS).get("data");
+			assertEquals(large, data.get("params"));
+			assertEquals(1, server.getCompressedRequests());
+
+			data = (Map<String, Object>) compressing.eligibility(small, null).get(10, TimeUnit.SECONDS).get("data");
+			assertEquals(small, data.get("params"));
+			assertEquals(1, server.getCompressedRequests());
+		}
+		finally {
+			compressing.close();
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void decodesWithConfiguredCodecTest() throws Exception {
+		final AtomicInteger decoded = new AtomicInteger();
+		ConnectorSettings settings = new ConnectorSettings();
+		settings.setJSONCodec(new SimpleJSONCodec() {
+			public Map<String, Object> decode(Reader reader, DataVisitor visitor) throws IOException, ParseException {
+				decoded.incrementAndGet();
+				return super.decode(reader, visitor);
+			}
+		});
+		PokitDokAsync codecClient = new PokitDokAsync(new AsyncApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings));
+		try {
+			Map<String, Object> data = (Map<String, Object>) codecClient.activities(null, null)
+				.get(10, TimeUnit.SECONDS).get("data");
+			assertEquals("activities", data.get("endpoint"));
+
+			/* The token response and the API response. */
+			assertEquals(2, decoded.get());
+		}
+		finally {
+			codecClient.close();
+		}
+	}
+}
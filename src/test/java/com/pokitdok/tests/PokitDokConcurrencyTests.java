@@ -0,0 +1,135 @@
+package com.pokitdok.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+/**
+ * Hammers a single shared client from many threads against a {@link PokitDokStubServer}, and
+ * checks that every caller gets back the response to its own request.
+ */
+public class PokitDokConcurrencyTests {
+	private static final int THREADS = 32;
+	private static final int CALLS_PER_THREAD = 30;
+
+	private PokitDokStubServer server;
+	private ApacheHTTPConnector connector;
+	private PokitDok client;
+
+	@Before
+	public void setup() throws Exception {
+		server = new PokitDokStubServer();
+		server.start();
+
+		ConnectorSettings settings = new ConnectorSettings();
+		settings.setMaxConnectionsPerRoute(THREADS / 2);
+		connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings);
+		client = new PokitDok("client_id", "client_secret", connector);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		client.close();
+		server.stop();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void sharedClientTest() throws Exception {
+		List<Throwable> failures = hammer(new Runnable() {
+			public void run() {}
+		});
+
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertEquals(THREADS * CALLS_PER_THREAD, server.getApiRequests());
+		assertEquals(1, server.getTokenRequests());
+		assertEquals(0, connector.getPoolStats().getLeased());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void sharedClientRecoversFromTokenExpiryTest() throws Exception {
+		List<Throwable> failures = hammer(new Runnable() {
+			public void run() {
+				server.expireTokens();
+			}
+		});
+
+		assertTrue(failures.toString(), failures.isEmpty());
+		/* One token up front, then one shared refresh after the expiry. */
+		assertEquals(2, server.getTokenRequests());
+	}
+
+	/**
+	 * Runs eligibility, claims and providers calls from every thread at once, with a unique
+	 * identifier in each request, and collects any call whose response doesn't echo it.
+	 * The midway action is run once, by one thread, halfway through its calls.
+	 */
+	private List<Throwable> hammer(final Runnable midway) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+		ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			workers.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					start.await();
+					for (int i = 0; i < CALLS_PER_THREAD; i++) {
+						if (thread == 0 && i == CALLS_PER_THREAD / 2) {
+							midway.run();
+						}
+						try {
+							callEndpoint(thread + "-" + i, i % 3);
+						}
+						catch (Throwable e) {
+							failures.add(e);
+						}
+					}
+					return null;
+				}
+			});
+		}
+
+		start.countDown();
+		workers.shutdown();
+		assertTrue(workers.awaitTermination(60, TimeUnit.SECONDS));
+		return failures;
+	}
+
+	private void callEndpoint(String id, int endpoint) throws Exception {
+		Map<String, Object> params = new HashMap<String, Object>();
+		Map<String, Object> echoed;
+
+		switch (endpoint) {
+			case 0:
+				Map<String, Object> member = new HashMap<String, Object>();
+				member.put("id", id);
+				params.put("member", member);
+				params.put("trading_partner_id", "MOCKPAYER");
+				echoed = echoedParams(client.eligibility(params), "eligibility/");
+				assertEquals(id, ((Map) echoed.get("member")).get("id"));
+				break;
+			case 1:
+				params.put("claim_id", id);
+				echoed = echoedParams(client.claims(params), "claims/");
+				assertEquals(id, echoed.get("claim_id"));
+				break;
+			default:
+				params.put("npi", id);
+				echoed = echoedParams(client.providers(params), "providers");
+				assertEquals(id, echoed.get("npi"));
+		}
+	}
+
+	private Map<String, Object> echoedParams(Map<String, Object> response, String endpoint) {
+		Map<String, Object> data = (Map<String, Object>) response.get("data");
+		assertEquals(endpoint, data.get("endpoint"));
+		return (Map<String, Object>) data.get("params");
+	}
+}
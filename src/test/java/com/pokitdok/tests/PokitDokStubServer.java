@@ -0,0 +1,265 @@
+package com.pokitdok.tests;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+import com.sun.net.httpserver.*;
+import org.apache.commons.io.IOUtils;
+import org.json.simple.*;
+
+/**
+ * A minimal in-process stand-in for the PokitDok platform, used to exercise the real
+ * connector without network access.
+ *
+ * It issues bearer tokens from /oauth2/token, rejects API calls carrying any other token with
+ * a 401 "Unauthorized" response, and answers every /api/v4/ call by echoing the request back:
+ * the endpoint, the HTTP method and the query or body parameters end up under "data". A
+ * "results" parameter turns "data" into a list of that many copies of the echo, and a "limit"
+ * parameter then splits that list into pages linked through "meta.next". Repeated query
+ * parameters are echoed as a list.
+ *
+ * Gzip-compressed request bodies are accepted, and API responses can be compressed with gzip or
+ * deflate for clients that accept it.
+ */
+public class PokitDokStubServer {
+	static {
+		/* Without this, small responses are held back by Nagle's algorithm for ~40ms each. */
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final AtomicInteger tokenRequests = new AtomicInteger();
+	private final AtomicInteger apiRequests = new AtomicInteger();
+	private final AtomicInteger pageRequests = new AtomicInteger();
+	private final AtomicInteger compressedRequests = new AtomicInteger();
+	private final AtomicInteger compressedResponses = new AtomicInteger();
+	private volatile String responseEncoding;
+	private volatile long pageDelay;
+	private final AtomicInteger tokenGeneration = new AtomicInteger();
+	private volatile String validToken;
+
+	public PokitDokStubServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+		server.createContext("/oauth2/token", new TokenHandler());
+		server.createContext("/api/v4/", new EchoHandler());
+		executor = Executors.newFixedThreadPool(64);
+		server.setExecutor(executor);
+		expireTokens();
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public String getApiBase() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/** Invalidates every token handed out so far, as if they had all timed out. */
+	public void expireTokens() {
+		validToken = "stub-token-" + tokenGeneration.incrementAndGet();
+	}
+
+	public int getTokenRequests() {
+		return tokenRequests.get();
+	}
+
+	public int getApiRequests() {
+		return apiRequests.get();
+	}
+
+	public int getPageRequests() {
+		return pageRequests.get();
+	}
+
+	/** Returns the number of API requests whose body was gzip-compressed. */
+	public int getCompressedRequests() {
+		return compressedRequests.get();
+	}
+
+	/** Returns the number of API responses sent compressed. */
+	public int getCompressedResponses() {
+		return compressedResponses.get();
+	}
+
+	/**
+	 * Compresses API responses to clients whose Accept-Encoding allows it.
+	 *
+	 * @param encoding "gzip", "deflate", or null to never compress
+	 */
+	public void setResponseEncoding(String encoding) {
+		responseEncoding = encoding;
+	}
+
+	/**
+	 * Holds back every page after the first by the given time.
+	 *
+	 * @param millis the delay in milliseconds
+	 */
+	public void setPageDelay(long millis) {
+		pageDelay = millis;
+	}
+
+	private static void respond(HttpExchange exchange, int status, Object body) throws IOException {
+		respond(exchange, status, body, null);
+	}
+
+	private static void respond(HttpExchange exchange, int status, Object body, String encoding) throws IOException {
+		byte[] bytes = JSONValue.toJSONString(body).getBytes("UTF-8");
+		if (encoding != null) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			OutputStream out = encoding.equals("gzip") ? new GZIPOutputStream(compressed)
+				: new DeflaterOutputStream(compressed);
+			out.write(bytes);
+			out.close();
+			bytes = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", encoding);
+		}
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private class TokenHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			tokenRequests.incrementAndGet();
+			IOUtils.toByteArray(exchange.getRequestBody());
+
+			Map<String, Object> token = new HashMap<String, Object>();
+			token.put("access_token", validToken);
+			token.put("token_type", "bearer");
+			token.put("expires_in", 3600L);
+			token.put("expires", System.currentTimeMillis() / 1000 + 3600L);
+			respond(exchange, 200, token);
+		}
+	}
+
+	private class EchoHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			apiRequests.incrementAndGet();
+			InputStream in = exchange.getRequestBody();
+			if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+				compressedRequests.incrementAndGet();
+				in = new GZIPInputStream(in);
+			}
+			String body = IOUtils.toString(in, "UTF-8");
+
+			if (!("Bearer " + validToken).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+				Map<String, Object> unauthorized = new HashMap<String, Object>();
+				unauthorized.put("message", "Unauthorized");
+				respond(exchange, 401, unauthorized);
+				return;
+			}
+
+			Map<String, Object> params = body.length() > 0 ? (Map<String, Object>) JSONValue.parse(body)
+				: queryParams(exchange.getRequestURI());
+			Map<String, Object> data = new HashMap<String, Object>();
+			data.put("endpoint", exchange.getRequestURI().getPath().substring("/api/v4/".length()));
+			data.put("method", exchange.getRequestMethod());
+			data.put("params", params);
+
+			Map<String, Object> meta = new HashMap<String, Object>();
+			meta.put("application_mode", "test");
+
+			Map<String, Object> response = new HashMap<String, Object>();
+			response.put("meta", meta);
+			response.put("data", params.containsKey("results") ? results(data, params.get("results")) : data);
+			if (params.containsKey("limit")) {
+				paginate(exchange.getRequestURI(), params, response);
+			}
+			String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			String encoding = responseEncoding;
+			if (encoding != null && accepted != null && accepted.contains(encoding)) {
+				compressedResponses.incrementAndGet();
+				respond(exchange, 200, response, encoding);
+			}
+			else {
+				respond(exchange, 200, response);
+			}
+		}
+
+		/* A "limit" parameter cuts the results into pages, linked through meta.next like the platform does. */
+		private void paginate(URI uri, Map<String, Object> params, Map<String, Object> response)
+		throws IOException {
+			pageRequests.incrementAndGet();
+			if (pageDelay > 0 && params.containsKey("offset")) {
+				try {
+					Thread.sleep(pageDelay);
+				}
+				catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			List<Object> results = (List<Object>) response.get("data");
+			int limit = Integer.parseInt(params.get("limit").toString());
+			int offset = params.containsKey("offset") ? Integer.parseInt(params.get("offset").toString()) : 0;
+			response.put("data", new ArrayList<Object>(results.subList(Math.min(offset, results.size()),
+				Math.min(offset + limit, results.size()))));
+
+			if (offset + limit < results.size()) {
+				StringBuilder next = new StringBuilder(getApiBase()).append(uri.getPath()).append("?offset=")
+					.append(offset + limit);
+				for (Map.Entry<String, Object> param : params.entrySet()) {
+					if (param.getKey().equals("offset")) {
+						continue;
+					}
+					List<?> values = (param.getValue() instanceof List) ? (List<?>) param.getValue()
+						: Collections.singletonList(param.getValue());
+					for (Object value : values) {
+						next.append('&').append(URLEncoder.encode(param.getKey(), "UTF-8")).append('=')
+							.append(URLEncoder.encode(value.toString(), "UTF-8"));
+					}
+				}
+				((Map<String, Object>) response.get("meta")).put("next", next.toString());
+			}
+		}
+
+		/* A "results" parameter asks for a list of that many numbered copies of the echo. */
+		private List<Object> results(Map<String, Object> echo, Object count) {
+			List<Object> results = new ArrayList<Object>();
+			for (int i = 0; i < Integer.parseInt(count.toString()); i++) {
+				Map<String, Object> result = new HashMap<String, Object>(echo);
+				result.put("index", (long) i);
+				results.add(result);
+			}
+			return results;
+		}
+
+		private Map<String, Object> queryParams(URI uri) throws UnsupportedEncodingException {
+			Map<String, Object> params = new HashMap<String, Object>();
+			if (uri.getRawQuery() != null) {
+				for (String pair : uri.getRawQuery().split("&")) {
+					int split = pair.indexOf('=');
+					String name = URLDecoder.decode(pair.substring(0, split), "UTF-8");
+					String value = URLDecoder.decode(pair.substring(split + 1), "UTF-8");
+					Object previous = params.get(name);
+					if (previous instanceof List) {
+						((List<Object>) previous).add(value);
+					}
+					else if (previous != null) {
+						params.put(name, new ArrayList<Object>(Arrays.asList(previous, value)));
+					}
+					else {
+						params.put(name, value);
+					}
+				}
+			}
+			return params;
+		}
+	}
+}
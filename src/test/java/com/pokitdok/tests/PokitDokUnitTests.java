@@ -36,6 +36,17 @@ public class PokitDokUnitTests {
 		assertNotNull(client);
 	}
 
+	@Test
+	@Category(UnitTests.class)
+	public void closeReleasesConnectorTest() throws Exception {
+		PokitDokHTTPConnector closeableConnector = mock(PokitDokHTTPConnector.class,
+			withSettings().extraInterfaces(Closeable.class));
+		PokitDok closeableClient = new PokitDok("client_id", "client_secret", closeableConnector);
+		closeableClient.close();
+
+		verify((Closeable) closeableConnector).close();
+	}
+
 	/* Utility API tests. */
 
 	@Test
@@ -0,0 +1,166 @@
+package com.pokitdok.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class RateLimitingConnectorTests {
+	private ScriptedConnector backend;
+	private RateLimitingConnector limiter;
+	private PokitDok client;
+
+	@Before
+	public void setup() throws Exception {
+		backend = new ScriptedConnector();
+		limiter = new RateLimitingConnector(backend);
+		client = new PokitDok("client_id", "client_secret", limiter);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void pacesRequestsTest() throws Exception {
+		limiter.setRateLimit("eligibility/", 50, 5);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 30; i++) {
+			client.eligibility(new HashMap<String, Object>());
+		}
+		long elapsed = System.currentTimeMillis() - start;
+
+		/* 5 requests from the burst, then 25 more at 50 per second. */
+		assertTrue("took " + elapsed + "ms", elapsed >= 450 && elapsed < 2000);
+		assertEquals(25, limiter.getDelayedCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void unlimitedEndpointsAreNotPacedTest() throws Exception {
+		limiter.setRateLimit("eligibility/", 1, 1);
+		for (int i = 0; i < 50; i++) {
+			client.providers(new HashMap<String, Object>());
+		}
+		assertEquals(0, limiter.getDelayedCount());
+		assertEquals(0, limiter.getCurrentRate("providers", PokitDok.DEFAULT_SCOPE), 0);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void scopesHaveSeparateBucketsTest() throws Exception {
+		limiter.setRateLimit("appointments/", 1, 1);
+		client.appointments(null);
+		limiter.execute(new PokitDokRequest(PokitDokRequest.GET, "appointments/", null, null, PokitDok.DEFAULT_SCOPE));
+		assertEquals(0, limiter.getDelayedCount());
+
+		limiter.setRateLimit("appointments/", PokitDok.USER_SCHEDULE_SCOPE, 2, 1);
+		assertEquals(2, limiter.getCurrentRate("appointments/", PokitDok.USER_SCHEDULE_SCOPE), 0);
+		assertEquals(1, limiter.getCurrentRate("appointments/", PokitDok.DEFAULT_SCOPE), 0);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void backsOffOnTooManyRequestsTest() throws Exception {
+		limiter.setRateLimit("claims/", 100, 10);
+		backend.status = 429;
+		client.claims(new HashMap<String, Object>());
+		double throttledRate = limiter.getCurrentRate("claims/", PokitDok.DEFAULT_SCOPE);
+		assertEquals(50, throttledRate, 1);
+		assertEquals(1, limiter.getThrottledCount());
+
+		/* Ramps back up by a tenth of the limit per second. */
+		backend.status = 200;
+		Thread.sleep(300);
+		double recovering = limiter.getCurrentRate("claims/", PokitDok.DEFAULT_SCOPE);
+		assertTrue(recovering > throttledRate && recovering < 100);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void honoursRetryAfterTest() throws Exception {
+		limiter.setRateLimit("claims/", 100, 10);
+		backend.status = 429;
+		backend.retryAfter = "1";
+		client.claims(new HashMap<String, Object>());
+
+		backend.status = 200;
+		long start = System.currentTimeMillis();
+		client.claims(new HashMap<String, Object>());
+		assertTrue(System.currentTimeMillis() - start >= 900);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void spacesRequestsQueuedBehindRetryAfterTest() throws Exception {
+		limiter.setRateLimit("claims/", 20, 10);
+		backend.status = 429;
+		backend.retryAfter = "1";
+		client.claims(new HashMap<String, Object>());
+		long throttledAt = System.nanoTime();
+		backend.status = 200;
+		backend.retryAfter = null;
+		backend.times.clear();
+
+		/* Queued during the Retry-After window, they must leave at the halved rate of 10 per second. */
+		ExecutorService callers = Executors.newFixedThreadPool(6);
+		try {
+			List<Future<?>> calls = new ArrayList<Future<?>>();
+			for (int i = 0; i < 6; i++) {
+				calls.add(callers.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						return client.claims(new HashMap<String, Object>());
+					}
+				}));
+			}
+			for (Future<?> call : calls) {
+				call.get();
+			}
+		}
+		finally {
+			callers.shutdownNow();
+		}
+
+		List<Long> times = new ArrayList<Long>(backend.times);
+		Collections.sort(times);
+		assertEquals(6, times.size());
+		assertTrue(times.get(0) - throttledAt >= TimeUnit.MILLISECONDS.toNanos(900));
+		for (int i = 1; i < times.size(); i++) {
+			long gap = times.get(i) - times.get(i - 1);
+			assertTrue("gap of " + TimeUnit.NANOSECONDS.toMillis(gap) + "ms", gap >= TimeUnit.MILLISECONDS.toNanos(80));
+		}
+	}
+
+	/** Answers every request with the configured status and Retry-After header. */
+	private static class ScriptedConnector implements PokitDokExchangeConnector {
+		final AtomicInteger requests = new AtomicInteger();
+		final List<Long> times = new CopyOnWriteArrayList<Long>();
+		volatile int status = 200;
+		volatile String retryAfter;
+
+		public PokitDokResponse execute(PokitDokRequest request) {
+			return execute(request, null);
+		}
+
+		public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor) {
+			requests.incrementAndGet();
+			times.add(System.nanoTime());
+			Map<String, String> headers = new HashMap<String, String>();
+			if (retryAfter != null) headers.put("Retry-After", retryAfter);
+			return new PokitDokResponse(status, headers, new JSONObject());
+		}
+
+		public void connect() {}
+		public void connect(String scopeName) {}
+		public String get(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String get(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+	}
+}
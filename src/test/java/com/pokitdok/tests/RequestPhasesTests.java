@@ -0,0 +1,73 @@
+package com.pokitdok.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class RequestPhasesTests {
+	private PokitDokStubServer server;
+	private ApacheHTTPConnector connector;
+	private final List<RequestPhases> recorded = new CopyOnWriteArrayList<RequestPhases>();
+
+	@Before
+	public void setup() throws Exception {
+		server = new PokitDokStubServer();
+		server.start();
+		ConnectorSettings settings = new ConnectorSettings();
+		settings.setRequestPhaseListener(new RequestPhaseListener() {
+			public void onPhases(PokitDokRequest request, RequestPhases phases) {
+				recorded.add(phases);
+			}
+		});
+		connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase(), settings);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		connector.close();
+		server.stop();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void recordsEachPhaseTest() throws Exception {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("results", "200");
+		connector.execute(new PokitDokRequest(PokitDokRequest.GET, "providers", params, null, null));
+
+		assertEquals(1, recorded.size());
+		RequestPhases phases = recorded.get(0);
+		assertTrue(phases.getTimeToFirstByte() > 0);
+		assertTrue(phases.getBodyRead() > 0);
+		assertTrue(phases.getParse() > 0);
+		assertEquals(0, phases.getTls());
+		assertTrue(phases.getTotal() >= phases.getPoolLease() + phases.getConnect() + phases.getTimeToFirstByte()
+			+ phases.getBodyRead() + phases.getParse());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void pooledConnectionsHaveNoConnectPhaseTest() throws Exception {
+		/* The token request opens a connection and returns it to the pool. */
+		connector.connect();
+		connector.execute(new PokitDokRequest(PokitDokRequest.GET, "providers", null, null, null));
+
+		assertFalse(recorded.get(0).isNewConnection());
+		assertEquals(0, recorded.get(0).getConnect());
+		assertEquals(0, recorded.get(0).getTls());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void reportsStringRequestsTest() throws Exception {
+		connector.get("providers", new HashMap<String, Object>(), null);
+		assertEquals(1, recorded.size());
+		assertEquals(0, recorded.get(0).getParse());
+		assertTrue(recorded.get(0).getTotal() > 0);
+	}
+}
@@ -0,0 +1,157 @@
+package com.pokitdok.tests;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class RetryingConnectorTests {
+	private ScriptedConnector backend;
+	private RetryingConnector retrying;
+
+	@Before
+	public void setup() throws Exception {
+		backend = new ScriptedConnector();
+		retrying = new RetryingConnector(backend, 3, 1, 10, 0.1);
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void retriesTransientFailuresTest() throws Exception {
+		backend.script(503, new IOException("Connection reset"), 200);
+		PokitDokResponse response = retrying.execute(get("providers"));
+
+		assertEquals(200, response.getStatus());
+		assertEquals(3, backend.attempts.get());
+		assertEquals(2, retrying.getRetryCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void givesUpAfterMaxAttemptsTest() throws Exception {
+		backend.script(502, 502, 502, 200);
+		assertEquals(502, retrying.execute(get("providers")).getStatus());
+		assertEquals(3, backend.attempts.get());
+		assertEquals(1, retrying.getAttemptsExhaustedCount());
+
+		backend.script(new IOException("timeout"), new IOException("timeout"), new IOException("last"));
+		try {
+			retrying.execute(get("providers"));
+			fail("Expected the last failure to be thrown");
+		}
+		catch (IOException e) {
+			assertEquals("last", e.getMessage());
+		}
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void doesNotRetryPlainPostsTest() throws Exception {
+		backend.script(503, 200);
+		PokitDokRequest claim = new PokitDokRequest(PokitDokRequest.POST, "claims/", new HashMap<String, Object>(),
+			null, PokitDok.DEFAULT_SCOPE);
+		assertEquals(503, retrying.execute(claim).getStatus());
+		assertEquals(1, backend.attempts.get());
+
+		backend.script(503, 200);
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("idempotency-key", "claim-42");
+		claim = new PokitDokRequest(PokitDokRequest.POST, "claims/", new HashMap<String, Object>(), headers,
+			PokitDok.DEFAULT_SCOPE);
+		assertEquals(200, retrying.execute(claim).getStatus());
+		assertEquals(2, backend.attempts.get());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void doesNotRetryClientErrorsTest() throws Exception {
+		backend.script(400, 200);
+		assertEquals(400, retrying.execute(get("providers")).getStatus());
+		assertEquals(0, retrying.getRetryCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void retryBudgetLimitsExtraLoadTest() throws Exception {
+		retrying = new RetryingConnector(backend, 2, 0, 0, 0.1);
+		int retried = 0;
+		for (int i = 0; i < 100; i++) {
+			backend.script(503, 503);
+			retrying.execute(get("providers"));
+			retried += backend.attempts.get() - 1;
+		}
+
+		/* The reserve of 10 retries, plus a tenth of a retry per request after that. */
+		assertTrue("retried " + retried + " times", retried >= 10 && retried <= RetryingConnector.BUDGET_RESERVE + 10);
+		assertEquals(retried, retrying.getRetryCount());
+		assertEquals(100 - retried, retrying.getBudgetExhaustedCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void retriesGatewayErrorPagesTest() throws Exception {
+		TapeReplayServer server = new TapeReplayServer("trading_partners_index");
+		server.start();
+		ApacheHTTPConnector connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase());
+		try {
+			retrying = new RetryingConnector(connector, 3, 1, 10, 0.1);
+			server.failNext(1, 503, "text/html", "<html><body><h1>503 Service Unavailable</h1></body></html>");
+
+			PokitDokResponse response = retrying.execute(get("tradingpartners/"));
+			assertEquals(200, response.getStatus());
+			assertNotNull(response.getBody().get("data"));
+			assertEquals(1, retrying.getRetryCount());
+			assertEquals(1, server.getErrorRequests());
+		}
+		finally {
+			connector.close();
+			server.stop();
+		}
+	}
+
+	private static PokitDokRequest get(String endpoint) {
+		return new PokitDokRequest(PokitDokRequest.GET, endpoint, null, null, PokitDok.DEFAULT_SCOPE);
+	}
+
+	/** Plays back a script of statuses and exceptions, answering 200 once it runs out. */
+	private static class ScriptedConnector implements PokitDokExchangeConnector {
+		final AtomicInteger attempts = new AtomicInteger();
+		private final LinkedList<Object> script = new LinkedList<Object>();
+
+		void script(Object... outcomes) {
+			script.clear();
+			script.addAll(Arrays.asList(outcomes));
+			attempts.set(0);
+		}
+
+		public PokitDokResponse execute(PokitDokRequest request) throws IOException {
+			return execute(request, null);
+		}
+
+		public PokitDokResponse execute(PokitDokRequest request, DataVisitor visitor) throws IOException {
+			attempts.incrementAndGet();
+			Object outcome = script.isEmpty() ? 200 : script.removeFirst();
+			if (outcome instanceof IOException) {
+				throw (IOException) outcome;
+			}
+			return new PokitDokResponse((Integer) outcome, null, new JSONObject());
+		}
+
+		public void connect() {}
+		public void connect(String scopeName) {}
+		public String get(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String get(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String post(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String put(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers) { return null; }
+		public String delete(String url, Map<String, Object> params, Map<String, String> headers, String scope) { return null; }
+	}
+}
@@ -0,0 +1,427 @@
+package com.pokitdok.tests;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.sun.net.httpserver.*;
+import org.apache.commons.io.IOUtils;
+import org.json.simple.*;
+
+/**
+ * An in-process stand-in for the PokitDok platform that answers API calls with the responses
+ * recorded on the Betamax tapes, for load and resilience testing without network access.
+ *
+ * Recorded API interactions are matched on method and path, ignoring the query string and any
+ * trailing slash; a path with no recording of its own falls back to the longest recorded path
+ * it starts with, so "activities/5362..." is answered from "activities". When a path was
+ * recorded with successful responses, only those are replayed, in turn. Tokens are issued from
+ * /oauth2/token as the platform does, and API calls with any other token get a 401.
+ *
+ * Faults can be injected on top of the recordings: a latency distribution, globally or per
+ * endpoint; a fraction of requests answered with a server error; a fraction throttled with a 429
+ * and a Retry-After header; and a server-side token lifetime, after which tokens are refused
+ * even though the client still believes them valid. Random choices can be made repeatable with
+ * {@link #setSeed(long)}.
+ */
+public class TapeReplayServer {
+	static {
+		/* Without this, small responses are held back by Nagle's algorithm for ~40ms each. */
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	/** A distribution of injected response delays. */
+	public interface Latency {
+		/** Returns the next delay, in microseconds. */
+		long nextDelay(Random random);
+	}
+
+	/** Always delays responses by the same time. */
+	public static Latency fixed(final long millis) {
+		return new Latency() {
+			public long nextDelay(Random random) {
+				return millis * 1000;
+			}
+		};
+	}
+
+	/** Delays responses by a time drawn uniformly between two bounds. */
+	public static Latency uniform(final long minMillis, final long maxMillis) {
+		return new Latency() {
+			public long nextDelay(Random random) {
+				return minMillis * 1000 + (long) (random.nextDouble() * (maxMillis - minMillis) * 1000);
+			}
+		};
+	}
+
+	/**
+	 * Delays responses by a time drawn from a log-normal distribution, the usual shape of service
+	 * latencies: most responses close to the median, and a long tail. A sigma of 0.5 puts the
+	 * 99th percentile at about 3.2 times the median, 1.0 at about 10 times.
+	 */
+	public static Latency logNormal(final double medianMillis, final double sigma) {
+		return new Latency() {
+			public long nextDelay(Random random) {
+				return (long) (medianMillis * 1000 * Math.exp(sigma * random.nextGaussian()));
+			}
+		};
+	}
+
+	private final HttpServer server;
+	private ExecutorService executor;
+	private final Map<String, List<BetamaxTape.Interaction>> recordings =
+		new HashMap<String, List<BetamaxTape.Interaction>>();
+	private final ConcurrentMap<String, AtomicInteger> turns = new ConcurrentHashMap<String, AtomicInteger>();
+	private final ConcurrentMap<String, Long> tokens = new ConcurrentHashMap<String, Long>();
+	private final AtomicInteger tokenSequence = new AtomicInteger();
+	private final AtomicInteger tokenRequests = new AtomicInteger();
+	private final AtomicInteger apiRequests = new AtomicInteger();
+	private final AtomicInteger unauthorized = new AtomicInteger();
+	private final AtomicInteger errors = new AtomicInteger();
+	private final AtomicInteger throttled = new AtomicInteger();
+	private final Map<String, Latency> endpointLatencies = new ConcurrentHashMap<String, Latency>();
+	private volatile Random random = new Random();
+	private volatile Latency latency;
+	private volatile double errorRate;
+	private volatile int errorStatus = 503;
+	private volatile double throttleRate;
+	private volatile int retryAfterSeconds;
+	private volatile long tokenLifetime = Long.MAX_VALUE;
+	private final AtomicInteger failures = new AtomicInteger();
+	private volatile int failureStatus;
+	private volatile String failureContentType;
+	private volatile String failureBody;
+
+	/** Creates a server replaying every tape on the class path. */
+	public TapeReplayServer() throws IOException {
+		this(BetamaxTape.names().toArray(new String[0]));
+	}
+
+	/**
+	 * Creates a server replaying the given tapes.
+	 *
+	 * @param tapes the tape names, such as "eligibility"
+	 */
+	public TapeReplayServer(String... tapes) throws IOException {
+		for (String tape : tapes) {
+			for (BetamaxTape.Interaction interaction : BetamaxTape.load(tape).getApiInteractions()) {
+				String key = key(interaction.method, interaction.getEndpoint());
+				List<BetamaxTape.Interaction> recorded = recordings.get(key);
+				if (recorded == null) {
+					recorded = new ArrayList<BetamaxTape.Interaction>();
+					recordings.put(key, recorded);
+				}
+				recorded.add(interaction);
+			}
+		}
+		for (List<BetamaxTape.Interaction> recorded : recordings.values()) {
+			List<BetamaxTape.Interaction> successful = new ArrayList<BetamaxTape.Interaction>();
+			for (BetamaxTape.Interaction interaction : recorded) {
+				if (interaction.status < 300) {
+					successful.add(interaction);
+				}
+			}
+			if (!successful.isEmpty()) {
+				recorded.retainAll(successful);
+			}
+		}
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 1024);
+		server.createContext("/oauth2/token", new TokenHandler());
+		server.createContext("/api/v4/", new ReplayHandler());
+		/* Injected latency holds a thread per request, so the pool has to grow with the load. */
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "tape-replay");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Serves requests on the given executor instead of the server's own thread pool, such as one
+	 * starting a virtual thread per request. Must be called before the server is started; the
+	 * executor is shut down when the server is stopped.
+	 *
+	 * @param executor the executor to serve requests on
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor.shutdownNow();
+		this.executor = executor;
+		server.setExecutor(executor);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public String getApiBase() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Adds a response for an endpoint no tape covers, replacing any recorded for the same method
+	 * and path. Must be called before the server is started.
+	 *
+	 * @param method the HTTP method, such as "POST"
+	 * @param endpoint the endpoint path, such as "claims/"
+	 * @param status the status to answer with
+	 * @param body the JSON body to answer with
+	 */
+	public void addRecording(String method, String endpoint, int status, String body) {
+		BetamaxTape.Interaction interaction = new BetamaxTape.Interaction();
+		interaction.method = method;
+		interaction.uri = "/api/v4/" + endpoint;
+		interaction.status = status;
+		interaction.responseHeaders.put("Content-Type", "application/json");
+		interaction.responseBody = body;
+		recordings.put(key(method, endpoint), new ArrayList<BetamaxTape.Interaction>(Collections.singletonList(interaction)));
+	}
+
+	/** Seeds the random choices behind latencies, errors and throttling. */
+	public void setSeed(long seed) {
+		random = new Random(seed);
+	}
+
+	/** Sets the latency of every endpoint without one of its own; null for none. */
+	public void setLatency(Latency latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Sets the latency of the endpoints whose path starts with a prefix, such as "eligibility".
+	 * The longest matching prefix wins.
+	 */
+	public void setLatency(String endpoint, Latency latency) {
+		endpointLatencies.put(trim(endpoint), latency);
+	}
+
+	/**
+	 * Answers a fraction of API calls with a server error instead of their recording.
+	 *
+	 * @param rate the fraction of calls, between 0 and 1
+	 * @param status the status to answer with, such as 503
+	 */
+	public void setErrorRate(double rate, int status) {
+		errorRate = rate;
+		errorStatus = status;
+	}
+
+	/**
+	 * Answers the next API calls with a fixed response instead of their recordings, such as the
+	 * HTML error page of a gateway in front of the platform.
+	 *
+	 * @param count the number of calls to answer so
+	 * @param status the status to answer with, such as 503
+	 * @param contentType the content type to answer with, such as "text/html"
+	 * @param body the body to answer with, or null for none
+	 */
+	public void failNext(int count, int status, String contentType, String body) {
+		failureStatus = status;
+		failureContentType = contentType;
+		failureBody = body;
+		failures.set(count);
+	}
+
+	private boolean takeFailure() {
+		for (;;) {
+			int left = failures.get();
+			if (left <= 0) {
+				return false;
+			}
+			if (failures.compareAndSet(left, left - 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Answers a fraction of API calls with a 429 Too Many Requests.
+	 *
+	 * @param rate the fraction of calls, between 0 and 1
+	 * @param retryAfterSeconds the Retry-After value sent, or 0 to send none
+	 */
+	public void setThrottleRate(double rate, int retryAfterSeconds) {
+		throttleRate = rate;
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * Refuses tokens once they are older than a lifetime, although they are handed out with the
+	 * platform's usual hour-long expiry, as if they had been revoked.
+	 */
+	public void setTokenLifetime(long millis) {
+		tokenLifetime = millis;
+	}
+
+	/** Invalidates every token handed out so far. */
+	public void expireTokens() {
+		tokens.clear();
+	}
+
+	public int getTokenRequests() {
+		return tokenRequests.get();
+	}
+
+	public int getApiRequests() {
+		return apiRequests.get();
+	}
+
+	/** Returns the number of API calls refused for an invalid or expired token. */
+	public int getUnauthorizedRequests() {
+		return unauthorized.get();
+	}
+
+	/** Returns the number of API calls answered with an injected server error. */
+	public int getErrorRequests() {
+		return errors.get();
+	}
+
+	/** Returns the number of API calls answered with an injected 429. */
+	public int getThrottledRequests() {
+		return throttled.get();
+	}
+
+	private static String key(String method, String endpoint) {
+		return method + " " + trim(endpoint);
+	}
+
+	private static String trim(String endpoint) {
+		return endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = (body == null) ? new byte[0] : body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+		Map<String, Object> body = new HashMap<String, Object>();
+		body.put("message", message);
+		respond(exchange, status, "application/json; charset=utf-8", JSONValue.toJSONString(body));
+	}
+
+	private class TokenHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			tokenRequests.incrementAndGet();
+			IOUtils.toByteArray(exchange.getRequestBody());
+
+			String accessToken = "replay-token-" + tokenSequence.incrementAndGet();
+			tokens.put(accessToken, System.currentTimeMillis());
+			Map<String, Object> token = new HashMap<String, Object>();
+			token.put("access_token", accessToken);
+			token.put("token_type", "bearer");
+			token.put("expires_in", 3600L);
+			token.put("expires", System.currentTimeMillis() / 1000 + 3600L);
+			respond(exchange, 200, "application/json; charset=utf-8", JSONValue.toJSONString(token));
+		}
+	}
+
+	private class ReplayHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			apiRequests.incrementAndGet();
+			IOUtils.toByteArray(exchange.getRequestBody());
+			String endpoint = trim(exchange.getRequestURI().getPath().substring("/api/v4/".length()));
+
+			String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+			Long issued = (authorization == null) ? null : tokens.get(authorization.substring("Bearer ".length()));
+			if (issued == null || System.currentTimeMillis() - issued >= tokenLifetime) {
+				unauthorized.incrementAndGet();
+				respond(exchange, 401, "Unauthorized");
+				return;
+			}
+
+			delay(endpoint);
+			if (takeFailure()) {
+				errors.incrementAndGet();
+				respond(exchange, failureStatus, failureContentType, failureBody);
+				return;
+			}
+			Random random = TapeReplayServer.this.random;
+			if (throttleRate > 0 && random.nextDouble() < throttleRate) {
+				throttled.incrementAndGet();
+				if (retryAfterSeconds > 0) {
+					exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+				}
+				respond(exchange, 429, "Too Many Requests");
+				return;
+			}
+			if (errorRate > 0 && random.nextDouble() < errorRate) {
+				errors.incrementAndGet();
+				respond(exchange, errorStatus, "Injected failure");
+				return;
+			}
+
+			BetamaxTape.Interaction interaction = recordingFor(exchange.getRequestMethod(), endpoint);
+			if (interaction == null) {
+				respond(exchange, 404, "No recording for " + exchange.getRequestMethod() + " " + endpoint);
+				return;
+			}
+			String contentType = interaction.responseHeaders.get("Content-Type");
+			respond(exchange, interaction.status, (contentType == null) ? "application/json" : contentType,
+				interaction.responseBody);
+		}
+
+		private void delay(String endpoint) throws IOException {
+			Latency chosen = latency;
+			int longest = -1;
+			for (Map.Entry<String, Latency> entry : endpointLatencies.entrySet()) {
+				if (endpoint.startsWith(entry.getKey()) && entry.getKey().length() > longest) {
+					chosen = entry.getValue();
+					longest = entry.getKey().length();
+				}
+			}
+			if (chosen == null) {
+				return;
+			}
+			long micros = chosen.nextDelay(random);
+			try {
+				if (micros > 0) {
+					TimeUnit.MICROSECONDS.sleep(micros);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+
+		/* The recordings of a path are replayed in turn; unrecorded paths use their longest recorded prefix. */
+		private BetamaxTape.Interaction recordingFor(String method, String endpoint) {
+			String path = endpoint;
+			while (true) {
+				String key = key(method, path);
+				List<BetamaxTape.Interaction> recorded = recordings.get(key);
+				if (recorded != null) {
+					AtomicInteger turn = turns.get(key);
+					if (turn == null) {
+						turns.putIfAbsent(key, new AtomicInteger());
+						turn = turns.get(key);
+					}
+					return recorded.get((turn.getAndIncrement() & Integer.MAX_VALUE) % recorded.size());
+				}
+				int slash = path.lastIndexOf('/');
+				if (slash < 0) {
+					return null;
+				}
+				path = path.substring(0, slash);
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.pokitdok.tests;
+
+import java.util.*;
+import com.pokitdok.*;
+import com.pokitdok.tests.categories.*;
+import org.json.simple.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class TapeReplayServerTests {
+	private TapeReplayServer server;
+	private ApacheHTTPConnector connector;
+
+	@Before
+	public void setup() throws Exception {
+		server = new TapeReplayServer("eligibility", "providers", "activities");
+		server.setSeed(42);
+		server.start();
+		connector = new ApacheHTTPConnector("client_id", "client_secret",
+			new HashMap<String, String>(), server.getApiBase());
+	}
+
+	@After
+	public void teardown() throws Exception {
+		connector.close();
+		server.stop();
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void replaysRecordedResponsesTest() throws Exception {
+		String recorded = BetamaxTape.load("eligibility").getApiInteractions().get(0).responseBody;
+		PokitDokResponse response = connector.execute(
+			new PokitDokRequest(PokitDokRequest.POST, "eligibility/", new HashMap<String, Object>(), null, null));
+
+		assertEquals(200, response.getStatus());
+		assertEquals(JSONValue.parse(recorded), response.getBody());
+		assertEquals(1, server.getTokenRequests());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void unrecordedPathsFallBackToTheirPrefixTest() throws Exception {
+		PokitDokResponse response = connector.execute(
+			new PokitDokRequest(PokitDokRequest.GET, "activities/5362b5a064da150ef6f2526c", null, null, null));
+		assertEquals(200, response.getStatus());
+		assertTrue(response.getBody().containsKey("data"));
+
+		response = connector.execute(new PokitDokRequest(PokitDokRequest.GET, "claims/", null, null, null));
+		assertEquals(404, response.getStatus());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void throttledRequestsAreRetriedTest() throws Exception {
+		server.setThrottleRate(0.5, 0);
+		RetryingConnector retrying = new RetryingConnector(connector, 20, 1, 5, 1.0);
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("npi", "1467560003");
+
+		for (int i = 0; i < 20; i++) {
+			assertEquals(200, retrying.execute(
+				new PokitDokRequest(PokitDokRequest.GET, "providers", params, null, null)).getStatus());
+		}
+		assertTrue(server.getThrottledRequests() > 0);
+		assertEquals(server.getThrottledRequests(), retrying.getRetryCount());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void revokedTokensAreReplacedTest() throws Exception {
+		server.setTokenLifetime(50);
+		PokitDokRequest request = new PokitDokRequest(PokitDokRequest.GET, "activities", null, null, null);
+		assertEquals(200, connector.execute(request).getStatus());
+		Thread.sleep(100);
+
+		assertEquals(200, connector.execute(request).getStatus());
+		assertEquals(2, server.getTokenRequests());
+		assertEquals(1, server.getUnauthorizedRequests());
+	}
+
+	@Test
+	@Category(UnitTests.class)
+	public void injectsLatencyPerEndpointTest() throws Exception {
+		server.setLatency("eligibility", TapeReplayServer.fixed(100));
+		connector.connect();
+
+		long start = System.nanoTime();
+		connector.execute(new PokitDokRequest(PokitDokRequest.GET, "activities", null, null, null));
+		long undelayed = System.nanoTime() - start;
+		start = System.nanoTime();
+		connector.execute(
+			new PokitDokRequest(PokitDokRequest.POST, "eligibility/", new HashMap<String, Object>(), null, null));
+		long delayed = System.nanoTime() - start;
+
+		assertTrue(delayed >= 100 * 1000 * 1000L);
+		assertTrue(undelayed < 100 * 1000 * 1000L);
+	}
+}